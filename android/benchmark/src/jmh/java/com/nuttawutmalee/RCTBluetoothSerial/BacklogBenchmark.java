@@ -0,0 +1,53 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Draining a backlog of unread frames with readUntil, e.g. when JS polls
+ * readUntilDelimiter after the device has been streaming for a while.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BacklogBenchmark {
+    @Param({ "4096", "65536", "1048576" })
+    int backlog;
+
+    @Param({ "16", "256" })
+    int frameSize;
+
+    private String mBacklog;
+    private ReceiveBuffer mBuffer;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        byte[] stream = Frames.stream(frameSize, "\n", backlog);
+        mBacklog = new ChunkDecoder().decode(stream, 0, stream.length);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        mBuffer = new ReceiveBuffer();
+        mBuffer.append(mBacklog);
+    }
+
+    @Benchmark
+    public void drain(Blackhole blackhole) {
+        String frame;
+
+        while ((frame = mBuffer.readUntil("\n")).length() > 0) {
+            blackhole.consume(frame);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Checksum stage: validating the trailer of a received frame and
+ * appending one to written data
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChecksumBenchmark {
+    @Param({ "crc16-ccitt", "crc32" })
+    String algorithm;
+
+    @Param({ "32", "1024" })
+    int frameSize;
+
+    private Checksum mChecksum;
+    private byte[] mPayload;
+    private String mFrame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws UnsupportedEncodingException {
+        mChecksum = new Checksum(Checksum.Algorithm.parse(algorithm), 0, false, false, true);
+        mPayload = new byte[frameSize];
+        new Random(42).nextBytes(mPayload);
+        mFrame = new String(mChecksum.append(mPayload), "ISO-8859-1") + "\r\n";
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return mChecksum.isValid(mFrame, mFrame.length() - 2);
+    }
+
+    @Benchmark
+    public byte[] append() {
+        return mChecksum.append(mPayload);
+    }
+}
@@ -0,0 +1,61 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Conflation stage: offering complete frames of a high-rate stream that
+ * supersede each other between two flushes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConflationBenchmark {
+    private static final int FRAMES = 64;
+
+    @Param({ "none", "offset", "pattern" })
+    String key;
+
+    private Conflator mConflator;
+    private String[] mFrames;
+    private long mSeq = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("offset".equals(key)) {
+            mConflator = new Conflator(30, 0, 2, null, Conflator.DEFAULT_MAX_KEYS);
+        } else if ("pattern".equals(key)) {
+            mConflator = new Conflator(30, -1, 0, Pattern.compile("^(\\w+):"), Conflator.DEFAULT_MAX_KEYS);
+        } else {
+            mConflator = new Conflator(30, -1, 0, null, Conflator.DEFAULT_MAX_KEYS);
+        }
+
+        mFrames = new String[FRAMES];
+
+        for (int i = 0; i < FRAMES; i++) {
+            mFrames[i] = "s" + (i % 8) + ":" + (1000 + i) + "," + (2000 - i) + "\r\n";
+        }
+    }
+
+    @Benchmark
+    public boolean offer() {
+        String frame = mFrames[(int) (mSeq % FRAMES)];
+        boolean kept = mConflator.offer(new ReceivedFrame("bench", frame, frame.length() - 2, ++mSeq, mSeq, mSeq, null));
+
+        if (mSeq % FRAMES == 0) {
+            mConflator.drain();
+        }
+
+        return kept;
+    }
+}
@@ -0,0 +1,56 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+/**
+ * Synthetic traffic for the benchmarks
+ */
+final class Frames {
+    private Frames() {
+    }
+
+    /**
+     * Build a delimiter of the given length, e.g. "\n", "\r\n" or a longer marker
+     *
+     * @param length Delimiter length
+     * @return Delimiter
+     */
+    static String delimiter(int length) {
+        if (length == 1) {
+            return "\n";
+        }
+
+        StringBuilder delimiter = new StringBuilder("\r\n");
+
+        while (delimiter.length() < length) {
+            delimiter.insert(0, '#');
+        }
+
+        return delimiter.toString();
+    }
+
+    /**
+     * Build a chunk of a stream of frames as it comes out of the input stream.
+     * Frames may straddle chunk boundaries.
+     *
+     * @param frameSize Frame size including the delimiter
+     * @param delimiter Frame delimiter
+     * @param chunkSize Chunk size
+     * @return Chunk
+     */
+    static byte[] stream(int frameSize, String delimiter, int chunkSize) {
+        byte[] chunk = new byte[chunkSize];
+        int payload = Math.max(1, frameSize - delimiter.length());
+        int position = 0;
+
+        while (position < chunkSize) {
+            for (int i = 0; i < payload && position < chunkSize; i++) {
+                chunk[position++] = (byte) ('a' + i % 26);
+            }
+
+            for (int i = 0; i < delimiter.length() && position < chunkSize; i++) {
+                chunk[position++] = (byte) delimiter.charAt(i);
+            }
+        }
+
+        return chunk;
+    }
+}
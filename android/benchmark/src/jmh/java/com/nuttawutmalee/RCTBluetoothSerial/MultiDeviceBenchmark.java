@@ -0,0 +1,68 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Receive path with several connected devices: the per-device buffer and
+ * delimiter lookups of onData, round robin over all devices.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MultiDeviceBenchmark {
+    @Param({ "1", "8", "32" })
+    int deviceCount;
+
+    @Param({ "64", "1024" })
+    int frameSize;
+
+    private String[] mIds;
+    private String mChunk;
+    private ConcurrentHashMap<String, ReceiveBuffer> mBuffers;
+    private ConcurrentHashMap<String, String> mDelimiters;
+    private int mNext = 0;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        mIds = new String[deviceCount];
+        mBuffers = new ConcurrentHashMap<>();
+        mDelimiters = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < deviceCount; i++) {
+            mIds[i] = String.format("00:11:22:33:44:%02X", i);
+            mBuffers.put(mIds[i], new ReceiveBuffer());
+            mDelimiters.put(mIds[i], "\r\n");
+        }
+
+        byte[] chunk = Frames.stream(frameSize, "\r\n", 1024);
+        mChunk = new ChunkDecoder().decode(chunk, 0, chunk.length);
+    }
+
+    @Benchmark
+    public void onData(Blackhole blackhole) {
+        String id = mIds[mNext];
+        mNext = (mNext + 1) % mIds.length;
+
+        ReceiveBuffer buffer = mBuffers.get(id);
+        buffer.append(mChunk);
+
+        String delimiter = mDelimiters.get(id);
+        String frame;
+
+        while ((frame = buffer.readUntil(delimiter)).length() > 0) {
+            blackhole.consume(frame);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Print path: dithering and packing one 576 x 24 band of luminance into a
+ * GS v 0 raster command
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RasterBenchmark {
+    private static final int WIDTH = 576;
+    private static final int BAND_HEIGHT = 24;
+
+    @Param({ "true", "false" })
+    boolean dither;
+
+    private int[] mLuminance;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        mLuminance = new int[WIDTH * BAND_HEIGHT];
+
+        for (int i = 0; i < mLuminance.length; i++) {
+            mLuminance[i] = random.nextInt(256);
+        }
+    }
+
+    @Benchmark
+    public void band(final Blackhole blackhole) throws IOException {
+        EscPos.Raster raster = new EscPos.Raster(WIDTH, BAND_HEIGHT, dither, new EscPos.Raster.Sink() {
+            @Override
+            public void write(byte[] band) {
+                blackhole.consume(band);
+            }
+        });
+
+        raster.addRows(mLuminance, BAND_HEIGHT);
+    }
+}
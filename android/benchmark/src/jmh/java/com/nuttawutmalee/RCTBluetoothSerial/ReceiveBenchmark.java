@@ -0,0 +1,90 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Receive path of a single device: decoding a chunk read from the input
+ * stream, appending it to the device buffer and draining complete frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReceiveBenchmark {
+    private static final int CHUNK_SIZE = 1024; // Read buffer size of the connected thread
+
+    @Param({ "16", "256", "4096" })
+    int frameSize;
+
+    @Param({ "1", "2", "8" })
+    int delimiterLength;
+
+    @Param({ "ISO-8859-1", "UTF-8" })
+    String charset;
+
+    private byte[] mChunk;
+    private String mDecodedChunk;
+    private String mDelimiter;
+    private ChunkDecoder mDecoder;
+    private ReceiveBuffer mBuffer;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        mDelimiter = Frames.delimiter(delimiterLength);
+        mChunk = Frames.stream(frameSize, mDelimiter, CHUNK_SIZE);
+        mDecoder = new ChunkDecoder(Charset.forName(charset), CHUNK_SIZE);
+        mDecodedChunk = mDecoder.decode(mChunk, 0, mChunk.length);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        mBuffer = new ReceiveBuffer();
+    }
+
+    /**
+     * ConnectedThread.run: bytes to String
+     */
+    @Benchmark
+    public String decode() {
+        return mDecoder.decode(mChunk, 0, mChunk.length);
+    }
+
+    /**
+     * onData: append a chunk and drain every complete frame
+     */
+    @Benchmark
+    public void appendAndFrame(Blackhole blackhole) {
+        mBuffer.append(mDecodedChunk);
+
+        String frame;
+
+        while ((frame = mBuffer.readUntil(mDelimiter)).length() > 0) {
+            blackhole.consume(frame);
+        }
+    }
+
+    /**
+     * ConnectedThread.run and onData together
+     */
+    @Benchmark
+    public void decodeAppendAndFrame(Blackhole blackhole) {
+        mBuffer.append(mDecoder.decode(mChunk, 0, mChunk.length));
+
+        String frame;
+
+        while ((frame = mBuffer.readUntil(mDelimiter)).length() > 0) {
+            blackhole.consume(frame);
+        }
+    }
+}
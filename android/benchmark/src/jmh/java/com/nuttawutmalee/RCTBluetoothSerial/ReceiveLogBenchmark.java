@@ -0,0 +1,73 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Receive log: appending a chunk read from the input stream and draining
+ * complete frames through several independent cursors
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReceiveLogBenchmark {
+    private static final int CHUNK_SIZE = 1024; // Read buffer size of the connected thread
+
+    @Param({ "16", "256" })
+    int frameSize;
+
+    @Param({ "1", "2", "8" })
+    int cursors;
+
+    private String mChunk;
+    private String mDelimiter;
+    private String[] mNames;
+    private ReceiveLog mLog;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        mDelimiter = Frames.delimiter(2);
+        byte[] chunk = Frames.stream(frameSize, mDelimiter, CHUNK_SIZE);
+        mChunk = new ChunkDecoder().decode(chunk, 0, chunk.length);
+        mNames = new String[cursors];
+
+        for (int i = 0; i < cursors; i++) {
+            mNames[i] = "consumer" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        mLog = new ReceiveLog(ReceiveLog.DEFAULT_CAPACITY);
+
+        for (String name : mNames) {
+            mLog.open(name);
+        }
+    }
+
+    /**
+     * onData with named cursors: append a chunk and let every cursor drain its frames
+     */
+    @Benchmark
+    public void appendAndReadUntil(Blackhole blackhole) {
+        mLog.append(mChunk);
+
+        for (String name : mNames) {
+            ReceiveLog.Read read;
+
+            while ((read = mLog.readUntil(name, mDelimiter)).data.length() > 0) {
+                blackhole.consume(read.data);
+            }
+        }
+    }
+}
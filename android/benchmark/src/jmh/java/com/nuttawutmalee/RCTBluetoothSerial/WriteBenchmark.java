@@ -0,0 +1,48 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Write path: base64 decoding of the writeToDevice payload
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WriteBenchmark {
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    @Param({ "16", "1024", "65536" })
+    int payloadSize;
+
+    private String mMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Any base64 string of the right length will do, the bytes are not checked
+        Random random = new Random(42);
+        int length = (payloadSize + 2) / 3 * 4;
+        StringBuilder message = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            message.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+
+        mMessage = message.toString();
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base64Decoder.decode(mMessage);
+    }
+}
@@ -0,0 +1,393 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Headless multi-device load test. It connects N simulated peers through
+ * in-memory pipes, runs the read path (StreamReader, ChunkDecoder and
+ * ReceiveBuffer framing) for each of them and reports sustained
+ * throughput, end-to-end frame latency percentiles, dropped frames and
+ * heap growth.
+ *
+ * Run with: ../gradlew -p benchmark loadTest -PloadTestArgs="--devices 20 --duration 60"
+ *
+ * Options:
+ *   --devices N         Number of simulated devices (default 20)
+ *   --duration S        Test duration in seconds (default 30)
+ *   --script SCRIPT     Simulated peer script, see SimulatedPeer.Script (default rate=10240)
+ *   --write-rate B      Bytes per second written to every device (default 0)
+ *   --report PATH       Write the report as JSON
+ *   --max-p99-ms MS     Fail if the p99 latency is higher
+ *   --max-dropped N     Fail if more frames were dropped
+ */
+public class LoadTest {
+    private static final int MAX_SAMPLES_PER_DEVICE = 200000;
+
+    private int mDevices = 20;
+    private int mDurationSeconds = 30;
+    private String mScript = "rate=10240";
+    private int mWriteRate = 0;
+    private String mReportPath = null;
+    private double mMaxP99Ms = -1;
+    private long mMaxDropped = -1;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        test.parse(args);
+        System.exit(test.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = i + 1 < args.length ? args[i + 1] : null;
+
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value of " + arg);
+            }
+
+            if ("--devices".equals(arg)) {
+                mDevices = Integer.parseInt(value);
+            } else if ("--duration".equals(arg)) {
+                mDurationSeconds = Integer.parseInt(value);
+            } else if ("--script".equals(arg)) {
+                mScript = value;
+            } else if ("--write-rate".equals(arg)) {
+                mWriteRate = Integer.parseInt(value);
+            } else if ("--report".equals(arg)) {
+                mReportPath = value;
+            } else if ("--max-p99-ms".equals(arg)) {
+                mMaxP99Ms = Double.parseDouble(value);
+            } else if ("--max-dropped".equals(arg)) {
+                mMaxDropped = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+
+            i++;
+        }
+    }
+
+    private boolean run() throws Exception {
+        SimulatedPeer.Script script = SimulatedPeer.Script.parse(mScript);
+        List<Device> devices = new ArrayList<>();
+
+        for (int i = 0; i < mDevices; i++) {
+            SimulatedPeer.Script deviceScript = SimulatedPeer.Script.parse(mScript);
+            deviceScript.seed = i;
+            devices.add(new Device("sim-" + i, deviceScript));
+        }
+
+        // Taken after the latency sample arrays are allocated
+        long heapBefore = usedHeap();
+
+        long start = System.nanoTime();
+
+        for (Device device : devices) {
+            device.start();
+        }
+
+        long deadline = start + mDurationSeconds * 1000000000L;
+        long peakHeap = 0;
+
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            peakHeap = Math.max(peakHeap, Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+        }
+
+        long heapAfter = usedHeap();
+
+        for (Device device : devices) {
+            device.stop();
+        }
+
+        for (Device device : devices) {
+            device.join();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        return report(devices, script, seconds, heapBefore, heapAfter, peakHeap);
+    }
+
+    private boolean report(List<Device> devices, SimulatedPeer.Script script, double seconds,
+                           long heapBefore, long heapAfter, long peakHeap) throws IOException {
+        long framesSent = 0;
+        long framesReceived = 0;
+        long bytesReceived = 0;
+        long bytesWritten = 0;
+        long bytesConsumed = 0;
+        long gaps = 0;
+        long reads = 0;
+        long bufferHighWater = 0;
+        long readToEmitP99 = 0;
+        int samples = 0;
+
+        for (Device device : devices) {
+            framesSent += device.mPeer.getFramesSent();
+            framesReceived += device.mFramesReceived;
+            bytesReceived += device.mBytesReceived;
+            bytesWritten += device.mBytesWritten;
+            bytesConsumed += device.mPeer.getBytesConsumed();
+            gaps += device.mGaps;
+            reads += device.mStats.getReads();
+            bufferHighWater = Math.max(bufferHighWater, device.mStats.getBufferHighWater());
+            readToEmitP99 = Math.max(readToEmitP99, device.mStats.getReadToEmit().getPercentile(0.99));
+            samples += device.mSampleCount;
+        }
+
+        long[] latencies = new long[samples];
+        int position = 0;
+
+        for (Device device : devices) {
+            System.arraycopy(device.mSamples, 0, latencies, position, device.mSampleCount);
+            position += device.mSampleCount;
+        }
+
+        Arrays.sort(latencies);
+
+        long dropped = framesSent - framesReceived;
+        double p50 = percentileMs(latencies, 0.50);
+        double p90 = percentileMs(latencies, 0.90);
+        double p99 = percentileMs(latencies, 0.99);
+        double max = latencies.length > 0 ? latencies[latencies.length - 1] / 1e6 : 0;
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append(field("devices", mDevices)).append(",\n");
+        json.append(field("seconds", seconds)).append(",\n");
+        json.append("  \"script\": \"").append(mScript.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\n");
+        json.append(field("framesSent", framesSent)).append(",\n");
+        json.append(field("framesReceived", framesReceived)).append(",\n");
+        json.append(field("framesDropped", dropped)).append(",\n");
+        json.append(field("sequenceGaps", gaps)).append(",\n");
+        json.append(field("bytesPerSecondIn", bytesReceived / seconds)).append(",\n");
+        json.append(field("framesPerSecondIn", framesReceived / seconds)).append(",\n");
+        json.append(field("readsPerSecond", reads / seconds)).append(",\n");
+        json.append(field("bufferHighWaterMax", bufferHighWater)).append(",\n");
+        json.append(field("bytesWritten", bytesWritten)).append(",\n");
+        json.append(field("bytesConsumedByPeers", bytesConsumed)).append(",\n");
+        json.append(field("latencyP50Ms", p50)).append(",\n");
+        json.append(field("latencyP90Ms", p90)).append(",\n");
+        json.append(field("latencyP99Ms", p99)).append(",\n");
+        json.append(field("latencyMaxMs", max)).append(",\n");
+        json.append(field("readToEmitP99MsWorstDevice", readToEmitP99 / 1e6)).append(",\n");
+        json.append(field("heapBeforeBytes", heapBefore)).append(",\n");
+        json.append(field("heapAfterBytes", heapAfter)).append(",\n");
+        json.append(field("heapGrowthBytes", heapAfter - heapBefore)).append(",\n");
+        json.append(field("heapPeakBytes", peakHeap)).append("\n");
+        json.append("}\n");
+
+        System.out.print(json);
+
+        if (mReportPath != null) {
+            Writer writer = new FileWriter(mReportPath);
+
+            try {
+                writer.write(json.toString());
+            } finally {
+                writer.close();
+            }
+        }
+
+        boolean passed = true;
+
+        if (mMaxP99Ms >= 0 && p99 > mMaxP99Ms) {
+            System.err.println("FAILED: p99 latency " + p99 + " ms is above " + mMaxP99Ms + " ms");
+            passed = false;
+        }
+
+        if (mMaxDropped >= 0 && dropped > mMaxDropped) {
+            System.err.println("FAILED: " + dropped + " frames dropped, at most " + mMaxDropped + " allowed");
+            passed = false;
+        }
+
+        return passed;
+    }
+
+    private static String field(String name, long value) {
+        return "  \"" + name + "\": " + value;
+    }
+
+    private static String field(String name, double value) {
+        return "  \"" + name + "\": " + String.format(Locale.US, "%.3f", value);
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * A simulated device with the receive path it drives and an optional writer
+     */
+    private class Device implements StreamReader.Listener {
+        private final PipeTransport mTransport;
+        private final SimulatedPeer mPeer;
+        private final String mDelimiter;
+        private final ReceiveBuffer mBuffer = new ReceiveBuffer();
+        private final DeviceStats mStats = new DeviceStats();
+        private final long[] mSamples = new long[MAX_SAMPLES_PER_DEVICE];
+        private final Random mRandom;
+
+        private Thread mReaderThread;
+        private Thread mWriterThread;
+        private volatile boolean mRunning = false;
+
+        private int mSampleCount = 0;
+        private long mSamplesSeen = 0;
+        private long mExpectedSeq = 0;
+        private long mGaps = 0;
+        private long mFramesReceived = 0;
+        private long mBytesReceived = 0;
+        private volatile long mBytesWritten = 0;
+
+        Device(String id, SimulatedPeer.Script script) {
+            mTransport = new PipeTransport(id);
+            mPeer = new SimulatedPeer(mTransport.getPeer(), script);
+            mDelimiter = script.delimiter;
+            mRandom = new Random(script.seed);
+        }
+
+        void start() {
+            mRunning = true;
+
+            mReaderThread = new Thread("ConnectedThread-" + mTransport.getId()) {
+                public void run() {
+                    try {
+                        new StreamReader(mTransport.getId(), mTransport.getInputStream(), Device.this, mStats).run();
+                    } catch (IOException e) {
+                        // End of stream when the peer stops
+                    }
+                }
+            };
+
+            mReaderThread.start();
+
+            if (mWriteRate > 0) {
+                mWriterThread = new Thread("Writer-" + mTransport.getId()) {
+                    public void run() {
+                        write();
+                    }
+                };
+
+                mWriterThread.start();
+            }
+
+            mPeer.start();
+        }
+
+        void stop() {
+            mRunning = false;
+            mPeer.stop();
+        }
+
+        void join() throws InterruptedException {
+            mReaderThread.join();
+
+            if (mWriterThread != null) {
+                mWriterThread.join();
+            }
+        }
+
+        @Override
+        public void onData(String id, String data, long readNanos) {
+            long now = System.nanoTime();
+
+            mBytesReceived += data.length();
+            mBuffer.append(data);
+            mStats.onBuffered(mBuffer.length());
+
+            String frame;
+
+            while ((frame = mBuffer.readUntil(mDelimiter)).length() > 0) {
+                mStats.onFrameIn();
+                onFrame(frame, now);
+                mStats.onFrameEmitted(readNanos, now, System.nanoTime());
+            }
+        }
+
+        private void onFrame(String frame, long now) {
+            int first = frame.indexOf(':');
+            int second = frame.indexOf(':', first + 1);
+
+            if (first < 0 || second < 0) {
+                return;
+            }
+
+            long seq = Long.parseLong(frame.substring(0, first));
+            long sent = Long.parseLong(frame.substring(first + 1, second));
+
+            if (seq != mExpectedSeq) {
+                mGaps += Math.abs(seq - mExpectedSeq);
+            }
+
+            mExpectedSeq = seq + 1;
+            mFramesReceived++;
+            record(now - sent);
+        }
+
+        private void record(long latency) {
+            // Reservoir sampling keeps memory bounded for long runs
+            mSamplesSeen++;
+
+            if (mSampleCount < mSamples.length) {
+                mSamples[mSampleCount++] = latency;
+            } else {
+                long slot = (long) (mRandom.nextDouble() * mSamplesSeen);
+
+                if (slot < mSamples.length) {
+                    mSamples[(int) slot] = latency;
+                }
+            }
+        }
+
+        private void write() {
+            byte[] command = "CMD:0123456789abcdef0123456789\r\n".getBytes();
+            long start = System.nanoTime();
+
+            try {
+                OutputStream out = mTransport.getOutputStream();
+
+                while (mRunning) {
+                    out.write(command);
+                    mBytesWritten += command.length;
+
+                    long due = start + mBytesWritten * 1000000000L / mWriteRate;
+                    long wait = due - System.nanoTime();
+
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    }
+                }
+            } catch (IOException e) {
+                // The connection was closed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
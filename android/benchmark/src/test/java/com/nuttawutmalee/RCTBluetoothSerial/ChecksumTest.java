@@ -0,0 +1,82 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checksum: the standard check values and trailer placement
+ */
+public class ChecksumTest {
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String CHECK = "123456789";
+
+    @Test
+    public void crc16CcittCheckValue() {
+        assertEquals(0x29B1, checksum("crc16-ccitt", false).compute(CHECK, 0, CHECK.length()));
+        assertEquals(0x29B1, checksum("crc16-ccitt", false).compute(CHECK.getBytes(ISO_8859_1), 0, CHECK.length()));
+    }
+
+    @Test
+    public void crc16XmodemCheckValue() {
+        assertEquals(0x31C3, checksum("crc16-xmodem", false).compute(CHECK, 0, CHECK.length()));
+        assertEquals(0x31C3, checksum("crc16-xmodem", false).compute(CHECK.getBytes(ISO_8859_1), 0, CHECK.length()));
+    }
+
+    @Test
+    public void crc32CheckValue() {
+        assertEquals(0xCBF43926L, checksum("crc32", false).compute(CHECK, 0, CHECK.length()));
+        assertEquals(0xCBF43926L, checksum("crc32", false).compute(CHECK.getBytes(ISO_8859_1), 0, CHECK.length()));
+    }
+
+    @Test
+    public void trailerByteOrder() {
+        byte[] big = checksum("crc16-ccitt", false).append(CHECK.getBytes(ISO_8859_1));
+        byte[] little = checksum("crc16-ccitt", true).append(CHECK.getBytes(ISO_8859_1));
+
+        assertEquals(0x29, big[9] & 0xFF);
+        assertEquals(0xB1, big[10] & 0xFF);
+        assertEquals(0xB1, little[9] & 0xFF);
+        assertEquals(0x29, little[10] & 0xFF);
+    }
+
+    @Test
+    public void appendedTrailerIsValid() {
+        Checksum checksum = checksum("crc32", false);
+        String frame = new String(checksum.append(CHECK.getBytes(ISO_8859_1)), ISO_8859_1) + "\n";
+
+        assertTrue(checksum.isValid(frame, frame.length() - 1));
+        assertFalse(checksum.isValid("0" + frame.substring(1), frame.length() - 1));
+    }
+
+    @Test
+    public void trailerGoesBeforeDelimiter() {
+        Checksum checksum = checksum("crc16-xmodem", false);
+        byte[] delimiter = "\r\n".getBytes(ISO_8859_1);
+        byte[] data = checksum.append((CHECK + "\r\n").getBytes(ISO_8859_1), delimiter);
+
+        // 0x31C3 is the check value, "1" and 0xC3 in ISO-8859-1
+        assertArrayEquals((CHECK + "1\u00C3\r\n").getBytes(ISO_8859_1), data);
+    }
+
+    @Test
+    public void startSkipsLeadingBytes() {
+        Checksum checksum = new Checksum(Checksum.Algorithm.CRC16_CCITT, 1, false, false, true);
+
+        assertEquals(0x29B1, checksum.compute("#" + CHECK, checksum.start, CHECK.length() + 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownAlgorithm() {
+        Checksum.Algorithm.parse("md5");
+    }
+
+    private static Checksum checksum(String algorithm, boolean littleEndian) {
+        return new Checksum(Checksum.Algorithm.parse(algorithm), 0, littleEndian, false, true);
+    }
+}
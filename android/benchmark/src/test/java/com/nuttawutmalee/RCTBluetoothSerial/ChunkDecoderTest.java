@@ -0,0 +1,76 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Chunk decoder: multi-byte sequences split across reads
+ */
+public class ChunkDecoderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void isoLatin1MapsEveryByteToOneChar() {
+        byte[] bytes = { 0x41, (byte) 0xE9, (byte) 0xFF, 0x00 };
+
+        assertEquals("A\u00E9\u00FF\u0000", new ChunkDecoder().decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void multiByteCharSplitAtEveryByte() {
+        // 3 byte euro sign and 4 byte G clef between ASCII chars
+        String text = "a\u20ACb\uD834\uDD1Ec";
+        byte[] bytes = text.getBytes(UTF_8);
+
+        for (int split = 1; split < bytes.length; split++) {
+            ChunkDecoder decoder = new ChunkDecoder(UTF_8, 16);
+            String decoded = decoder.decode(bytes, 0, split) + decoder.decode(bytes, split, bytes.length - split);
+
+            assertEquals("split at " + split, text, decoded);
+        }
+    }
+
+    @Test
+    public void charSplitOverThreeChunks() {
+        byte[] bytes = "\u20AC".getBytes(UTF_8);
+        ChunkDecoder decoder = new ChunkDecoder(UTF_8, 16);
+
+        assertEquals("", decoder.decode(bytes, 0, 1));
+        assertEquals("", decoder.decode(bytes, 1, 1));
+        assertEquals("\u20AC", decoder.decode(bytes, 2, 1));
+    }
+
+    @Test
+    public void chunkLargerThanBufferIsDecoded() {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            text.append("\u00E4\u20AC");
+        }
+
+        byte[] bytes = text.toString().getBytes(UTF_8);
+
+        assertEquals(text.toString(), new ChunkDecoder(UTF_8, 16).decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void malformedInputIsReplaced() {
+        byte[] bytes = { 0x61, (byte) 0xFF, 0x62 };
+
+        assertEquals("a\uFFFDb", new ChunkDecoder(UTF_8, 16).decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void resetDropsCarriedBytes() {
+        byte[] euro = "\u20AC".getBytes(UTF_8);
+        ChunkDecoder decoder = new ChunkDecoder(UTF_8, 16);
+
+        decoder.decode(euro, 0, 2);
+        decoder.reset();
+
+        assertEquals("x", decoder.decode(new byte[] { 0x78 }, 0, 1));
+    }
+}
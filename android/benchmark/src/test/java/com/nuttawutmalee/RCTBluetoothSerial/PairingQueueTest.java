@@ -0,0 +1,97 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pairing queue: per-batch concurrency and failing bonder calls
+ */
+public class PairingQueueTest {
+    private final HashSet<String> mBonding = new HashSet<>();
+    private final List<String> mDone = new ArrayList<>();
+    private ScheduledExecutorService mScheduler;
+    private PairingQueue mQueue;
+
+    private final PairingQueue.Callback mCallback = new PairingQueue.Callback() {
+        @Override
+        public void onDone(String id, String status, String error) {
+            mDone.add(id + " " + status);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mScheduler = Executors.newSingleThreadScheduledExecutor();
+        mQueue = new PairingQueue(new PairingQueue.Bonder() {
+            @Override
+            public boolean isBonded(String id) {
+                if (id.startsWith("bad")) {
+                    throw new IllegalArgumentException(id + " is not a valid Bluetooth address");
+                }
+
+                return false;
+            }
+
+            @Override
+            public void createBond(String id) {
+                mBonding.add(id);
+            }
+
+            @Override
+            public void removeBond(String id) {
+            }
+
+            @Override
+            public void cancelBond(String id) {
+            }
+        }, mScheduler);
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdownNow();
+    }
+
+    @Test
+    public void batchesKeepTheirOwnConcurrency() {
+        PairingQueue.Batch one = new PairingQueue.Batch(1);
+        PairingQueue.Batch two = new PairingQueue.Batch(2);
+
+        mQueue.submit(one, "a1", true, 0, null, mCallback);
+        mQueue.submit(one, "a2", true, 0, null, mCallback);
+        mQueue.submit(two, "b1", true, 0, null, mCallback);
+        mQueue.submit(two, "b2", true, 0, null, mCallback);
+        mQueue.submit(two, "b3", true, 0, null, mCallback);
+
+        assertEquals(3, mBonding.size());
+
+        mQueue.onBonded("a1");
+        assertEquals(4, mBonding.size());
+
+        mQueue.onBonded("b1");
+        assertEquals(5, mBonding.size());
+    }
+
+    @Test
+    public void failingBonderCallFailsOnlyItsDevice() {
+        PairingQueue.Batch batch = new PairingQueue.Batch(1);
+
+        mQueue.submit(batch, "bad", true, 0, null, mCallback);
+        mQueue.submit(batch, "a1", true, 0, null, mCallback);
+
+        assertEquals(1, mDone.size());
+        assertEquals("bad " + PairingQueue.FAILED, mDone.get(0));
+
+        mQueue.onBonded("a1");
+        assertEquals("a1 " + PairingQueue.PAIRED, mDone.get(1));
+    }
+}
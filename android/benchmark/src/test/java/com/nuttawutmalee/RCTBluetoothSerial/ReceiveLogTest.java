@@ -0,0 +1,103 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Receive log: independent cursors over a bounded shared buffer
+ */
+public class ReceiveLogTest {
+    @Test
+    public void everyConsumerSeesEveryChar() {
+        ReceiveLog log = new ReceiveLog(64);
+        log.open("parser");
+        log.open("logger");
+
+        log.append("abc");
+        assertEquals("abc", log.read("parser", 0).data);
+
+        log.append("def");
+        assertEquals("def", log.read("parser", 0).data);
+        assertEquals("abcdef", log.read("logger", 0).data);
+    }
+
+    @Test
+    public void consumerThatFallsBehindIsToldHowMuchItLost() {
+        ReceiveLog log = new ReceiveLog(10);
+        log.open("fast");
+        log.open("slow");
+
+        for (int i = 0; i < 5; i++) {
+            log.append("01234");
+            assertEquals("01234", log.read("fast", 0).data);
+        }
+
+        // 25 chars arrived, only the newest 10 are kept
+        assertEquals(10, log.available("slow"));
+
+        ReceiveLog.Read read = log.read("slow", 0);
+        assertEquals("0123401234", read.data);
+        assertEquals(15, read.lost);
+
+        // Loss is reported once
+        log.append("x");
+        read = log.read("slow", 0);
+        assertEquals("x", read.data);
+        assertEquals(0, read.lost);
+    }
+
+    @Test
+    public void lostCharsAddUpOverSeveralAppends() {
+        ReceiveLog log = new ReceiveLog(4);
+        log.open("slow");
+
+        log.append("abcdef");
+        log.append("ghij");
+
+        ReceiveLog.Read read = log.read("slow", 2);
+        assertEquals("gh", read.data);
+        assertEquals(6, read.lost);
+        assertEquals("ij", log.read("slow", 0).data);
+    }
+
+    @Test
+    public void readUntilTakesOneFrame() {
+        ReceiveLog log = new ReceiveLog(64);
+        log.open("frames");
+        log.append("one\r\ntwo\r\nthr");
+
+        assertEquals("one\r\n", log.readUntil("frames", "\r\n").data);
+        assertEquals("two\r\n", log.readUntil("frames", "\r\n").data);
+        assertEquals("", log.readUntil("frames", "\r\n").data);
+        assertEquals(3, log.available("frames"));
+    }
+
+    @Test
+    public void newConsumerStartsAtNewestData() {
+        ReceiveLog log = new ReceiveLog(64);
+        log.open("first");
+        log.append("old");
+        log.open("second");
+        log.append("new");
+
+        assertEquals("new", log.read("second", 0).data);
+    }
+
+    @Test
+    public void unknownConsumer() {
+        ReceiveLog log = new ReceiveLog(64);
+
+        assertTrue(log.open("a"));
+        assertFalse(log.open("a"));
+        assertTrue(log.close("a"));
+        assertFalse(log.close("a"));
+        assertTrue(log.isEmpty());
+        assertEquals(-1, log.available("a"));
+        assertNull(log.read("a", 0));
+        assertNull(log.readUntil("a", "\n"));
+    }
+}
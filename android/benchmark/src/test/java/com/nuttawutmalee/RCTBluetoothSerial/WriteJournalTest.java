@@ -0,0 +1,158 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Write journal: replay bookkeeping and recovery of the file after a crash
+ */
+public class WriteJournalTest {
+    private static final String ID = "00:11:22:33:44:55";
+    private static final long MAX_BYTES = 64 * 1024;
+    private static final long TTL = 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File mDirectory;
+    private long mNow;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = folder.newFolder("journals");
+        mNow = System.currentTimeMillis();
+    }
+
+    @Test
+    public void reopenSkipsReplayedEntries() throws IOException {
+        WriteJournal journal = WriteJournal.create(mDirectory, ID, MAX_BYTES, TTL);
+        appendAll(journal, "a", "b", "c", "d", "e");
+
+        Object replayer = new Object();
+        journal.commit(journal.nextBatch(replayer, 2, 1024, mNow));
+        journal.abort(replayer);
+
+        // Nothing is compacted yet, the header counts the replayed bytes
+        WriteJournal reopened = openOnly();
+        assertEquals(3, reopened.size());
+        assertEquals("cde", replayAll(reopened));
+    }
+
+    @Test
+    public void reopenDropsCutOffLastEntry() throws IOException {
+        WriteJournal journal = WriteJournal.create(mDirectory, ID, MAX_BYTES, TTL);
+        appendAll(journal, "first", "second", "third");
+
+        // A crash during the last append leaves part of its bytes behind
+        cutOff(3);
+
+        WriteJournal reopened = openOnly();
+        assertEquals(2, reopened.size());
+
+        // Opening compacts the file, so appends after the cut are readable
+        appendAll(reopened, "fourth");
+        assertEquals("firstsecondfourth", replayAll(openOnly()));
+    }
+
+    @Test
+    public void reopenAfterReplayAndCutOff() throws IOException {
+        WriteJournal journal = WriteJournal.create(mDirectory, ID, MAX_BYTES, TTL);
+        appendAll(journal, "1", "2", "3", "4");
+
+        Object replayer = new Object();
+        journal.commit(journal.nextBatch(replayer, 1, 1024, mNow));
+        cutOff(1);
+
+        assertEquals("23", replayAll(openOnly()));
+    }
+
+    @Test
+    public void emptiedJournalIsCompacted() throws IOException {
+        WriteJournal journal = WriteJournal.create(mDirectory, ID, MAX_BYTES, TTL);
+        long empty = fileOf().length();
+        appendAll(journal, "x", "y");
+
+        assertEquals("xy", replayAll(journal));
+        assertFalse(journal.isPending());
+        assertEquals(empty, fileOf().length());
+    }
+
+    @Test
+    public void onlyOneReplayHoldsTheJournal() throws IOException {
+        WriteJournal journal = WriteJournal.create(mDirectory, ID, MAX_BYTES, TTL);
+        appendAll(journal, "a", "b");
+
+        Object first = new Object();
+        Object second = new Object();
+        WriteJournal.Batch batch = journal.nextBatch(first, 1, 1024, mNow);
+
+        assertNull(journal.nextBatch(second, 1, 1024, mNow));
+        journal.commit(batch);
+        journal.abort(first);
+
+        assertEquals("b", new String(journal.nextBatch(second, 1, 1024, mNow).data, "UTF-8"));
+    }
+
+    @Test
+    public void appendIsRefusedWhenFull() throws IOException {
+        WriteJournal journal = WriteJournal.create(mDirectory, ID, 20, TTL);
+
+        assertTrue(journal.append(new byte[8], mNow));
+        assertFalse(journal.append(new byte[8], mNow));
+        assertEquals(1, journal.size());
+    }
+
+    private void appendAll(WriteJournal journal, String... entries) throws IOException {
+        for (String entry : entries) {
+            assertTrue(journal.append(entry.getBytes("UTF-8"), mNow));
+        }
+    }
+
+    private String replayAll(WriteJournal journal) throws IOException {
+        StringBuilder replayed = new StringBuilder();
+        Object replayer = new Object();
+        WriteJournal.Batch batch;
+
+        while ((batch = journal.nextBatch(replayer, 1, 1024, mNow)) != null) {
+            replayed.append(new String(batch.data, "UTF-8"));
+            journal.commit(batch);
+        }
+
+        return replayed.toString();
+    }
+
+    private WriteJournal openOnly() {
+        List<WriteJournal> journals = WriteJournal.openAll(mDirectory, mNow);
+        assertEquals(1, journals.size());
+        assertEquals(ID, journals.get(0).getId());
+        return journals.get(0);
+    }
+
+    private File fileOf() {
+        File[] files = mDirectory.listFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private void cutOff(int bytes) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileOf(), "rw");
+
+        try {
+            file.setLength(file.length() - bytes);
+        } finally {
+            file.close();
+        }
+    }
+}
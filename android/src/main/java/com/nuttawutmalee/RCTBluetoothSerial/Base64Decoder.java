@@ -0,0 +1,93 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+/**
+ * Decoder for standard base64 as sent by writeToDevice.
+ *
+ * It sizes the output array exactly in a counting pass and decodes
+ * straight from the String, without an intermediate byte copy of the
+ * input. Whitespace is ignored and padding is optional. This class is
+ * plain Java so it can be benchmarked on a desktop JVM.
+ */
+final class Base64Decoder {
+    private static final int SKIP = -2;
+    private static final int INVALID = -1;
+    private static final int[] DECODE = new int[128];
+
+    static {
+        for (int i = 0; i < DECODE.length; i++) {
+            DECODE[i] = INVALID;
+        }
+
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = i;
+        }
+
+        DECODE[' '] = SKIP;
+        DECODE['\t'] = SKIP;
+        DECODE['\r'] = SKIP;
+        DECODE['\n'] = SKIP;
+    }
+
+    private Base64Decoder() {
+    }
+
+    /**
+     * Decode a base64 string
+     *
+     * @param input Base64 string
+     * @return Decoded bytes
+     * @throws IllegalArgumentException If the input is not valid base64
+     */
+    static byte[] decode(String input) {
+        int length = input.length();
+        int end = length;
+        int significant = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+
+            if (c == '=') {
+                end = i;
+                break;
+            }
+
+            int value = c < 128 ? DECODE[c] : INVALID;
+
+            if (value >= 0) {
+                significant++;
+            } else if (value == INVALID) {
+                throw new IllegalArgumentException("bad base-64");
+            }
+        }
+
+        if (significant % 4 == 1) {
+            throw new IllegalArgumentException("bad base-64");
+        }
+
+        byte[] output = new byte[significant * 3 / 4];
+        int accumulator = 0;
+        int bits = 0;
+        int position = 0;
+
+        for (int i = 0; i < end; i++) {
+            int value = DECODE[input.charAt(i)];
+
+            if (value < 0) {
+                continue;
+            }
+
+            accumulator = (accumulator << 6) | value;
+            bits += 6;
+
+            if (bits >= 8) {
+                bits -= 8;
+                output[position++] = (byte) (accumulator >> bits);
+                accumulator &= (1 << bits) - 1;
+            }
+        }
+
+        return output;
+    }
+}
@@ -0,0 +1,40 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.bluetooth.BluetoothSocket;
+
+/**
+ * Transport over a connected Bluetooth RFCOMM socket
+ */
+class BluetoothTransport implements Transport {
+    private final BluetoothSocket mSocket;
+    private final String mId;
+
+    BluetoothTransport(BluetoothSocket socket) {
+        mSocket = socket;
+        mId = socket.getRemoteDevice().getAddress();
+    }
+
+    @Override
+    public String getId() {
+        return mId;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return mSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return mSocket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+    }
+}
@@ -0,0 +1,212 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+/**
+ * Checksum trailer of a frame: the checksum of the frame bytes from a start
+ * offset up to the trailer, stored right before the delimiter. Received
+ * frames are checked against it and written data can get it appended.
+ *
+ * Frames are decoded as ISO-8859-1, so every char of a frame is one byte
+ * on the wire and the checksum can be computed straight from the String.
+ * The CRCs are table driven, one lookup per byte.
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+class Checksum {
+    /**
+     * Supported algorithms
+     */
+    enum Algorithm {
+        /** CRC-16/CCITT-FALSE: poly 0x1021, init 0xFFFF, not reflected */
+        CRC16_CCITT("crc16-ccitt", 2),
+        /** CRC-16/XMODEM: poly 0x1021, init 0x0000, not reflected */
+        CRC16_XMODEM("crc16-xmodem", 2),
+        /** CRC-32 (ISO-HDLC, as in zip and Ethernet) */
+        CRC32("crc32", 4);
+
+        final String name;
+        final int length;
+
+        Algorithm(String name, int length) {
+            this.name = name;
+            this.length = length;
+        }
+
+        /**
+         * @param name Algorithm name, e.g. "crc16-ccitt"
+         * @return Algorithm
+         * @throws IllegalArgumentException When the name is unknown
+         */
+        static Algorithm parse(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.name.equalsIgnoreCase(name)) {
+                    return algorithm;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown checksum algorithm " + name);
+        }
+    }
+
+    private static final int[] CRC16_TABLE = new int[256];
+    private static final int[] CRC32_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc16 = i << 8;
+            int crc32 = i;
+
+            for (int bit = 0; bit < 8; bit++) {
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x1021 : crc16 << 1;
+                crc32 = (crc32 & 1) != 0 ? (crc32 >>> 1) ^ 0xEDB88320 : crc32 >>> 1;
+            }
+
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+            CRC32_TABLE[i] = crc32;
+        }
+    }
+
+    final Algorithm algorithm;
+    final int start;
+    final boolean littleEndian;
+    final boolean dropInvalid;
+    final boolean appendOnWrite;
+
+    /**
+     * @param algorithm Checksum algorithm
+     * @param start Number of leading frame bytes not covered, e.g. a start byte
+     * @param littleEndian Byte order of the trailer
+     * @param dropInvalid Drop frames that fail the check instead of flagging them
+     * @param appendOnWrite Append the trailer to written data
+     */
+    Checksum(Algorithm algorithm, int start, boolean littleEndian, boolean dropInvalid, boolean appendOnWrite) {
+        if (start < 0) {
+            throw new IllegalArgumentException("Checksum start must not be negative");
+        }
+
+        this.algorithm = algorithm;
+        this.start = start;
+        this.littleEndian = littleEndian;
+        this.dropInvalid = dropInvalid;
+        this.appendOnWrite = appendOnWrite;
+    }
+
+    /**
+     * Check the trailer of a frame
+     *
+     * @param frame Received frame
+     * @param end Length of the frame without its delimiter
+     * @return Whether the frame is long enough and its trailer matches
+     */
+    boolean isValid(String frame, int end) {
+        int trailer = end - algorithm.length;
+
+        if (trailer < start) {
+            return false;
+        }
+
+        long expected = 0;
+
+        for (int i = 0; i < algorithm.length; i++) {
+            int shift = littleEndian ? 8 * i : 8 * (algorithm.length - 1 - i);
+            expected |= (long) (frame.charAt(trailer + i) & 0xFF) << shift;
+        }
+
+        return compute(frame, start, trailer) == expected;
+    }
+
+    /**
+     * Append the trailer to data that is about to be written
+     *
+     * @param data Data without trailer
+     * @return Data with trailer
+     */
+    byte[] append(byte[] data) {
+        return append(data, null);
+    }
+
+    /**
+     * Append the trailer to data that is about to be written. When the
+     * data ends with the delimiter, the trailer goes right before it, the
+     * same place it is checked in received frames.
+     *
+     * @param data Data without trailer
+     * @param delimiter Frame delimiter, or null
+     * @return Data with trailer
+     */
+    byte[] append(byte[] data, byte[] delimiter) {
+        int end = endsWith(data, delimiter) ? data.length - delimiter.length : data.length;
+        long value = compute(data, Math.min(start, end), end);
+        byte[] out = new byte[data.length + algorithm.length];
+
+        System.arraycopy(data, 0, out, 0, end);
+
+        for (int i = 0; i < algorithm.length; i++) {
+            int shift = littleEndian ? 8 * i : 8 * (algorithm.length - 1 - i);
+            out[end + i] = (byte) (value >>> shift);
+        }
+
+        System.arraycopy(data, end, out, end + algorithm.length, data.length - end);
+
+        return out;
+    }
+
+    private static boolean endsWith(byte[] data, byte[] suffix) {
+        if (suffix == null || suffix.length == 0 || suffix.length > data.length) {
+            return false;
+        }
+
+        for (int i = 0; i < suffix.length; i++) {
+            if (data[data.length - suffix.length + i] != suffix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    long compute(String data, int from, int to) {
+        switch (algorithm) {
+            case CRC32: {
+                int crc = 0xFFFFFFFF;
+
+                for (int i = from; i < to; i++) {
+                    crc = (crc >>> 8) ^ CRC32_TABLE[(crc ^ data.charAt(i)) & 0xFF];
+                }
+
+                return ~crc & 0xFFFFFFFFL;
+            }
+            default: {
+                int crc = algorithm == Algorithm.CRC16_CCITT ? 0xFFFF : 0;
+
+                for (int i = from; i < to; i++) {
+                    crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ data.charAt(i)) & 0xFF]) & 0xFFFF;
+                }
+
+                return crc;
+            }
+        }
+    }
+
+    long compute(byte[] data, int from, int to) {
+        switch (algorithm) {
+            case CRC32: {
+                int crc = 0xFFFFFFFF;
+
+                for (int i = from; i < to; i++) {
+                    crc = (crc >>> 8) ^ CRC32_TABLE[(crc ^ data[i]) & 0xFF];
+                }
+
+                return ~crc & 0xFFFFFFFFL;
+            }
+            default: {
+                int crc = algorithm == Algorithm.CRC16_CCITT ? 0xFFFF : 0;
+
+                for (int i = from; i < to; i++) {
+                    crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+                }
+
+                return crc;
+            }
+        }
+    }
+}
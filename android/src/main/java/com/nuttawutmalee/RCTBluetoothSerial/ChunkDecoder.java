@@ -0,0 +1,112 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes chunks read from the input stream into Strings.
+ *
+ * ISO-8859-1, the default, maps every byte to one char, so chunks are
+ * decoded on their own. Other charsets are decoded as a stream with a
+ * single reused decoder and preallocated buffers: a multi-byte sequence
+ * split across two reads is carried over and completed by the next chunk.
+ * Malformed input is replaced rather than failing the connection.
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+class ChunkDecoder {
+    static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+    // Room for the tail of an incomplete sequence, 3 bytes in UTF-8
+    private static final int MAX_CARRY = 16;
+
+    private final Charset mCharset;
+    private final CharsetDecoder mDecoder;
+    private final ByteBuffer mIn;
+    private CharBuffer mOut;
+
+    ChunkDecoder() {
+        this(ISO_8859_1, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param charset Charset of the stream
+     * @param chunkSize Usual size of a chunk, i.e. the read buffer size
+     */
+    ChunkDecoder(Charset charset, int chunkSize) {
+        mCharset = charset;
+
+        if (ISO_8859_1.equals(charset)) {
+            mDecoder = null;
+            mIn = null;
+            return;
+        }
+
+        mDecoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        mIn = ByteBuffer.allocate(chunkSize + MAX_CARRY);
+        mOut = CharBuffer.allocate((int) Math.ceil(mIn.capacity() * (double) mDecoder.maxCharsPerByte()));
+    }
+
+    Charset getCharset() {
+        return mCharset;
+    }
+
+    /**
+     * Decode a chunk of bytes. With a multi-byte charset, bytes of an
+     * incomplete sequence at the end of the chunk are kept for the next one.
+     *
+     * @param bytes Buffer
+     * @param offset Offset of the chunk
+     * @param length Length of the chunk
+     * @return Decoded chunk
+     */
+    String decode(byte[] bytes, int offset, int length) {
+        if (mDecoder == null) {
+            return new String(bytes, offset, length, ISO_8859_1);
+        }
+
+        mOut.clear();
+
+        while (length > 0) {
+            int n = Math.min(length, mIn.remaining());
+            mIn.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+
+            mIn.flip();
+
+            while (mDecoder.decode(mIn, mOut, false) == CoderResult.OVERFLOW) {
+                grow();
+            }
+
+            mIn.compact();
+        }
+
+        mOut.flip();
+        return mOut.toString();
+    }
+
+    /**
+     * Drop an incomplete sequence carried over from the last chunk
+     */
+    void reset() {
+        if (mDecoder != null) {
+            mDecoder.reset();
+            mIn.clear();
+        }
+    }
+
+    private void grow() {
+        CharBuffer out = CharBuffer.allocate(mOut.capacity() * 2);
+        mOut.flip();
+        out.put(mOut);
+        mOut = out;
+    }
+}
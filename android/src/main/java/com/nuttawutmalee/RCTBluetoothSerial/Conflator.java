@@ -0,0 +1,127 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Latest-value delivery of a single device. The receive path offers every
+ * complete frame and only the most recent one, or the most recent one per
+ * key taken from the frame, is kept until the next flush. Superseded
+ * frames are dropped before anything is allocated for the bridge.
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+class Conflator {
+    static final int DEFAULT_MAX_KEYS = 256;
+
+    private static final String NO_KEY = "";
+
+    final long periodMicros;
+
+    private final int mKeyOffset;
+    private final int mKeyLength;
+    private final Pattern mKeyPattern;
+    private final int mMaxKeys;
+    private LinkedHashMap<String, ReceivedFrame> mPending = new LinkedHashMap<>();
+
+    /**
+     * Flush task, owned by the module
+     */
+    ScheduledFuture<?> task;
+
+    /**
+     * @param rate Maximum number of flushes per second
+     * @param keyOffset Position of a fixed key in the frame, or -1
+     * @param keyLength Length of the fixed key
+     * @param keyPattern Regex whose first group (or whole match) is the key, or null
+     * @param maxKeys Maximum number of keys waiting for a flush
+     */
+    Conflator(double rate, int keyOffset, int keyLength, Pattern keyPattern, int maxKeys) {
+        if (!(rate > 0 && rate <= 1000)) {
+            throw new IllegalArgumentException("Conflation rate must be between 0 and 1000 per second");
+        }
+
+        if (keyOffset >= 0 && keyLength <= 0) {
+            throw new IllegalArgumentException("Conflation key length must be positive");
+        }
+
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Conflation must keep at least one key");
+        }
+
+        periodMicros = Math.max(1000, (long) (1e6 / rate));
+        mKeyOffset = keyOffset;
+        mKeyLength = keyLength;
+        mKeyPattern = keyPattern;
+        mMaxKeys = maxKeys;
+    }
+
+    /**
+     * @return Whether the key is taken from a fixed position, which counts
+     *         chars as bytes
+     */
+    boolean hasOffsetKey() {
+        return mKeyOffset >= 0;
+    }
+
+    /**
+     * Keep a frame until the next flush
+     *
+     * @param frame Complete frame
+     * @return False if a frame was dropped: the pending frame of the same
+     *         key, or this frame because too many keys are pending
+     */
+    synchronized boolean offer(ReceivedFrame frame) {
+        String key = keyOf(frame.data, frame.end);
+
+        if (mPending.put(key, frame) != null) {
+            return false;
+        }
+
+        if (mPending.size() > mMaxKeys) {
+            mPending.remove(key);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Take the frames to flush, in the order their keys first came in
+     *
+     * @return Frames, empty if nothing came in since the last flush
+     */
+    synchronized List<ReceivedFrame> drain() {
+        if (mPending.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+
+        List<ReceivedFrame> frames = new ArrayList<>(mPending.values());
+        mPending = new LinkedHashMap<>();
+
+        return frames;
+    }
+
+    private String keyOf(String frame, int end) {
+        if (mKeyPattern != null) {
+            Matcher matcher = mKeyPattern.matcher(frame);
+            matcher.region(0, end);
+
+            if (!matcher.find()) {
+                return NO_KEY;
+            }
+
+            return matcher.groupCount() > 0 && matcher.group(1) != null ? matcher.group(1) : matcher.group();
+        }
+
+        if (mKeyOffset >= 0) {
+            return mKeyOffset + mKeyLength <= end ? frame.substring(mKeyOffset, mKeyOffset + mKeyLength) : NO_KEY;
+        }
+
+        return NO_KEY;
+    }
+}
@@ -0,0 +1,120 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import static com.nuttawutmalee.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
+
+/**
+ * Foreground service that keeps the app process at foreground priority
+ * while the connection keeper is on, so connections and their threads
+ * survive the activity going to the background or being destroyed.
+ *
+ * The connections themselves stay in RCTBluetoothSerialService; this
+ * service only holds the ongoing notification.
+ */
+public class ConnectionKeeperService extends Service {
+    // Debugging
+    private static final boolean D = true;
+
+    private static final String CHANNEL_ID = "RCTBluetoothSerial";
+    private static final int NOTIFICATION_ID = 0x5E71A1;
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_TEXT = "text";
+
+    /**
+     * Start the service or update its notification
+     *
+     * @param context Any context
+     * @param title Notification title
+     * @param text Notification text
+     */
+    static void start(Context context, String title, String text) {
+        Intent intent = new Intent(context, ConnectionKeeperService.class)
+                .putExtra(EXTRA_TITLE, title)
+                .putExtra(EXTRA_TEXT, text);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+    }
+
+    /**
+     * Stop the service
+     *
+     * @param context Any context
+     */
+    static void stop(Context context) {
+        context.stopService(new Intent(context, ConnectionKeeperService.class));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (D) Log.d(TAG, "Connection keeper started");
+
+        String title = intent != null ? intent.getStringExtra(EXTRA_TITLE) : null;
+        String text = intent != null ? intent.getStringExtra(EXTRA_TEXT) : null;
+
+        startForeground(NOTIFICATION_ID, buildNotification(title, text));
+
+        // Connections do not outlive the process, nothing to restart
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (D) Log.d(TAG, "Connection keeper stopped");
+        stopForeground(true);
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private Notification buildNotification(String title, String text) {
+        Notification.Builder builder;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(
+                    new NotificationChannel(CHANNEL_ID, "Bluetooth connections", NotificationManager.IMPORTANCE_LOW));
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this);
+        }
+
+        builder.setContentTitle(title != null ? title : "Bluetooth connected")
+                .setSmallIcon(getApplicationInfo().icon)
+                .setOngoing(true);
+
+        if (text != null) {
+            builder.setContentText(text);
+        }
+
+        Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+
+        if (launch != null) {
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                flags |= PendingIntent.FLAG_IMMUTABLE;
+            }
+
+            builder.setContentIntent(PendingIntent.getActivity(this, 0, launch, flags));
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Connection state machine of a single device. The state is swapped with
+ * a compare-and-set, so it can be read from any thread without a lock,
+ * and only the transitions listed in {@link State#canMoveTo(State)} are
+ * taken. Every transition is reported to the listener.
+ *
+ * The object doubles as the monitor of the device's connection lifecycle,
+ * so connecting or stopping one device never blocks another.
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+class ConnectionState {
+    /**
+     * Connection states, with the names used in events
+     */
+    enum State {
+        NONE("none"),
+        CONNECTING("connecting"),
+        CONNECTED("connected"),
+        DISCONNECTING("disconnecting");
+
+        final String name;
+
+        State(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param next Next state
+         * @return Whether the state machine may move from this state to next
+         */
+        boolean canMoveTo(State next) {
+            switch (this) {
+                case NONE:
+                    return next == CONNECTING;
+                case CONNECTING:
+                    return next == CONNECTED || next == DISCONNECTING || next == NONE;
+                case CONNECTED:
+                    // Connecting again replaces the connection
+                    return next == CONNECTING || next == DISCONNECTING || next == NONE;
+                case DISCONNECTING:
+                    return next == NONE;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Receiver of state transitions
+     */
+    interface Listener {
+        /**
+         * @param id Device address
+         * @param previous State before the transition
+         * @param state State after the transition
+         */
+        void onStateChanged(String id, State previous, State state);
+    }
+
+    private final String mId;
+    private final Listener mListener;
+    private final AtomicReference<State> mState = new AtomicReference<>(State.NONE);
+
+    /**
+     * @param id Device address
+     * @param listener Receiver of state transitions
+     */
+    ConnectionState(String id, Listener listener) {
+        mId = id;
+        mListener = listener;
+    }
+
+    State get() {
+        return mState.get();
+    }
+
+    /**
+     * Move to a state if the transition from the current state is legal
+     *
+     * @param next Next state
+     * @return False if the device already is in that state or the
+     *         transition is not legal
+     */
+    boolean moveTo(State next) {
+        while (true) {
+            State current = mState.get();
+
+            if (current == next || !current.canMoveTo(next)) {
+                return false;
+            }
+
+            if (mState.compareAndSet(current, next)) {
+                mListener.onStateChanged(mId, current, next);
+                return true;
+            }
+        }
+    }
+}
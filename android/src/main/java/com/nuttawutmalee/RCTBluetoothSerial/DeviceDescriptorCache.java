@@ -0,0 +1,261 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+
+/**
+ * In-memory snapshot of device descriptors (name, address and class).
+ *
+ * Every getName() and getBluetoothClass() call on a BluetoothDevice is a
+ * binder IPC call, so the descriptors are read once and then kept current
+ * by the bond state and name change broadcasts handled by the module.
+ * Listing bonded devices and building event payloads never touches the
+ * Bluetooth stack as long as the device is already known.
+ *
+ * It also remembers the service UUIDs advertised through SDP and the UUID
+ * that last connected successfully, so later connections go straight to
+ * the right service record.
+ */
+class DeviceDescriptorCache {
+    private final ConcurrentHashMap<String, Descriptor> mDescriptors = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<UUID>> mServiceUuids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, UUID> mPreferredUuids = new ConcurrentHashMap<>();
+    private volatile boolean mLoaded = false;
+
+    /**
+     * Immutable descriptor of a single device
+     */
+    static final class Descriptor {
+        final String address;
+        final String name;
+        final Integer deviceClass;
+        final boolean bonded;
+
+        Descriptor(String address, String name, Integer deviceClass, boolean bonded) {
+            this.address = address;
+            this.name = name;
+            this.deviceClass = deviceClass;
+            this.bonded = bonded;
+        }
+
+        Descriptor withName(String newName) {
+            return new Descriptor(address, newName, deviceClass, bonded);
+        }
+
+        Descriptor withBonded(boolean newBonded) {
+            return new Descriptor(address, name, deviceClass, newBonded);
+        }
+    }
+
+    /**
+     * Whether the bonded devices snapshot has been taken
+     *
+     * @return Is loaded
+     */
+    boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Take a snapshot of all bonded devices. Devices that are no longer
+     * bonded keep their descriptor but are marked as not bonded.
+     *
+     * @param adapter Bluetooth adapter
+     */
+    synchronized void load(BluetoothAdapter adapter) {
+        Set<BluetoothDevice> bondedDevices = adapter.getBondedDevices();
+
+        if (bondedDevices == null) {
+            return;
+        }
+
+        for (Descriptor descriptor : mDescriptors.values()) {
+            if (descriptor.bonded) {
+                mDescriptors.put(descriptor.address, descriptor.withBonded(false));
+            }
+        }
+
+        for (BluetoothDevice device : bondedDevices) {
+            mDescriptors.put(device.getAddress(), read(device, true));
+        }
+
+        mLoaded = true;
+    }
+
+    /**
+     * List descriptors of all bonded devices
+     *
+     * @return Bonded device descriptors
+     */
+    List<Descriptor> getBonded() {
+        List<Descriptor> bonded = new ArrayList<>();
+
+        for (Descriptor descriptor : mDescriptors.values()) {
+            if (descriptor.bonded) {
+                bonded.add(descriptor);
+            }
+        }
+
+        return bonded;
+    }
+
+    /**
+     * Get the descriptor of a device, reading it from the device only
+     * if it is not cached yet.
+     *
+     * @param device Bluetooth device
+     * @return Device descriptor
+     */
+    Descriptor get(BluetoothDevice device) {
+        Descriptor descriptor = mDescriptors.get(device.getAddress());
+
+        if (descriptor == null) {
+            descriptor = refresh(device);
+        }
+
+        return descriptor;
+    }
+
+    /**
+     * Get the cached descriptor of a device address
+     *
+     * @param address Device address
+     * @return Device descriptor or null if unknown
+     */
+    Descriptor get(String address) {
+        return mDescriptors.get(address);
+    }
+
+    /**
+     * Store a descriptor, e.g. for a connection that is not a Bluetooth device
+     *
+     * @param descriptor Device descriptor
+     */
+    void put(Descriptor descriptor) {
+        mDescriptors.put(descriptor.address, descriptor);
+    }
+
+    /**
+     * Read the descriptor from the device again, e.g. when it shows up
+     * in a discovery with possibly new information.
+     *
+     * @param device Bluetooth device
+     * @return Device descriptor
+     */
+    Descriptor refresh(BluetoothDevice device) {
+        Descriptor current = mDescriptors.get(device.getAddress());
+        Descriptor descriptor = read(device, current != null && current.bonded);
+        mDescriptors.put(descriptor.address, descriptor);
+        return descriptor;
+    }
+
+    /**
+     * Handle ACTION_BOND_STATE_CHANGED
+     *
+     * @param device Bluetooth device
+     * @param state New bond state
+     */
+    void onBondStateChanged(BluetoothDevice device, int state) {
+        if (state == BluetoothDevice.BOND_BONDED) {
+            Descriptor descriptor = read(device, true);
+            mDescriptors.put(descriptor.address, descriptor);
+        } else if (state == BluetoothDevice.BOND_NONE) {
+            Descriptor current = mDescriptors.get(device.getAddress());
+
+            if (current != null) {
+                mDescriptors.put(current.address, current.withBonded(false));
+            }
+        }
+    }
+
+    /**
+     * Handle ACTION_NAME_CHANGED
+     *
+     * @param device Bluetooth device
+     * @param name New device name
+     */
+    void onNameChanged(BluetoothDevice device, String name) {
+        Descriptor current = mDescriptors.get(device.getAddress());
+
+        if (current != null) {
+            mDescriptors.put(current.address, current.withName(name));
+        }
+    }
+
+    /**
+     * Get the service UUIDs advertised by a device
+     *
+     * @param address Device address
+     * @return Service UUIDs or null if they were never fetched
+     */
+    List<UUID> getServiceUuids(String address) {
+        return mServiceUuids.get(address);
+    }
+
+    /**
+     * Store the service UUIDs advertised by a device
+     *
+     * @param address Device address
+     * @param uuids Service UUIDs
+     */
+    void putServiceUuids(String address, List<UUID> uuids) {
+        mServiceUuids.put(address, Collections.unmodifiableList(new ArrayList<>(uuids)));
+    }
+
+    /**
+     * Get the service UUID that last connected successfully
+     *
+     * @param address Device address
+     * @return Service UUID or null if unknown
+     */
+    UUID getPreferredUuid(String address) {
+        return mPreferredUuids.get(address);
+    }
+
+    /**
+     * Remember the service UUID that connected successfully
+     *
+     * @param address Device address
+     * @param uuid Service UUID
+     */
+    void setPreferredUuid(String address, UUID uuid) {
+        mPreferredUuids.put(address, uuid);
+    }
+
+    /**
+     * Forget the bonded devices snapshot, e.g. when the adapter is turned
+     * off, so the next listing takes a new one. Descriptors are kept, but
+     * marked as not bonded, and so are the service UUIDs and the UUIDs
+     * that connected.
+     */
+    synchronized void resetBonded() {
+        for (Descriptor descriptor : mDescriptors.values()) {
+            if (descriptor.bonded) {
+                mDescriptors.put(descriptor.address, descriptor.withBonded(false));
+            }
+        }
+
+        mLoaded = false;
+    }
+
+    /**
+     * Read descriptor fields from the device (binder IPC)
+     *
+     * @param device Bluetooth device
+     * @param bonded Whether the device is bonded
+     * @return Device descriptor
+     */
+    private static Descriptor read(BluetoothDevice device, boolean bonded) {
+        BluetoothClass bluetoothClass = device.getBluetoothClass();
+        Integer deviceClass = bluetoothClass != null ? bluetoothClass.getDeviceClass() : null;
+        return new Descriptor(device.getAddress(), device.getName(), deviceClass, bonded);
+    }
+}
@@ -0,0 +1,266 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of a single connection. They are updated on the read and write
+ * hot paths, so updates never allocate and never lock: counters are
+ * atomics and the receive rate window is only written by the reader
+ * thread. Reading the counters from another thread may see a slightly
+ * stale but consistent-enough view.
+ *
+ * This class is plain Java so it can be used by the load test on a
+ * desktop JVM.
+ */
+class DeviceStats {
+    private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    /**
+     * Error categories counted per connection
+     */
+    enum ErrorType {
+        CONNECT,
+        READ,
+        WRITE,
+        CHECKSUM,
+        OTHER
+    }
+
+    private final AtomicLong mBytesIn = new AtomicLong();
+    private final AtomicLong mBytesOut = new AtomicLong();
+    private final AtomicLong mFramesIn = new AtomicLong();
+    private final AtomicLong mFramesOut = new AtomicLong();
+    private final AtomicLong mFramesFiltered = new AtomicLong();
+    private final AtomicLong mFramesConflated = new AtomicLong();
+    private final AtomicLong mReads = new AtomicLong();
+    private final AtomicLong mBufferHighWater = new AtomicLong();
+    private final AtomicLong mWritesInFlight = new AtomicLong();
+    private final AtomicLong mWritesInFlightHighWater = new AtomicLong();
+    private final AtomicLong mConnections = new AtomicLong();
+    private final AtomicLongArray mErrors = new AtomicLongArray(ErrorType.values().length);
+
+    private final LatencyHistogram mReadToFrame = new LatencyHistogram();
+    private final LatencyHistogram mFrameToEmit = new LatencyHistogram();
+    private final LatencyHistogram mReadToEmit = new LatencyHistogram();
+
+    // Written by the reader thread only
+    private volatile long mWindowStart = 0;
+    private long mWindowReads = 0;
+    private long mWindowBytes = 0;
+    private volatile long mReadsPerSecond = 0;
+    private volatile long mBytesInPerSecond = 0;
+
+    /**
+     * A chunk was read from the input stream. Reader thread only.
+     *
+     * @param bytes Number of bytes read
+     * @param now System.nanoTime() of the read
+     */
+    void onRead(int bytes, long now) {
+        mReads.incrementAndGet();
+        mBytesIn.addAndGet(bytes);
+
+        if (now - mWindowStart >= RATE_WINDOW_NANOS) {
+            long elapsed = now - mWindowStart;
+
+            if (mWindowStart != 0) {
+                mReadsPerSecond = mWindowReads * RATE_WINDOW_NANOS / elapsed;
+                mBytesInPerSecond = mWindowBytes * RATE_WINDOW_NANOS / elapsed;
+            }
+
+            mWindowStart = now;
+            mWindowReads = 0;
+            mWindowBytes = 0;
+        }
+
+        mWindowReads++;
+        mWindowBytes += bytes;
+    }
+
+    /**
+     * A complete frame was taken from the receive buffer
+     *
+     * @return Sequence number of the frame, starting at 1
+     */
+    long onFrameIn() {
+        return mFramesIn.incrementAndGet();
+    }
+
+    /**
+     * A frame was not emitted because no subscription filter matched it
+     */
+    void onFrameFiltered() {
+        mFramesFiltered.incrementAndGet();
+    }
+
+    /**
+     * A frame was dropped by conflation because a newer one superseded it
+     */
+    void onFrameConflated() {
+        mFramesConflated.incrementAndGet();
+    }
+
+    /**
+     * A frame was emitted to JS
+     *
+     * @param readNanos System.nanoTime() of the read that completed the frame
+     * @param frameNanos System.nanoTime() when the frame was taken from the buffer
+     * @param emitNanos System.nanoTime() after the event was sent
+     */
+    void onFrameEmitted(long readNanos, long frameNanos, long emitNanos) {
+        mReadToFrame.record(frameNanos - readNanos);
+        mFrameToEmit.record(emitNanos - frameNanos);
+        mReadToEmit.record(emitNanos - readNanos);
+    }
+
+    /**
+     * Track the size of the receive buffer
+     *
+     * @param length Number of unread chars in the buffer
+     */
+    void onBuffered(int length) {
+        raise(mBufferHighWater, length);
+    }
+
+    /**
+     * A write is about to start
+     */
+    void onWriteStart() {
+        raise(mWritesInFlightHighWater, mWritesInFlight.incrementAndGet());
+    }
+
+    /**
+     * A write has finished
+     *
+     * @param bytes Number of bytes written, 0 if the write failed
+     */
+    void onWriteEnd(int bytes) {
+        mWritesInFlight.decrementAndGet();
+
+        if (bytes > 0) {
+            mBytesOut.addAndGet(bytes);
+            mFramesOut.incrementAndGet();
+        }
+    }
+
+    /**
+     * The connection was established
+     */
+    void onConnected() {
+        mConnections.incrementAndGet();
+    }
+
+    /**
+     * Count an error
+     *
+     * @param type Error category
+     */
+    void onError(ErrorType type) {
+        mErrors.incrementAndGet(type.ordinal());
+    }
+
+    long getBytesIn() {
+        return mBytesIn.get();
+    }
+
+    long getBytesOut() {
+        return mBytesOut.get();
+    }
+
+    long getFramesIn() {
+        return mFramesIn.get();
+    }
+
+    long getFramesOut() {
+        return mFramesOut.get();
+    }
+
+    long getFramesFiltered() {
+        return mFramesFiltered.get();
+    }
+
+    long getFramesConflated() {
+        return mFramesConflated.get();
+    }
+
+    long getReads() {
+        return mReads.get();
+    }
+
+    long getReadsPerSecond() {
+        return isIdle() ? 0 : mReadsPerSecond;
+    }
+
+    long getBytesInPerSecond() {
+        return isIdle() ? 0 : mBytesInPerSecond;
+    }
+
+    long getBufferHighWater() {
+        return mBufferHighWater.get();
+    }
+
+    long getWritesInFlight() {
+        return mWritesInFlight.get();
+    }
+
+    long getWritesInFlightHighWater() {
+        return mWritesInFlightHighWater.get();
+    }
+
+    /**
+     * @return Number of times the connection was re-established
+     */
+    long getReconnects() {
+        return Math.max(0, mConnections.get() - 1);
+    }
+
+    long getErrors(ErrorType type) {
+        return mErrors.get(type.ordinal());
+    }
+
+    /**
+     * @return Latency from the socket read to the frame leaving the receive buffer
+     */
+    LatencyHistogram getReadToFrame() {
+        return mReadToFrame;
+    }
+
+    /**
+     * @return Latency from the frame leaving the receive buffer to the event being sent
+     */
+    LatencyHistogram getFrameToEmit() {
+        return mFrameToEmit;
+    }
+
+    /**
+     * @return Latency from the socket read to the event being sent
+     */
+    LatencyHistogram getReadToEmit() {
+        return mReadToEmit;
+    }
+
+    /**
+     * Forget all recorded latencies
+     */
+    void resetLatency() {
+        mReadToFrame.reset();
+        mFrameToEmit.reset();
+        mReadToEmit.reset();
+    }
+
+    /**
+     * Nothing was read for longer than a full rate window
+     */
+    private boolean isIdle() {
+        return System.nanoTime() - mWindowStart > 2 * RATE_WINDOW_NANOS;
+    }
+
+    private static void raise(AtomicLong highWater, long value) {
+        long current = highWater.get();
+
+        while (value > current && !highWater.compareAndSet(current, value)) {
+            current = highWater.get();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules device discovery around active connections. An inquiry scan
+ * shares the radio with RFCOMM links and badly hurts their throughput, so
+ * while connections are busy a scan is postponed, and once it has waited
+ * too long it only runs for a short time. A scan that is already running
+ * is cut short when a transfer starts.
+ *
+ * Requests made while a scan is waiting or running join that scan instead
+ * of starting another one. The time saved, compared with one full scan per
+ * request, is counted.
+ *
+ * This class is plain Java so it can be driven by a fake radio on a
+ * desktop JVM.
+ */
+class DiscoveryScheduler {
+    // Length of a full classic discovery, about 12 seconds on Android
+    static final long FULL_SCAN_MS = 12000;
+
+    static final long DEFAULT_BUSY_BYTES_PER_SECOND = 4096;
+    static final long DEFAULT_MAX_DELAY_MS = 30000;
+    static final long DEFAULT_SHORT_SCAN_MS = 4000;
+
+    private static final long POLL_MS = 500;
+    // Give up on a discovery whose finish broadcast never came
+    private static final long MAX_SCAN_MS = 3 * FULL_SCAN_MS;
+
+    /**
+     * Bluetooth side of the scheduler
+     */
+    interface Radio {
+        /**
+         * @return Whether discovery was started
+         */
+        boolean startDiscovery();
+
+        void cancelDiscovery();
+    }
+
+    /**
+     * Traffic of the active connections
+     */
+    interface Traffic {
+        /**
+         * @return Bytes received per second over all connections
+         */
+        long getBytesPerSecond();
+
+        /**
+         * @return Whether any connection has writes in flight
+         */
+        boolean isWriting();
+    }
+
+    /**
+     * Receiver of the end of a scan
+     */
+    interface Listener {
+        /**
+         * All requests made since the last call are done
+         *
+         * @param started Whether discovery could be started at all
+         */
+        void onScanDone(boolean started);
+    }
+
+    private final Radio mRadio;
+    private final Traffic mTraffic;
+    private final Listener mListener;
+    private final ScheduledExecutorService mScheduler;
+
+    private long mBusyBytesPerSecond = DEFAULT_BUSY_BYTES_PER_SECOND;
+    private long mMaxDelayMs = DEFAULT_MAX_DELAY_MS;
+    private long mShortScanMs = DEFAULT_SHORT_SCAN_MS;
+
+    private boolean mWaiting = false;
+    private boolean mScanning = false;
+    private boolean mCutShort = false;
+    private long mWaitStart;
+    private long mScanStart;
+    private ScheduledFuture<?> mPoll;
+    // Polls of an older generation were cancelled but may still run
+    private int mPollGeneration = 0;
+
+    private long mRequests = 0;
+    private long mScans = 0;
+    private long mMerged = 0;
+    private long mShortened = 0;
+    private long mPostponedMs = 0;
+    private long mSavedMs = 0;
+
+    /**
+     * @param radio Bluetooth side
+     * @param traffic Traffic of the active connections
+     * @param listener Receiver of the end of a scan
+     * @param scheduler Scheduler of the traffic checks
+     */
+    DiscoveryScheduler(Radio radio, Traffic traffic, Listener listener, ScheduledExecutorService scheduler) {
+        mRadio = radio;
+        mTraffic = traffic;
+        mListener = listener;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @param busyBytesPerSecond Receive rate from which connections count as busy
+     * @param maxDelayMs Longest time a scan waits for the connections to calm down
+     * @param shortScanMs Length of a scan while connections are busy
+     */
+    synchronized void configure(long busyBytesPerSecond, long maxDelayMs, long shortScanMs) {
+        mBusyBytesPerSecond = Math.max(0, busyBytesPerSecond);
+        mMaxDelayMs = Math.max(0, maxDelayMs);
+        mShortScanMs = Math.max(POLL_MS, shortScanMs);
+    }
+
+    /**
+     * Ask for a scan. The request joins a scan that is waiting or running.
+     */
+    synchronized void request() {
+        mRequests++;
+
+        if (mWaiting || mScanning) {
+            mMerged++;
+            mSavedMs += FULL_SCAN_MS;
+            return;
+        }
+
+        mWaiting = true;
+        mWaitStart = now();
+        poll(mPollGeneration);
+    }
+
+    /**
+     * Give up on the current scan. A waiting scan is done right away, a
+     * running one when discovery reports it finished.
+     */
+    synchronized void cancel() {
+        if (mWaiting) {
+            mWaiting = false;
+            cancelPoll();
+            mListener.onScanDone(true);
+        } else if (mScanning) {
+            mRadio.cancelDiscovery();
+        }
+    }
+
+    /**
+     * Discovery finished or was cancelled, by this scheduler or anyone else
+     */
+    synchronized void onDiscoveryFinished() {
+        if (!mScanning) {
+            return;
+        }
+
+        long ran = now() - mScanStart;
+        mScanning = false;
+        cancelPoll();
+
+        if (mCutShort && ran < FULL_SCAN_MS) {
+            mSavedMs += FULL_SCAN_MS - ran;
+        }
+
+        mListener.onScanDone(true);
+    }
+
+    synchronized boolean isScanning() {
+        return mScanning;
+    }
+
+    synchronized long getRequests() {
+        return mRequests;
+    }
+
+    synchronized long getScans() {
+        return mScans;
+    }
+
+    /**
+     * @return Number of requests that joined another request's scan
+     */
+    synchronized long getMerged() {
+        return mMerged;
+    }
+
+    /**
+     * @return Number of scans shortened for busy connections
+     */
+    synchronized long getShortened() {
+        return mShortened;
+    }
+
+    /**
+     * @return Total time scans waited for busy connections
+     */
+    synchronized long getPostponedMs() {
+        return mPostponedMs;
+    }
+
+    /**
+     * @return Scan time saved by merging and shortening scans
+     */
+    synchronized long getSavedMs() {
+        return mSavedMs;
+    }
+
+    private boolean isBusy() {
+        return mTraffic.isWriting() || mTraffic.getBytesPerSecond() >= mBusyBytesPerSecond;
+    }
+
+    private synchronized void poll(int generation) {
+        if (generation != mPollGeneration) {
+            return;
+        }
+
+        mPoll = null;
+        long now = now();
+
+        if (mWaiting) {
+            boolean busy = isBusy();
+
+            if (!busy || now - mWaitStart >= mMaxDelayMs) {
+                start(now, busy);
+                return;
+            }
+        } else if (mScanning) {
+            long ran = now - mScanStart;
+
+            if (ran >= MAX_SCAN_MS) {
+                mRadio.cancelDiscovery();
+                onDiscoveryFinished();
+                return;
+            }
+
+            if (!mCutShort && ran >= mShortScanMs && isBusy()) {
+                cut();
+                return;
+            }
+        } else {
+            return;
+        }
+
+        schedulePoll(POLL_MS);
+    }
+
+    private void start(long now, boolean busy) {
+        mWaiting = false;
+        mPostponedMs += now - mWaitStart;
+
+        if (!mRadio.startDiscovery()) {
+            mListener.onScanDone(false);
+            return;
+        }
+
+        mScans++;
+        mScanning = true;
+        mCutShort = false;
+        mScanStart = now;
+
+        if (busy) {
+            schedulePoll(mShortScanMs);
+        } else {
+            schedulePoll(POLL_MS);
+        }
+    }
+
+    private void cut() {
+        mCutShort = true;
+        mShortened++;
+        mRadio.cancelDiscovery();
+        // Discovery reports it finished, but do not count on it
+        schedulePoll(POLL_MS);
+    }
+
+    private void schedulePoll(long delayMs) {
+        cancelPoll();
+        final int generation = mPollGeneration;
+
+        mPoll = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                poll(generation);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPoll() {
+        mPollGeneration++;
+
+        if (mPoll != null) {
+            mPoll.cancel(false);
+            mPoll = null;
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,200 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates and rate limits error events. The first occurrence of an
+ * error is reported right away; identical errors, same code, device, phase
+ * and message, that follow within the window are counted and reported
+ * once when the window ends. At most a fixed number of reports leave per
+ * window, so a flapping link cannot flood the bridge and starve data
+ * delivery. Reports over the cap are carried to the next window.
+ *
+ * This class is plain Java so it can be driven on a desktop JVM.
+ */
+class ErrorAggregator {
+    static final long DEFAULT_WINDOW_MS = 1000;
+    static final int DEFAULT_MAX_PER_WINDOW = 10;
+    static final int DEFAULT_MAX_KEYS = 64;
+
+    /**
+     * Identical errors within a window
+     */
+    static final class Report {
+        final String code;
+        final String id;
+        final String phase;
+        final String message;
+        final long firstMs;
+        long lastMs;
+        int count;
+        // Errors not reported yet
+        int pending;
+        // Distinct errors dropped for the key limit, reported with this one
+        long dropped;
+
+        Report(String code, String id, String phase, String message, long now) {
+            this.code = code;
+            this.id = id;
+            this.phase = phase;
+            this.message = message;
+            this.firstMs = now;
+            this.lastMs = now;
+        }
+    }
+
+    /**
+     * Receiver of reports
+     */
+    interface Listener {
+        /**
+         * @param report Error, with the number of occurrences since it was last reported
+         */
+        void onReport(Report report);
+    }
+
+    private final Listener mListener;
+    private final ScheduledExecutorService mScheduler;
+    private final LinkedHashMap<String, Report> mReports = new LinkedHashMap<>();
+
+    private long mWindowMs = DEFAULT_WINDOW_MS;
+    private int mMaxPerWindow = DEFAULT_MAX_PER_WINDOW;
+    private int mMaxKeys = DEFAULT_MAX_KEYS;
+
+    private long mWindowStart = 0;
+    private int mSent = 0;
+    private long mDropped = 0;
+    private boolean mFlushScheduled = false;
+
+    /**
+     * @param listener Receiver of reports
+     * @param scheduler Scheduler of the window flushes
+     */
+    ErrorAggregator(Listener listener, ScheduledExecutorService scheduler) {
+        mListener = listener;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @param windowMs Length of a window
+     * @param maxPerWindow Maximum number of reports per window
+     * @param maxKeys Maximum number of distinct errors tracked at once
+     */
+    synchronized void configure(long windowMs, int maxPerWindow, int maxKeys) {
+        if (windowMs <= 0 || maxPerWindow <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("Error window, rate and keys must be positive");
+        }
+
+        mWindowMs = windowMs;
+        mMaxPerWindow = maxPerWindow;
+        mMaxKeys = maxKeys;
+    }
+
+    /**
+     * Count an error
+     *
+     * @param code Error category
+     * @param id Device address, or null
+     * @param phase What was being done, or null
+     * @param message Error message
+     */
+    synchronized void report(String code, String id, String phase, String message) {
+        long now = System.currentTimeMillis();
+        String key = code + '\u0000' + id + '\u0000' + phase + '\u0000' + message;
+        Report report = mReports.get(key);
+
+        if (report == null) {
+            if (mReports.size() >= mMaxKeys) {
+                mDropped++;
+                return;
+            }
+
+            report = new Report(code, id, phase, message, now);
+            mReports.put(key, report);
+        }
+
+        report.count++;
+        report.pending++;
+        report.lastMs = now;
+
+        // Only the first occurrence goes out right away, repeats wait for the window
+        if (report.count == 1 && take(now)) {
+            send(report);
+        }
+
+        scheduleFlush();
+    }
+
+    private synchronized void flush() {
+        mFlushScheduled = false;
+        long now = System.currentTimeMillis();
+        Iterator<Report> it = mReports.values().iterator();
+
+        while (it.hasNext()) {
+            Report report = it.next();
+
+            if (report.pending == 0) {
+                it.remove();
+            } else if (take(now)) {
+                send(report);
+                it.remove();
+            }
+        }
+
+        if (!mReports.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Take a report out of the budget of the current window
+     */
+    private boolean take(long now) {
+        if (now - mWindowStart >= mWindowMs) {
+            mWindowStart = now;
+            mSent = 0;
+        }
+
+        if (mSent >= mMaxPerWindow) {
+            return false;
+        }
+
+        mSent++;
+        return true;
+    }
+
+    private void send(Report report) {
+        Report sent = new Report(report.code, report.id, report.phase, report.message, report.firstMs);
+        sent.lastMs = report.lastMs;
+        sent.count = report.pending;
+        sent.dropped = mDropped;
+
+        report.pending = 0;
+        mDropped = 0;
+
+        mListener.onReport(sent);
+    }
+
+    private void scheduleFlush() {
+        if (mFlushScheduled) {
+            return;
+        }
+
+        mFlushScheduled = true;
+
+        try {
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, mWindowMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // The scheduler is shut down with the module
+            mFlushScheduled = false;
+        }
+    }
+}
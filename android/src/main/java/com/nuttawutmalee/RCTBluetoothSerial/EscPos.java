@@ -0,0 +1,240 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * ESC/POS command builders for the native print path.
+ *
+ * This class is plain Java so the raster packing can be benchmarked on a
+ * desktop JVM.
+ */
+class EscPos {
+    private static final byte GS = 0x1D;
+    private static final byte ESC = 0x1B;
+
+    /**
+     * QR code error correction levels, as used by GS ( k function 169
+     */
+    static int qrErrorCorrection(String level) {
+        if (level == null || "M".equalsIgnoreCase(level)) {
+            return 49;
+        } else if ("L".equalsIgnoreCase(level)) {
+            return 48;
+        } else if ("Q".equalsIgnoreCase(level)) {
+            return 50;
+        } else if ("H".equalsIgnoreCase(level)) {
+            return 51;
+        }
+
+        throw new IllegalArgumentException("Unknown QR error correction level " + level);
+    }
+
+    /**
+     * Build the GS ( k sequence that makes the printer render and print a
+     * model 2 QR code itself
+     *
+     * @param data QR payload, encoded as UTF-8
+     * @param moduleSize Dots per QR module, 1 to 16
+     * @param errorCorrection Value of qrErrorCorrection
+     * @return Commands
+     */
+    static byte[] qrCode(String data, int moduleSize, int errorCorrection) {
+        if (moduleSize < 1 || moduleSize > 16) {
+            throw new IllegalArgumentException("QR module size must be between 1 and 16");
+        }
+
+        byte[] payload;
+
+        try {
+            payload = data.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        if (payload.length == 0 || payload.length > 7089) {
+            throw new IllegalArgumentException("QR payload must be between 1 and 7089 bytes");
+        }
+
+        int storeLength = payload.length + 3;
+        byte[] out = new byte[9 + 8 + 8 + 8 + payload.length + 8];
+        int i = 0;
+
+        // Function 165: select model 2
+        i = put(out, i, GS, '(', 'k', 4, 0, '1', 'A', '2', 0);
+        // Function 167: module size
+        i = put(out, i, GS, '(', 'k', 3, 0, '1', 'C', moduleSize);
+        // Function 169: error correction level
+        i = put(out, i, GS, '(', 'k', 3, 0, '1', 'E', errorCorrection);
+        // Function 180: store the payload
+        i = put(out, i, GS, '(', 'k', storeLength & 0xFF, storeLength >> 8, '1', 'P', '0');
+        System.arraycopy(payload, 0, out, i, payload.length);
+        i += payload.length;
+        // Function 181: print
+        put(out, i, GS, '(', 'k', 3, 0, '1', 'Q', '0');
+
+        return out;
+    }
+
+    /**
+     * @param lines Number of lines to feed, 0 to 255
+     * @return ESC d command
+     */
+    static byte[] feed(int lines) {
+        return new byte[] { ESC, 'd', (byte) Math.max(0, Math.min(255, lines)) };
+    }
+
+    private static int put(byte[] out, int offset, int... values) {
+        for (int value : values) {
+            out[offset++] = (byte) value;
+        }
+
+        return offset;
+    }
+
+    /**
+     * Streaming converter of grayscale rows into GS v 0 raster bands.
+     * Rows are dithered with Floyd-Steinberg (or thresholded) as they come
+     * in, so only one band of packed bits and two rows of dithering error
+     * are ever held in memory.
+     */
+    static class Raster {
+        /**
+         * Receiver of finished bands
+         */
+        interface Sink {
+            /**
+             * @param band GS v 0 command with the band bits
+             * @throws IOException When the band cannot be written
+             */
+            void write(byte[] band) throws IOException;
+        }
+
+        private static final int HEADER_LENGTH = 8;
+
+        private final int mWidth;
+        private final int mBytesPerRow;
+        private final int mBandHeight;
+        private final boolean mDither;
+        private final Sink mSink;
+
+        private int[] mError;
+        private int[] mNextError;
+        private byte[] mBand;
+        private int mRows = 0;
+        private int mBands = 0;
+        private long mBytes = 0;
+
+        /**
+         * @param width Image width in dots
+         * @param bandHeight Rows per band
+         * @param dither Floyd-Steinberg dithering instead of a plain threshold
+         * @param sink Receiver of finished bands
+         */
+        Raster(int width, int bandHeight, boolean dither, Sink sink) {
+            if (width <= 0 || width > 0xFFFF * 8) {
+                throw new IllegalArgumentException("Invalid raster width " + width);
+            }
+
+            if (bandHeight <= 0 || bandHeight > 0xFFFF) {
+                throw new IllegalArgumentException("Invalid band height " + bandHeight);
+            }
+
+            mWidth = width;
+            mBytesPerRow = (width + 7) / 8;
+            mBandHeight = bandHeight;
+            mDither = dither;
+            mSink = sink;
+            mError = new int[width + 2];
+            mNextError = new int[width + 2];
+            mBand = new byte[HEADER_LENGTH + mBytesPerRow * bandHeight];
+        }
+
+        /**
+         * Add rows of luminance, 0 is black and 255 is white
+         *
+         * @param luminance Row-major luminance, width values per row
+         * @param rows Number of rows
+         * @throws IOException When a band cannot be written
+         */
+        void addRows(int[] luminance, int rows) throws IOException {
+            for (int row = 0; row < rows; row++) {
+                addRow(luminance, row * mWidth);
+            }
+        }
+
+        /**
+         * Write the last partial band
+         *
+         * @throws IOException When the band cannot be written
+         */
+        void finish() throws IOException {
+            if (mRows > 0) {
+                flush();
+            }
+        }
+
+        int getBands() {
+            return mBands;
+        }
+
+        long getBytes() {
+            return mBytes;
+        }
+
+        private void addRow(int[] luminance, int offset) throws IOException {
+            int rowOffset = HEADER_LENGTH + mRows * mBytesPerRow;
+
+            for (int x = 0; x < mWidth; x++) {
+                // Error arrays are shifted by one so x - 1 never underflows
+                int value = luminance[offset + x] + (mDither ? mError[x + 1] / 16 : 0);
+                boolean black = value < 128;
+
+                if (black) {
+                    mBand[rowOffset + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+
+                if (mDither) {
+                    int error = value - (black ? 0 : 255);
+                    mError[x + 2] += error * 7;
+                    mNextError[x] += error * 3;
+                    mNextError[x + 1] += error * 5;
+                    mNextError[x + 2] += error;
+                }
+            }
+
+            if (mDither) {
+                int[] swap = mError;
+                mError = mNextError;
+                mNextError = swap;
+                Arrays.fill(mNextError, 0);
+            }
+
+            if (++mRows == mBandHeight) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            int length = HEADER_LENGTH + mRows * mBytesPerRow;
+            byte[] band = mRows == mBandHeight ? mBand : Arrays.copyOf(mBand, length);
+
+            band[0] = GS;
+            band[1] = 'v';
+            band[2] = '0';
+            band[3] = 0;
+            band[4] = (byte) mBytesPerRow;
+            band[5] = (byte) (mBytesPerRow >> 8);
+            band[6] = (byte) mRows;
+            band[7] = (byte) (mRows >> 8);
+
+            mSink.write(band);
+
+            mBands++;
+            mBytes += length;
+            mRows = 0;
+            mBand = new byte[mBand.length];
+        }
+    }
+}
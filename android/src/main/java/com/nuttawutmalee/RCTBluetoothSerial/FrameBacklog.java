@@ -0,0 +1,120 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames of all devices held back while the host is in the background.
+ * The backlog is kept within a frame and byte budget, the oldest frames
+ * are dropped first, and handed out in batches when the host resumes.
+ *
+ * Frames keep arriving while the backlog is delivered; they are queued
+ * behind it until it is empty, so JS gets every device's frames in order.
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+class FrameBacklog {
+    private final int mMaxFrames;
+    private final long mMaxBytes;
+    private final ArrayDeque<ReceivedFrame> mFrames = new ArrayDeque<>();
+    private long mBytes = 0;
+    private long mDropped = 0;
+    private boolean mHolding = false;
+    private boolean mPaused = false;
+
+    /**
+     * @param maxFrames Maximum number of frames held back
+     * @param maxBytes Maximum number of frame bytes held back
+     */
+    FrameBacklog(int maxFrames, long maxBytes) {
+        if (maxFrames <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Backlog budget must be positive");
+        }
+
+        mMaxFrames = maxFrames;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * The host went to the background, start holding frames back
+     */
+    synchronized void pause() {
+        mHolding = true;
+        mPaused = true;
+    }
+
+    /**
+     * The host came back, the backlog can be delivered
+     */
+    synchronized void resume() {
+        mPaused = false;
+    }
+
+    synchronized boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * Hold a frame back if the backlog is holding
+     *
+     * @param frame Complete frame
+     * @return False if the frame has to be sent right away
+     */
+    synchronized boolean offer(ReceivedFrame frame) {
+        if (!mHolding) {
+            return false;
+        }
+
+        mFrames.addLast(frame);
+        mBytes += frame.data.length();
+
+        while (mFrames.size() > mMaxFrames || (mBytes > mMaxBytes && mFrames.size() > 1)) {
+            mBytes -= mFrames.pollFirst().data.length();
+            mDropped++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Take the oldest frames. Once nothing is left and the host is back,
+     * the backlog stops holding, so later frames are sent right away.
+     *
+     * @param maxFrames Maximum number of frames
+     * @return Frames, or null if the backlog is empty
+     */
+    synchronized List<ReceivedFrame> nextBatch(int maxFrames) {
+        if (mFrames.isEmpty()) {
+            mHolding = mPaused;
+            return null;
+        }
+
+        List<ReceivedFrame> batch = new ArrayList<>(Math.min(maxFrames, mFrames.size()));
+
+        while (batch.size() < maxFrames && !mFrames.isEmpty()) {
+            ReceivedFrame frame = mFrames.pollFirst();
+            mBytes -= frame.data.length();
+            batch.add(frame);
+        }
+
+        return batch;
+    }
+
+    /**
+     * @return Number of frames dropped since the last call
+     */
+    synchronized long takeDropped() {
+        long dropped = mDropped;
+        mDropped = 0;
+        return dropped;
+    }
+
+    synchronized int size() {
+        return mFrames.size();
+    }
+
+    synchronized long getBytes() {
+        return mBytes;
+    }
+}
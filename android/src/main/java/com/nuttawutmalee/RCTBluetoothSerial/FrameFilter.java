@@ -0,0 +1,188 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Native frame filter of a JS subscription. Frames of a device that has
+ * filters only cross the bridge if at least one of them matches.
+ *
+ * Byte and field filters need frames decoded as ISO-8859-1, where every
+ * char is one byte on the wire, to match byte patterns and binary fields
+ * on the String. The module refuses them for a device with another charset.
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+abstract class FrameFilter {
+    final int id;
+
+    /**
+     * Whether the filter reads chars as bytes
+     */
+    final boolean binary;
+
+    FrameFilter(int id) {
+        this(id, false);
+    }
+
+    FrameFilter(int id, boolean binary) {
+        this.id = id;
+        this.binary = binary;
+    }
+
+    /**
+     * @param frame Received frame
+     * @param end Length of the frame without its delimiter
+     * @return Whether the frame matches
+     */
+    abstract boolean matches(String frame, int end);
+
+    /**
+     * @param filters Filters of a device
+     * @param frame Received frame
+     * @param end Length of the frame without its delimiter
+     * @return Whether any of the filters matches
+     */
+    static boolean matchesAny(List<FrameFilter> filters, String frame, int end) {
+        for (FrameFilter filter : filters) {
+            if (filter.matches(frame, end)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Frames starting with a text prefix
+     */
+    static FrameFilter prefix(int id, final String prefix) {
+        return new FrameFilter(id) {
+            @Override
+            boolean matches(String frame, int end) {
+                return end >= prefix.length() && frame.startsWith(prefix);
+            }
+        };
+    }
+
+    /**
+     * Frames containing a regular expression match
+     */
+    static FrameFilter regex(int id, String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+
+        return new FrameFilter(id) {
+            @Override
+            boolean matches(String frame, int end) {
+                Matcher matcher = pattern.matcher(frame);
+                matcher.region(0, end);
+                return matcher.find();
+            }
+        };
+    }
+
+    /**
+     * Frames containing a byte pattern
+     *
+     * @param id Filter id
+     * @param hex Pattern as hex bytes, "??" matches any byte, e.g. "02 ?? 1F"
+     * @param offset Position of the pattern in the frame, or -1 for anywhere
+     * @return Filter
+     */
+    static FrameFilter bytes(int id, String hex, final int offset) {
+        String digits = hex.replaceAll("\\s", "");
+
+        if (digits.length() == 0 || digits.length() % 2 != 0) {
+            throw new IllegalArgumentException("Byte pattern must be pairs of hex digits");
+        }
+
+        final int[] pattern = new int[digits.length() / 2];
+
+        for (int i = 0; i < pattern.length; i++) {
+            String pair = digits.substring(2 * i, 2 * i + 2);
+
+            if ("??".equals(pair)) {
+                pattern[i] = -1;
+            } else {
+                try {
+                    pattern[i] = Integer.parseInt(pair, 16);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid byte " + pair + " in pattern");
+                }
+            }
+        }
+
+        return new FrameFilter(id, true) {
+            @Override
+            boolean matches(String frame, int end) {
+                if (offset >= 0) {
+                    return matchesAt(frame, end, offset);
+                }
+
+                for (int at = 0; at + pattern.length <= end; at++) {
+                    if (matchesAt(frame, end, at)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            private boolean matchesAt(String frame, int end, int at) {
+                if (at + pattern.length > end) {
+                    return false;
+                }
+
+                for (int i = 0; i < pattern.length; i++) {
+                    if (pattern[i] >= 0 && (frame.charAt(at + i) & 0xFF) != pattern[i]) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Frames of a fixed layout with an integer field in a range
+     *
+     * @param id Filter id
+     * @param offset Position of the field in the frame
+     * @param length Field length in bytes, 1 to 4
+     * @param littleEndian Byte order of the field
+     * @param signed Whether the field is two's complement
+     * @param min Smallest accepted value
+     * @param max Largest accepted value
+     * @return Filter
+     */
+    static FrameFilter field(int id, final int offset, final int length, final boolean littleEndian,
+                             final boolean signed, final double min, final double max) {
+        if (offset < 0 || length < 1 || length > 4) {
+            throw new IllegalArgumentException("Field must have a non-negative offset and 1 to 4 bytes");
+        }
+
+        return new FrameFilter(id, true) {
+            @Override
+            boolean matches(String frame, int end) {
+                if (offset + length > end) {
+                    return false;
+                }
+
+                long value = 0;
+
+                for (int i = 0; i < length; i++) {
+                    int shift = littleEndian ? 8 * i : 8 * (length - 1 - i);
+                    value |= (long) (frame.charAt(offset + i) & 0xFF) << shift;
+                }
+
+                if (signed && (value & (1L << (8 * length - 1))) != 0) {
+                    value -= 1L << (8 * length);
+                }
+
+                return value >= min && value <= max;
+            }
+        };
+    }
+}
@@ -0,0 +1,264 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Delivery of frames larger than a maximum in-memory size. Once the unread
+ * data of a device outgrows the maximum without a delimiter, the frame is
+ * taken out of the receive buffer as it arrives and either handed out in
+ * numbered chunks or written to a temp file, until its delimiter shows up.
+ * Only a chunk, plus the tail that may hold part of the delimiter, is ever
+ * kept in memory, however large the frame is.
+ *
+ * Large frames bypass the checksum, filters and conflation of the device,
+ * which only see frames held in memory. File mode writes every char as one
+ * byte, so the file holds the received bytes only for frames decoded as
+ * ISO-8859-1; the module refuses it for a device with another charset.
+ *
+ * This class is plain Java so it can be driven on a desktop JVM.
+ */
+class FrameSpool {
+    static final int DEFAULT_CHUNK_SIZE = 16384;
+
+    /**
+     * Receiver of a large frame
+     */
+    interface Listener {
+        /**
+         * @param id Device address
+         * @param seq Sequence number of the frame
+         * @param path Temp file the frame is written to, or null in chunk mode
+         */
+        void onFrameStart(String id, long seq, String path);
+
+        /**
+         * A chunk of the frame, chunk mode only
+         *
+         * @param id Device address
+         * @param seq Sequence number of the frame
+         * @param index Index of the chunk, starting at 0
+         * @param data Chunk
+         * @param length Length of the frame so far
+         */
+        void onFrameChunk(String id, long seq, int index, String data, long length);
+
+        /**
+         * Another chunk size was written to the file, file mode only
+         *
+         * @param id Device address
+         * @param seq Sequence number of the frame
+         * @param length Length of the frame so far
+         */
+        void onFrameProgress(String id, long seq, long length);
+
+        /**
+         * @param id Device address
+         * @param seq Sequence number of the frame
+         * @param length Length of the frame including the delimiter
+         * @param chunks Number of chunks in chunk mode
+         * @param path Temp file holding the frame, or null
+         * @param error Why writing the file failed, or null
+         */
+        void onFrameEnd(String id, long seq, long length, int chunks, String path, String error);
+    }
+
+    final int maxFrameSize;
+    final int chunkSize;
+    private final File mDirectory;
+    private final Listener mListener;
+
+    private boolean mActive = false;
+    private long mSeq;
+    private long mLength;
+    private int mChunks;
+    private long mNextProgress;
+    private File mFile;
+    private Writer mWriter;
+    private String mError;
+
+    /**
+     * @param maxFrameSize Largest frame kept in memory
+     * @param chunkSize Size of a chunk, or of a progress step in file mode
+     * @param directory Directory of the temp files, or null for chunk mode
+     * @param listener Receiver of large frames
+     */
+    FrameSpool(int maxFrameSize, int chunkSize, File directory, Listener listener) {
+        if (maxFrameSize <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Frame and chunk size must be positive");
+        }
+
+        this.maxFrameSize = maxFrameSize;
+        this.chunkSize = chunkSize;
+        mDirectory = directory;
+        mListener = listener;
+    }
+
+    /**
+     * @return Whether large frames are written to temp files
+     */
+    boolean writesFiles() {
+        return mDirectory != null;
+    }
+
+    /**
+     * @return Whether a large frame is being delivered
+     */
+    synchronized boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Take a large frame out of the buffer. Starts a frame when the
+     * buffer outgrows the maximum, and ends it at its delimiter. Data
+     * after the delimiter is left in the buffer.
+     *
+     * @param id Device address
+     * @param buffer Receive buffer of the device, without a complete frame
+     *               when no large frame is active
+     * @param delimiter Frame delimiter, not empty
+     * @param stats Stats of the device
+     */
+    synchronized void drain(String id, ReceiveBuffer buffer, String delimiter, DeviceStats stats) {
+        if (!mActive) {
+            if (buffer.length() <= maxFrameSize) {
+                return;
+            }
+
+            start(id, stats.onFrameIn());
+        }
+
+        String last = buffer.readUntil(delimiter);
+
+        if (last.length() > 0) {
+            append(id, last, true);
+            end(id);
+            return;
+        }
+
+        // The tail may be the start of the delimiter
+        int available = buffer.length() - (delimiter.length() - 1);
+
+        if (mDirectory != null) {
+            if (available > 0) {
+                append(id, buffer.read(available), false);
+            }
+        } else {
+            while (available >= chunkSize) {
+                append(id, buffer.read(chunkSize), false);
+                available -= chunkSize;
+            }
+        }
+    }
+
+    /**
+     * Give up on an active frame, e.g. when the spool is replaced
+     */
+    synchronized void abort() {
+        if (!mActive) {
+            return;
+        }
+
+        mActive = false;
+        closeWriter();
+
+        if (mFile != null && !mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+    }
+
+    private void start(String id, long seq) {
+        mActive = true;
+        mSeq = seq;
+        mLength = 0;
+        mChunks = 0;
+        mNextProgress = chunkSize;
+        mFile = null;
+        mWriter = null;
+        mError = null;
+
+        if (mDirectory != null) {
+            try {
+                if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                    throw new IOException("Cannot create directory " + mDirectory);
+                }
+
+                mFile = File.createTempFile("frame-", ".bin", mDirectory);
+                mWriter = new OutputStreamWriter(new FileOutputStream(mFile), ChunkDecoder.ISO_8859_1);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        mListener.onFrameStart(id, seq, mFile != null ? mFile.getAbsolutePath() : null);
+    }
+
+    private void append(String id, String data, boolean last) {
+        mLength += data.length();
+
+        if (mDirectory == null) {
+            mListener.onFrameChunk(id, mSeq, mChunks++, data, mLength);
+            return;
+        }
+
+        if (mWriter != null) {
+            try {
+                mWriter.write(data);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        if (!last && mLength >= mNextProgress) {
+            mNextProgress = (mLength / chunkSize + 1) * chunkSize;
+            mListener.onFrameProgress(id, mSeq, mLength);
+        }
+    }
+
+    private void end(String id) {
+        mActive = false;
+        closeWriter();
+
+        String path = null;
+
+        if (mFile != null) {
+            if (mError == null) {
+                path = mFile.getAbsolutePath();
+            } else if (!mFile.delete()) {
+                mFile.deleteOnExit();
+            }
+        }
+
+        mListener.onFrameEnd(id, mSeq, mLength, mChunks, path, mError);
+    }
+
+    /**
+     * Keep consuming the frame up to its delimiter, but stop writing it
+     */
+    private void fail(IOException e) {
+        if (mError == null) {
+            mError = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+
+        closeWriter();
+    }
+
+    private void closeWriter() {
+        if (mWriter == null) {
+            return;
+        }
+
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            if (mError == null) {
+                mError = e.getMessage();
+            }
+        }
+
+        mWriter = null;
+    }
+}
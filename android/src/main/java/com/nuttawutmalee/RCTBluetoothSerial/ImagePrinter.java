@@ -0,0 +1,111 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+/**
+ * Prints an image file as ESC/POS raster bands. The image is decoded one
+ * band of rows at a time with a BitmapRegionDecoder, scaled to the printer
+ * width, converted to luminance and handed to an EscPos.Raster, so neither
+ * the full bitmap nor the full raster is ever held in memory.
+ */
+class ImagePrinter {
+    private final String mPath;
+    private final int mWidth;
+    private final int mBandHeight;
+    private final boolean mDither;
+
+    /**
+     * @param path Image file path
+     * @param width Printer width in dots, e.g. 384 for 58 mm or 576 for 80 mm paper
+     * @param bandHeight Rows per raster band
+     * @param dither Floyd-Steinberg dithering instead of a plain threshold
+     */
+    ImagePrinter(String path, int width, int bandHeight, boolean dither) {
+        mPath = path.startsWith("file://") ? path.substring("file://".length()) : path;
+        mWidth = width;
+        mBandHeight = bandHeight;
+        mDither = dither;
+    }
+
+    /**
+     * Decode, dither and write the image band by band
+     *
+     * @param sink Receiver of the raster bands
+     * @return Raster with the number of written bands and bytes
+     * @throws IOException When the image cannot be decoded or a band cannot be written
+     */
+    EscPos.Raster print(EscPos.Raster.Sink sink) throws IOException {
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(mPath, false);
+
+        if (decoder == null) {
+            throw new IOException("Could not decode image " + mPath);
+        }
+
+        try {
+            int sourceWidth = decoder.getWidth();
+            int sourceHeight = decoder.getHeight();
+            int height = Math.max(1, (int) ((long) sourceHeight * mWidth / sourceWidth));
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inSampleSize = 1;
+
+            // Decode at the smallest power of two that is still wider than the printer
+            while (sourceWidth / (options.inSampleSize * 2) >= mWidth) {
+                options.inSampleSize *= 2;
+            }
+
+            EscPos.Raster raster = new EscPos.Raster(mWidth, mBandHeight, mDither, sink);
+            int[] pixels = new int[mWidth * mBandHeight];
+            Rect region = new Rect(0, 0, 0, 0);
+
+            for (int top = 0; top < height; top += mBandHeight) {
+                int rows = Math.min(mBandHeight, height - top);
+                int sourceTop = (int) ((long) top * sourceHeight / height);
+                int sourceBottom = (int) (((long) (top + rows) * sourceHeight + height - 1) / height);
+
+                region.set(0, sourceTop, sourceWidth, Math.max(sourceTop + 1, Math.min(sourceHeight, sourceBottom)));
+                Bitmap band = decoder.decodeRegion(region, options);
+
+                if (band == null) {
+                    throw new IOException("Could not decode image " + mPath);
+                }
+
+                Bitmap scaled = Bitmap.createScaledBitmap(band, mWidth, rows, true);
+                scaled.getPixels(pixels, 0, mWidth, 0, 0, mWidth, rows);
+
+                if (scaled != band) {
+                    scaled.recycle();
+                }
+
+                band.recycle();
+
+                toLuminance(pixels, mWidth * rows);
+                raster.addRows(pixels, rows);
+            }
+
+            raster.finish();
+            return raster;
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Convert ARGB pixels in place to luminance, transparent pixels are white
+     */
+    private static void toLuminance(int[] pixels, int count) {
+        for (int i = 0; i < count; i++) {
+            int pixel = pixels[i];
+            int alpha = pixel >>> 24;
+            int luminance = (((pixel >> 16) & 0xFF) * 299 + ((pixel >> 8) & 0xFF) * 587 + (pixel & 0xFF) * 114) / 1000;
+
+            pixels[i] = (luminance * alpha + 255 * (255 - alpha)) / 255;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram with log-linear buckets, in the spirit of
+ * HdrHistogram. Values below 32 ns get a bucket each, above that every
+ * power of two is split into 16 linear buckets, so a percentile is off by
+ * at most 1/16 of its value. Values above about 36 minutes are clamped.
+ *
+ * Recording is a few shifts and one atomic increment, so it can stay on
+ * the hot path. Reading concurrently with recording may see a sample in
+ * the count but not yet in the max, which is fine for monitoring.
+ *
+ * This class is plain Java so it can be used by the load test on a
+ * desktop JVM.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_HALF << 1;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int BUCKET_COUNT =
+            LINEAR_LIMIT + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Record a latency
+     *
+     * @param nanos Latency in nanoseconds, negative values count as 0
+     */
+    void record(long nanos) {
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+
+        mCounts.incrementAndGet(indexOf(value));
+        mTotal.incrementAndGet();
+
+        long max = mMax.get();
+
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * @return Number of recorded latencies
+     */
+    long getCount() {
+        return mTotal.get();
+    }
+
+    /**
+     * @return Largest recorded latency in nanoseconds
+     */
+    long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Get a percentile, reported as the upper bound of its bucket
+     *
+     * @param quantile Between 0 and 1, e.g. 0.99
+     * @return Latency in nanoseconds or 0 if nothing was recorded
+     */
+    long getPercentile(double quantile) {
+        long total = mTotal.get();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMax.get());
+            }
+        }
+
+        return mMax.get();
+    }
+
+    /**
+     * Forget all recorded latencies
+     */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift);
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_HALF + (sub - SUB_BUCKET_HALF);
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_HALF + 1;
+        long sub = (index - LINEAR_LIMIT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
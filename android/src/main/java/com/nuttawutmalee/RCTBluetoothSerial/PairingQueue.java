@@ -0,0 +1,262 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of pairing and unpairing requests. Requests are submitted in
+ * batches, and at most the concurrency of its batch bond at the same time;
+ * every request has its own callback and timeout, so concurrent requests
+ * never overwrite each other. Bond
+ * state changes come from a single receiver owned by the module, which
+ * feeds them to {@link #onBonded(String)} and {@link #onUnbonded(String, boolean)}.
+ *
+ * Requests for a device that is already being bonded wait behind it.
+ */
+class PairingQueue {
+    static final String PAIRED = "paired";
+    static final String UNPAIRED = "unpaired";
+    static final String FAILED = "failed";
+    static final String TIMEOUT = "timeout";
+    static final String CANCELLED = "cancelled";
+
+    /**
+     * Bluetooth side of the queue
+     */
+    interface Bonder {
+        /**
+         * @param id Device address
+         * @return Whether the device is bonded
+         */
+        boolean isBonded(String id);
+
+        /**
+         * @param id Device address
+         * @throws Exception When bonding cannot be started
+         */
+        void createBond(String id) throws Exception;
+
+        /**
+         * @param id Device address
+         * @throws Exception When the bond cannot be removed
+         */
+        void removeBond(String id) throws Exception;
+
+        /**
+         * Give up on a bonding that takes too long
+         *
+         * @param id Device address
+         */
+        void cancelBond(String id);
+    }
+
+    /**
+     * Receiver of the outcome of a request
+     */
+    interface Callback {
+        /**
+         * @param id Device address
+         * @param status PAIRED, UNPAIRED, FAILED, TIMEOUT or CANCELLED
+         * @param error Why the request failed, or null
+         */
+        void onDone(String id, String status, String error);
+    }
+
+    /**
+     * Requests that share a concurrency limit, e.g. one pairDevices call
+     */
+    static final class Batch {
+        final int concurrency;
+        int active;
+
+        /**
+         * @param concurrency Maximum number of devices of the batch bonding at the same time
+         */
+        Batch(int concurrency) {
+            this.concurrency = Math.max(1, concurrency);
+        }
+    }
+
+    private static final class Task {
+        final Batch batch;
+        final String id;
+        final boolean pair;
+        final long timeoutMs;
+        final String pin;
+        final Callback callback;
+        ScheduledFuture<?> timeout;
+
+        Task(Batch batch, String id, boolean pair, long timeoutMs, String pin, Callback callback) {
+            this.batch = batch;
+            this.id = id;
+            this.pair = pair;
+            this.timeoutMs = timeoutMs;
+            this.pin = pin;
+            this.callback = callback;
+        }
+    }
+
+    private final Bonder mBonder;
+    private final ScheduledExecutorService mScheduler;
+    private final ArrayDeque<Task> mWaiting = new ArrayDeque<>();
+    private final HashMap<String, Task> mActive = new HashMap<>();
+
+    /**
+     * @param bonder Bluetooth side of the queue
+     * @param scheduler Scheduler of the timeouts
+     */
+    PairingQueue(Bonder bonder, ScheduledExecutorService scheduler) {
+        mBonder = bonder;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Queue a request
+     *
+     * @param batch Batch whose concurrency limit the request counts against
+     * @param id Device address
+     * @param pair Pair, or unpair
+     * @param timeoutMs Time the device may take to bond once started
+     * @param pin PIN to answer a PIN pairing request with, or null
+     * @param callback Receiver of the outcome
+     */
+    synchronized void submit(Batch batch, String id, boolean pair, long timeoutMs, String pin, Callback callback) {
+        mWaiting.addLast(new Task(batch, id, pair, timeoutMs, pin, callback));
+        pump();
+    }
+
+    /**
+     * @param id Device address
+     * @return PIN of the device that is being paired, or null
+     */
+    synchronized String getPin(String id) {
+        Task task = mActive.get(id);
+        return task != null && task.pair ? task.pin : null;
+    }
+
+    /**
+     * A device was bonded
+     *
+     * @param id Device address
+     */
+    synchronized void onBonded(String id) {
+        Task task = mActive.get(id);
+
+        if (task != null && task.pair) {
+            complete(task, PAIRED, null);
+        }
+    }
+
+    /**
+     * A device lost its bond or failed to bond
+     *
+     * @param id Device address
+     * @param wasBonding Whether the device was bonding, i.e. pairing failed
+     */
+    synchronized void onUnbonded(String id, boolean wasBonding) {
+        Task task = mActive.get(id);
+
+        if (task == null) {
+            return;
+        }
+
+        if (!task.pair) {
+            complete(task, UNPAIRED, null);
+        } else if (wasBonding) {
+            complete(task, FAILED, "Pairing was rejected or failed");
+        }
+    }
+
+    /**
+     * Fail all waiting requests, e.g. when the module is destroyed.
+     * Devices that are bonding are left alone.
+     */
+    synchronized void cancelWaiting() {
+        Task task;
+
+        while ((task = mWaiting.pollFirst()) != null) {
+            task.callback.onDone(task.id, CANCELLED, "Pairing was cancelled");
+        }
+    }
+
+    private void pump() {
+        Task task;
+
+        while ((task = nextStartable()) != null) {
+            start(task);
+        }
+    }
+
+    /**
+     * Take the oldest waiting task of a device that is not bonding and
+     * whose batch is below its concurrency
+     */
+    private Task nextStartable() {
+        for (Task task : mWaiting) {
+            if (!mActive.containsKey(task.id) && task.batch.active < task.batch.concurrency) {
+                mWaiting.remove(task);
+                return task;
+            }
+        }
+
+        return null;
+    }
+
+    private void start(final Task task) {
+        try {
+            // Any Bonder call may throw, e.g. for an invalid address
+            if (mBonder.isBonded(task.id) == task.pair) {
+                task.callback.onDone(task.id, task.pair ? PAIRED : UNPAIRED, null);
+                return;
+            }
+
+            if (task.pair) {
+                mBonder.createBond(task.id);
+            } else {
+                mBonder.removeBond(task.id);
+            }
+        } catch (Exception e) {
+            task.callback.onDone(task.id, FAILED, e.getMessage());
+            return;
+        }
+
+        mActive.put(task.id, task);
+        task.batch.active++;
+
+        if (task.timeoutMs > 0) {
+            task.timeout = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onTimeout(task);
+                }
+            }, task.timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void onTimeout(Task task) {
+        if (mActive.get(task.id) != task) {
+            return;
+        }
+
+        if (task.pair) {
+            mBonder.cancelBond(task.id);
+        }
+
+        complete(task, TIMEOUT, "Bonding did not finish within " + task.timeoutMs + " ms");
+    }
+
+    private void complete(Task task, String status, String error) {
+        mActive.remove(task.id);
+        task.batch.active--;
+
+        if (task.timeout != null) {
+            task.timeout.cancel(false);
+        }
+
+        task.callback.onDone(task.id, status, error);
+        pump();
+    }
+}
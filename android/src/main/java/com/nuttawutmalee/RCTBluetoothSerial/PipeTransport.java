@@ -0,0 +1,199 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * In-memory transport. Every PipeTransport has a peer end: bytes written to
+ * one end are read from the other one. It is meant for running the receive
+ * and write paths without a radio, e.g. in tests and benchmarks on a
+ * plain JVM.
+ *
+ * Unlike PipedInputStream, reads do not fail when the writing thread dies,
+ * only when either end is closed.
+ */
+class PipeTransport implements Transport {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final String mId;
+    private final Pipe mIn;
+    private final Pipe mOut;
+    private final PipeTransport mPeer;
+
+    /**
+     * Create a pipe with the default buffer capacity
+     *
+     * @param id Connection id of this end
+     */
+    PipeTransport(String id) {
+        this(id, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a pipe
+     *
+     * @param id Connection id of this end
+     * @param capacity Buffer capacity of each direction in bytes
+     */
+    PipeTransport(String id, int capacity) {
+        mId = id;
+        mIn = new Pipe(capacity);
+        mOut = new Pipe(capacity);
+        mPeer = new PipeTransport(this);
+    }
+
+    private PipeTransport(PipeTransport peer) {
+        mId = peer.mId + "#peer";
+        mIn = peer.mOut;
+        mOut = peer.mIn;
+        mPeer = peer;
+    }
+
+    /**
+     * @return The other end of the pipe
+     */
+    PipeTransport getPeer() {
+        return mPeer;
+    }
+
+    @Override
+    public String getId() {
+        return mId;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return mIn.mInputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return mOut.mOutputStream;
+    }
+
+    @Override
+    public void close() {
+        mIn.close();
+        mOut.close();
+    }
+
+    /**
+     * Bounded single direction byte ring buffer with blocking reads and writes
+     */
+    private static final class Pipe {
+        private final byte[] mBuffer;
+        private int mHead = 0;
+        private int mSize = 0;
+        private boolean mClosed = false;
+
+        final InputStream mInputStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return Pipe.this.read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return Pipe.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                synchronized (Pipe.this) {
+                    return mSize;
+                }
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        final OutputStream mOutputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                Pipe.this.write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Pipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        Pipe(int capacity) {
+            mBuffer = new byte[capacity];
+        }
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (mSize == 0) {
+                if (mClosed) {
+                    return -1;
+                }
+
+                waitInterruptibly();
+            }
+
+            int count = Math.min(len, mSize);
+            int first = Math.min(count, mBuffer.length - mHead);
+
+            System.arraycopy(mBuffer, mHead, b, off, first);
+            System.arraycopy(mBuffer, 0, b, off + first, count - first);
+
+            mHead = (mHead + count) % mBuffer.length;
+            mSize -= count;
+            notifyAll();
+
+            return count;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (mClosed) {
+                    throw new IOException("Pipe closed");
+                }
+
+                if (mSize == mBuffer.length) {
+                    waitInterruptibly();
+                    continue;
+                }
+
+                int tail = (mHead + mSize) % mBuffer.length;
+                int count = Math.min(len, Math.min(mBuffer.length - mSize, mBuffer.length - tail));
+
+                System.arraycopy(b, off, mBuffer, tail, count);
+
+                mSize += count;
+                off += count;
+                len -= count;
+                notifyAll();
+            }
+        }
+
+        synchronized void close() {
+            mClosed = true;
+            notifyAll();
+        }
+
+        private void waitInterruptibly() throws IOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted");
+            }
+        }
+    }
+}
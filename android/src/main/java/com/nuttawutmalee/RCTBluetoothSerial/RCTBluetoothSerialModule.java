@@ -1,8 +1,25 @@
 package com.nuttawutmalee.RCTBluetoothSerial;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 import android.app.Activity;
@@ -13,8 +30,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
+import android.os.Parcelable;
+import android.os.ParcelUuid;
 import android.util.Log;
-import android.util.Base64;
 
 import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.LifecycleEventListener;
@@ -22,6 +40,8 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.Promise;
@@ -31,7 +51,7 @@ import static com.nuttawutmalee.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG
 
 @SuppressWarnings("unused")
 public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
-        implements ActivityEventListener, LifecycleEventListener {
+        implements ActivityEventListener, LifecycleEventListener, ConnectionState.Listener {
 
     // Debugging
     private static final boolean D = true;
@@ -42,28 +62,225 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
     private static final String CONN_SUCCESS = "connectionSuccess";
     private static final String CONN_FAILED = "connectionFailed";
     private static final String CONN_LOST = "connectionLost";
+    private static final String CONN_STATE_CHANGED = "connectionStateChanged";
     private static final String DEVICE_READ = "read";
     private static final String DATA_READ = "data";
+    private static final String READ_BATCH = "readBatch";
     private static final String ERROR = "error";
+    private static final String STATS = "stats";
+    private static final String PAIRING_PROGRESS = "pairingProgress";
+    private static final String FRAME_START = "frameStart";
+    private static final String FRAME_CHUNK = "frameChunk";
+    private static final String FRAME_PROGRESS = "frameProgress";
+    private static final String FRAME_END = "frameEnd";
 
     // Other stuff
     private static final int REQUEST_ENABLE_BLUETOOTH = 1;
     private static final int REQUEST_PAIR_DEVICE = 2;
     private static final String FIRST_DEVICE  = "firstDevice";
+    private static final String DEFAULT_SERVER_NAME = "RCTBluetoothSerial";
+    private static final int DEFAULT_MAX_CLIENTS = 7; // Active slaves in a piconet
+    private static final int DEFAULT_TCP_TIMEOUT = 10000;
+    private static final String DEFAULT_REPLAY_PREFIX = "replay:";
+    private static final String JOURNAL_DIRECTORY = "RCTBluetoothSerial/journals";
+    private static final String FRAME_DIRECTORY = "RCTBluetoothSerial/frames";
+    private static final long DEFAULT_JOURNAL_MAX_BYTES = 1024 * 1024;
+    private static final long DEFAULT_JOURNAL_TTL = 24 * 60 * 60 * 1000;
+    private static final int DEFAULT_PRINT_WIDTH = 384; // 58 mm paper at 203 dpi
+    private static final int DEFAULT_PRINT_BAND_HEIGHT = 24;
+    private static final int DEFAULT_PRINT_BAND_DELAY = 20;
+    private static final int DEFAULT_QR_MODULE_SIZE = 6;
+    private static final int DEFAULT_CONFLATION_RATE = 30; // Frames per second
+    private static final int DEFAULT_BACKLOG_FRAMES = 10000;
+    private static final long DEFAULT_BACKLOG_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_BACKLOG_BATCH_SIZE = 256;
+    private static final int DEFAULT_PAIRING_TIMEOUT = 30000;
 
     // Members
     private BluetoothAdapter mBluetoothAdapter;
     private RCTBluetoothSerialService mBluetoothService;
     private ReactApplicationContext mReactContext;
+    private DeviceDescriptorCache mDeviceCache;
 
     // Promises
     private Promise mEnabledPromise;
-    private Promise mDeviceDiscoveryPromise;
-    private Promise mPairDevicePromise;
+    private final List<Promise> mDeviceDiscoveryPromises = new ArrayList<>();
+    private final List<DeviceDescriptorCache.Descriptor> mDiscoveredDevices = new ArrayList<>();
+    private BroadcastReceiver mDeviceDiscoveryReceiver;
     private HashMap<String, Promise> mConnectedPromises;
+    private HashMap<String, List<Promise>> mServiceDiscoveryPromises;
+
+    private ConcurrentHashMap<String, ReceiveBuffer> mBuffers;
+    private ConcurrentHashMap<String, String> mDelimiters;
+    private final ConcurrentHashMap<String, Checksum> mChecksums = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<FrameFilter>> mFilters = new ConcurrentHashMap<>();
+    private final AtomicInteger mNextFilterId = new AtomicInteger(1);
+    private final ConcurrentHashMap<String, Conflator> mConflators = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FrameSpool> mSpools = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ReceiveLog> mReceiveLogs = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor();
+    // Conflation flushes run up to 1000 times a second, so they get their own thread
+    private final ScheduledExecutorService mConflationScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService mPrintExecutor = Executors.newSingleThreadExecutor();
+    // Journal file I/O, in order, off the JS and native modules threads
+    private final ExecutorService mJournalExecutor = Executors.newSingleThreadExecutor();
+    private ScheduledFuture<?> mStatsTask;
+    private volatile boolean mFrameMetadata = true;
+    private final HashSet<TrafficReplayer> mReplayers = new HashSet<>();
+    private volatile FrameBacklog mBacklog;
+    private final PairingQueue.Batch mSinglePairings = new PairingQueue.Batch(1);
+    private final PairingQueue mPairingQueue = new PairingQueue(new PairingQueue.Bonder() {
+        @Override
+        public boolean isBonded(String id) {
+            return mBluetoothAdapter.getRemoteDevice(id).getBondState() == BluetoothDevice.BOND_BONDED;
+        }
+
+        @Override
+        public void createBond(String id) throws Exception {
+            invokeBondMethod(id, "createBond");
+        }
+
+        @Override
+        public void removeBond(String id) throws Exception {
+            invokeBondMethod(id, "removeBond");
+        }
+
+        @Override
+        public void cancelBond(String id) {
+            try {
+                invokeBondMethod(id, "cancelBondProcess");
+            } catch (Exception e) {
+                Log.e(TAG, "Cannot cancel bonding", e);
+            }
+        }
+    }, mScheduler);
+    private volatile int mBacklogBatchSize = DEFAULT_BACKLOG_BATCH_SIZE;
+    private final DiscoveryScheduler mDiscoveryScheduler = new DiscoveryScheduler(new DiscoveryScheduler.Radio() {
+        @Override
+        public boolean startDiscovery() {
+            registerBluetoothDeviceDiscoveryReceiver();
+            return mBluetoothAdapter.startDiscovery();
+        }
+
+        @Override
+        public void cancelDiscovery() {
+            mBluetoothAdapter.cancelDiscovery();
+        }
+    }, new DiscoveryScheduler.Traffic() {
+        @Override
+        public long getBytesPerSecond() {
+            long bytesPerSecond = 0;
+
+            for (DeviceStats stats : mBluetoothService.getAllStats().values()) {
+                bytesPerSecond += stats.getBytesInPerSecond();
+            }
+
+            return bytesPerSecond;
+        }
+
+        @Override
+        public boolean isWriting() {
+            for (DeviceStats stats : mBluetoothService.getAllStats().values()) {
+                if (stats.getWritesInFlight() > 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }, new DiscoveryScheduler.Listener() {
+        @Override
+        public void onScanDone(boolean started) {
+            resolveDeviceDiscovery(started);
+        }
+    }, mScheduler);
+
+    private final ErrorAggregator mErrors = new ErrorAggregator(new ErrorAggregator.Listener() {
+        @Override
+        public void onReport(ErrorAggregator.Report report) {
+            WritableMap params = Arguments.createMap();
+            params.putString("message", report.message);
+            params.putString("code", report.code);
+
+            if (report.id != null) {
+                params.putString("id", report.id);
+            }
+
+            if (report.phase != null) {
+                params.putString("phase", report.phase);
+            }
+
+            params.putInt("count", report.count);
+            params.putDouble("firstTimestamp", report.firstMs);
+            params.putDouble("lastTimestamp", report.lastMs);
+
+            if (report.dropped > 0) {
+                params.putDouble("dropped", report.dropped);
+            }
+
+            sendEvent(ERROR, params);
+        }
+    }, mScheduler);
+    private final FrameSpool.Listener mSpoolListener = new FrameSpool.Listener() {
+        @Override
+        public void onFrameStart(String id, long seq, String path) {
+            if (D) Log.d(TAG, "Large frame " + seq + " of device " + id + " started");
+
+            WritableMap params = Arguments.createMap();
+            params.putString("id", id);
+            params.putDouble("seq", seq);
+
+            if (path != null) {
+                params.putString("path", path);
+            }
+
+            sendEvent(FRAME_START, params);
+        }
+
+        @Override
+        public void onFrameChunk(String id, long seq, int index, String data, long length) {
+            WritableMap params = Arguments.createMap();
+            params.putString("id", id);
+            params.putDouble("seq", seq);
+            params.putInt("index", index);
+            params.putString("data", data);
+            params.putDouble("length", length);
+            sendEvent(FRAME_CHUNK, params);
+        }
+
+        @Override
+        public void onFrameProgress(String id, long seq, long length) {
+            WritableMap params = Arguments.createMap();
+            params.putString("id", id);
+            params.putDouble("seq", seq);
+            params.putDouble("length", length);
+            sendEvent(FRAME_PROGRESS, params);
+        }
 
-    private HashMap<String, StringBuffer> mBuffers;
-    private HashMap<String, String> mDelimiters;
+        @Override
+        public void onFrameEnd(String id, long seq, long length, int chunks, String path, String error) {
+            if (D) Log.d(TAG, "Large frame " + seq + " of device " + id + " ended, length " + length);
+
+            WritableMap params = Arguments.createMap();
+            params.putString("id", id);
+            params.putDouble("seq", seq);
+            params.putDouble("length", length);
+            params.putInt("chunks", chunks);
+
+            if (path != null) {
+                params.putString("path", path);
+            }
+
+            if (error != null) {
+                params.putString("error", error);
+                onError(DeviceStats.ErrorType.OTHER, id, "frame",
+                        new Exception("Cannot write large frame " + seq + " of device " + id + ": " + error));
+            }
+
+            sendEvent(FRAME_END, params);
+        }
+    };
 
     public RCTBluetoothSerialModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -76,23 +293,41 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
             mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         }
 
+        if (mDeviceCache == null) {
+            mDeviceCache = new DeviceDescriptorCache();
+        }
+
         if (mBluetoothService == null) {
-            mBluetoothService = new RCTBluetoothSerialService(this);
+            mBluetoothService = new RCTBluetoothSerialService(this, mDeviceCache);
         }
 
         if (mConnectedPromises == null) {
             mConnectedPromises = new HashMap<>();
         }
 
+        if (mServiceDiscoveryPromises == null) {
+            mServiceDiscoveryPromises = new HashMap<>();
+        }
+
         if (mBuffers == null) {
-            mBuffers = new HashMap<>();
+            mBuffers = new ConcurrentHashMap<>();
         }
 
+        mJournalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (WriteJournal journal : WriteJournal.openAll(getJournalDirectory(), System.currentTimeMillis())) {
+                    mBluetoothService.setJournal(journal);
+                }
+            }
+        });
+
         if (mDelimiters == null) {
-            mDelimiters = new HashMap<>();
+            mDelimiters = new ConcurrentHashMap<>();
         }
 
         if (mBluetoothAdapter != null && mBluetoothAdapter.isEnabled()) {
+            mDeviceCache.load(mBluetoothAdapter);
             sendEvent(BT_ENABLED, null);
         } else {
             sendEvent(BT_DISABLED, null);
@@ -101,6 +336,7 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
         mReactContext.addActivityEventListener(this);
         mReactContext.addLifecycleEventListener(this);
         registerBluetoothStateReceiver();
+        registerDeviceDescriptorReceiver();
     }
 
     @Override
@@ -174,24 +410,70 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
     @Override
     public void onHostResume() {
         if (D) Log.d(TAG, "Host resume");
+
+        final FrameBacklog backlog = mBacklog;
+
+        if (backlog != null) {
+            backlog.resume();
+            mScheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushBacklog(backlog);
+                }
+            });
+        }
     }
 
     @Override
     public void onHostPause() {
         if (D) Log.d(TAG, "Host pause");
+
+        FrameBacklog backlog = mBacklog;
+
+        if (backlog != null) {
+            backlog.pause();
+        }
     }
 
     @Override
     public void onHostDestroy() {
         if (D) Log.d(TAG, "Host destroy");
-        mBluetoothService.stopAll();
+
+        // The connection keeper holds on to the connections until it is stopped
+        if (mBacklog == null) {
+            mBluetoothService.stopAll();
+
+            for (String id : mConflators.keySet()) {
+                removeConflator(id);
+            }
+        }
     }
 
     @Override
     public void onCatalystInstanceDestroy() {
         if (D) Log.d(TAG, "Catalyst instance destroyed");
         super.onCatalystInstanceDestroy();
+
+        if (mBacklog != null) {
+            mBacklog = null;
+            ConnectionKeeperService.stop(mReactContext);
+        }
+
         mBluetoothService.stopAll();
+        mBluetoothService.getRecorder().stop();
+        mScheduler.shutdownNow();
+        mConflationScheduler.shutdownNow();
+        mConflators.clear();
+        mPrintExecutor.shutdownNow();
+        mJournalExecutor.shutdown();
+        mPairingQueue.cancelWaiting();
+        mDiscoveryScheduler.cancel();
+
+        synchronized (mReplayers) {
+            for (TrafficReplayer replayer : mReplayers) {
+                replayer.cancel();
+            }
+        }
     }
 
     @ReactMethod
@@ -273,33 +555,68 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
         }
     }
 
+    /**
+     * Synchronous counterpart of isEnabled
+     *
+     * @return False if Bluetooth is off or there is no adapter
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean isEnabledSync() {
+        return mBluetoothAdapter != null && mBluetoothAdapter.isEnabled();
+    }
+
     @ReactMethod
     public void list(Promise promise) {
         if (D) Log.d(TAG, "List paired called");
 
         if (mBluetoothAdapter != null) {
-            WritableArray deviceList = Arguments.createArray();
-            Set<BluetoothDevice> bondedDevices = mBluetoothAdapter.getBondedDevices();
-
-            for (BluetoothDevice rawDevice : bondedDevices) {
-                WritableMap device = deviceToWritableMap(rawDevice);
-                deviceList.pushMap(device);
-            }
-
-            promise.resolve(deviceList);
+            promise.resolve(listBonded());
         } else {
             rejectNullBluetoothAdapter(promise);
         }
     }
 
+    /**
+     * Synchronous counterpart of list, served from the device cache
+     *
+     * @return Paired devices, empty if there is no adapter
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableArray listSync() {
+        return mBluetoothAdapter != null ? listBonded() : Arguments.createArray();
+    }
+
+    /**
+     * Paired devices from the device cache, none while bluetooth is off
+     */
+    private WritableArray listBonded() {
+        WritableArray deviceList = Arguments.createArray();
+
+        if (!mBluetoothAdapter.isEnabled()) {
+            return deviceList;
+        }
+
+        if (!mDeviceCache.isLoaded()) {
+            mDeviceCache.load(mBluetoothAdapter);
+        }
+
+        for (DeviceDescriptorCache.Descriptor descriptor : mDeviceCache.getBonded()) {
+            deviceList.pushMap(descriptorToWritableMap(descriptor));
+        }
+
+        return deviceList;
+    }
+
     @ReactMethod
     public void listUnpaired(Promise promise) {
         if (D) Log.d(TAG, "Discover unpaired called");
 
         if (mBluetoothAdapter != null) {
-            mDeviceDiscoveryPromise = promise;
-            registerBluetoothDeviceDiscoveryReceiver();
-            mBluetoothAdapter.startDiscovery();
+            synchronized (mDeviceDiscoveryPromises) {
+                mDeviceDiscoveryPromises.add(promise);
+            }
+
+            mDiscoveryScheduler.request();
         } else {
             rejectNullBluetoothAdapter(promise);
         }
@@ -310,6 +627,8 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
         if (D) Log.d(TAG, "Cancel discovery called");
 
         if (mBluetoothAdapter != null) {
+            mDiscoveryScheduler.cancel();
+
             if (mBluetoothAdapter.isDiscovering()) {
                 mBluetoothAdapter.cancelDiscovery();
             }
@@ -319,19 +638,76 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
         }
     }
 
+    @ReactMethod
+    public void setErrorPolicy(ReadableMap options, Promise promise) {
+        long windowMs = ErrorAggregator.DEFAULT_WINDOW_MS;
+        int maxPerWindow = ErrorAggregator.DEFAULT_MAX_PER_WINDOW;
+        int maxKeys = ErrorAggregator.DEFAULT_MAX_KEYS;
+
+        if (options != null) {
+            if (options.hasKey("windowMs") && !options.isNull("windowMs")) {
+                windowMs = (long) options.getDouble("windowMs");
+            }
+
+            if (options.hasKey("maxPerWindow") && !options.isNull("maxPerWindow")) {
+                maxPerWindow = options.getInt("maxPerWindow");
+            }
+
+            if (options.hasKey("maxKeys") && !options.isNull("maxKeys")) {
+                maxKeys = options.getInt("maxKeys");
+            }
+        }
+
+        try {
+            mErrors.configure(windowMs, maxPerWindow, maxKeys);
+            promise.resolve(true);
+        } catch (IllegalArgumentException e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void setDiscoveryPolicy(ReadableMap options, Promise promise) {
+        long busyBytesPerSecond = DiscoveryScheduler.DEFAULT_BUSY_BYTES_PER_SECOND;
+        long maxDelayMs = DiscoveryScheduler.DEFAULT_MAX_DELAY_MS;
+        long shortScanMs = DiscoveryScheduler.DEFAULT_SHORT_SCAN_MS;
+
+        if (options != null) {
+            if (options.hasKey("busyBytesPerSecond") && !options.isNull("busyBytesPerSecond")) {
+                busyBytesPerSecond = (long) options.getDouble("busyBytesPerSecond");
+            }
+
+            if (options.hasKey("maxDelayMs") && !options.isNull("maxDelayMs")) {
+                maxDelayMs = (long) options.getDouble("maxDelayMs");
+            }
+
+            if (options.hasKey("shortScanMs") && !options.isNull("shortScanMs")) {
+                shortScanMs = (long) options.getDouble("shortScanMs");
+            }
+        }
+
+        mDiscoveryScheduler.configure(busyBytesPerSecond, maxDelayMs, shortScanMs);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void getDiscoveryStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("requests", mDiscoveryScheduler.getRequests());
+        stats.putDouble("scans", mDiscoveryScheduler.getScans());
+        stats.putDouble("merged", mDiscoveryScheduler.getMerged());
+        stats.putDouble("shortened", mDiscoveryScheduler.getShortened());
+        stats.putDouble("postponedMs", mDiscoveryScheduler.getPostponedMs());
+        stats.putDouble("savedMs", mDiscoveryScheduler.getSavedMs());
+        promise.resolve(stats);
+    }
+
     @ReactMethod
     public void pairDevice(String id, Promise promise) {
         if (D) Log.d(TAG, "Pair device: " + id);
 
         if (mBluetoothAdapter != null) {
-            BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(id);
-
-            if (device != null) {
-                mPairDevicePromise = promise;
-                pairDevice(device);
-            } else {
-                promise.reject(new Exception("Could not pair device " + id));
-            }
+            mPairingQueue.submit(mSinglePairings, id, true, DEFAULT_PAIRING_TIMEOUT, null, promiseCallback(promise));
         } else {
             rejectNullBluetoothAdapter(promise);
         }
@@ -342,19 +718,103 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
         if (D) Log.d(TAG, "Unpair device: " + id);
 
         if (mBluetoothAdapter != null) {
-            BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(id);
-
-            if (device != null) {
-                mPairDevicePromise = promise;
-                unpairDevice(device);
-            } else {
-                promise.reject(new Exception("Could not unpair device " + id));
-            }
+            mPairingQueue.submit(mSinglePairings, id, false, DEFAULT_PAIRING_TIMEOUT, null, promiseCallback(promise));
         } else {
             rejectNullBluetoothAdapter(promise);
         }
     }
 
+    @ReactMethod
+    public void pairDevices(ReadableArray ids, ReadableMap options, final Promise promise) {
+        if (D) Log.d(TAG, "Pair " + ids.size() + " devices");
+
+        if (mBluetoothAdapter == null) {
+            rejectNullBluetoothAdapter(promise);
+            return;
+        }
+
+        int concurrency = 1;
+        long timeoutMs = DEFAULT_PAIRING_TIMEOUT;
+        String pin = null;
+
+        if (options != null) {
+            if (options.hasKey("concurrency") && !options.isNull("concurrency")) {
+                concurrency = options.getInt("concurrency");
+            }
+
+            if (options.hasKey("timeoutMs") && !options.isNull("timeoutMs")) {
+                timeoutMs = (long) options.getDouble("timeoutMs");
+            }
+
+            if (options.hasKey("pin") && !options.isNull("pin")) {
+                pin = options.getString("pin");
+            }
+        }
+
+        final int total = ids.size();
+
+        for (int i = 0; i < total; i++) {
+            String id = ids.isNull(i) ? null : ids.getString(i);
+
+            if (id == null || !BluetoothAdapter.checkBluetoothAddress(id)) {
+                promise.reject(new Exception("Invalid device id " + id));
+                return;
+            }
+        }
+
+        final WritableArray results = Arguments.createArray();
+        final int[] counts = new int[2]; // Completed, paired
+
+        if (total == 0) {
+            promise.resolve(pairingSummary(results, 0, 0));
+            return;
+        }
+
+        PairingQueue.Callback callback = new PairingQueue.Callback() {
+            @Override
+            public void onDone(String id, String status, String error) {
+                WritableMap result = Arguments.createMap();
+                result.putString("id", id);
+                result.putString("status", status);
+
+                if (error != null) {
+                    result.putString("error", error);
+                }
+
+                WritableMap params = Arguments.createMap();
+                params.putString("id", id);
+                params.putString("status", status);
+
+                if (error != null) {
+                    params.putString("error", error);
+                }
+
+                int completed;
+                int paired;
+
+                synchronized (counts) {
+                    results.pushMap(result);
+                    completed = ++counts[0];
+                    paired = PairingQueue.PAIRED.equals(status) ? ++counts[1] : counts[1];
+                }
+
+                params.putInt("completed", completed);
+                params.putInt("total", total);
+                sendEvent(PAIRING_PROGRESS, params);
+
+                if (completed == total) {
+                    promise.resolve(pairingSummary(results, paired, total - paired));
+                }
+            }
+        };
+
+        PairingQueue.Batch batch = new PairingQueue.Batch(concurrency);
+
+        for (int i = 0; i < total; i++) {
+            mPairingQueue.submit(batch, ids.getString(i), true, timeoutMs, pin, callback);
+        }
+    }
+
     @ReactMethod
     public void connect(String id, Promise promise) {
         if (D) Log.d(TAG, "connect");
@@ -363,10 +823,10 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
             BluetoothDevice rawDevice = mBluetoothAdapter.getRemoteDevice(id);
 
             if (rawDevice != null) {
-                mConnectedPromises.put(id, promise);
-                mBluetoothService.connect(rawDevice);
+                putConnectPromise(id, promise);
+                mBluetoothService.connect(rawDevice, null);
             } else {
-                mConnectedPromises.put(FIRST_DEVICE, promise);
+                putConnectPromise(FIRST_DEVICE, promise);
                 registerFirstAvailableBluetoothDeviceDiscoveryReceiver();
             }
         } else {
@@ -375,362 +835,1974 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
     }
 
     @ReactMethod
-    public void disconnect(String id, Promise promise) {
-        if (D) Log.d(TAG, "Disconnect from device id " + id);
-
-        if (id == null) {
-            id = mBluetoothService.getFirstDeviceAddress();
-        }
+    public void connectToService(String id, String uuid, Promise promise) {
+        if (D) Log.d(TAG, "Connect to service " + uuid + " of device id " + id);
 
-        if (id != null) {
-            mBluetoothService.stop(id);
-        }
+        if (mBluetoothAdapter != null) {
+            UUID serviceUuid;
 
-        promise.resolve(true);
-    }
+            try {
+                serviceUuid = UUID.fromString(uuid);
+            } catch (Exception e) {
+                promise.reject(new Exception("Invalid service UUID " + uuid));
+                return;
+            }
 
-    @ReactMethod
-    public void isConnected(String id, Promise promise) {
-        if (id == null) {
-            id = mBluetoothService.getFirstDeviceAddress();
-        }
+            BluetoothDevice rawDevice = mBluetoothAdapter.getRemoteDevice(id);
 
-        if (id == null) {
-            promise.resolve(false);
+            if (rawDevice != null) {
+                putConnectPromise(id, promise);
+                mBluetoothService.connect(rawDevice, serviceUuid);
+            } else {
+                promise.reject(new Exception("Could not connect to device " + id));
+            }
         } else {
-            promise.resolve(mBluetoothService.isConnected(id));
+            rejectNullBluetoothAdapter(promise);
         }
-
     }
 
     @ReactMethod
-    public void writeToDevice(String message, String id, Promise promise) {
-        if (D) Log.d(TAG, "Write to device id " + id + " : " + message);
-
-        if (id == null) {
-            id = mBluetoothService.getFirstDeviceAddress();
-        }
-
-        if (id != null) {
-            byte[] data = Base64.decode(message, Base64.DEFAULT);
-            mBluetoothService.write(id, data);
-        }
+    public void connectTcp(String host, int port, Promise promise) {
+        if (D) Log.d(TAG, "Connect to " + host + ":" + port);
 
-        promise.resolve(true);
+        String id = TcpTransport.idOf(host, port);
+        putConnectPromise(id, promise);
+        mBluetoothService.connectTcp(host, port, DEFAULT_TCP_TIMEOUT);
     }
 
     @ReactMethod
-    public void readFromDevice(String id, Promise promise) {
-        if (D) Log.d(TAG, "Read from device id " + id);
-
-        if (id == null) {
-           id = mBluetoothService.getFirstDeviceAddress();
-        }
+    public void connectSimulated(String id, String script, Promise promise) {
+        if (D) Log.d(TAG, "Connect to simulated device id " + id);
 
-        String data = "";
+        SimulatedPeer.Script peerScript;
 
-        if (mBuffers.containsKey(id)) {
-            StringBuffer buffer = mBuffers.get(id);
-            int length = buffer.length();
-            data = buffer.substring(0, length);
-            buffer.delete(0, length);
-            mBuffers.put(id, buffer);
+        try {
+            peerScript = SimulatedPeer.Script.parse(script);
+        } catch (IllegalArgumentException e) {
+            promise.reject(e);
+            return;
         }
 
-        promise.resolve(data);
-    }
-
-    @ReactMethod
-    public void readUntilDelimiter(String delimiter, String id, Promise promise) {
-        if (id == null) {
-            id = mBluetoothService.getFirstDeviceAddress();
-        }
+        PipeTransport transport = new PipeTransport(id);
+        SimulatedPeer peer = new SimulatedPeer(transport.getPeer(), peerScript);
 
-        promise.resolve(readUntil(id, delimiter));
+        putConnectPromise(id, promise);
+        mBluetoothService.connectTransport(transport, "Simulated " + id);
+        peer.start();
     }
 
     @ReactMethod
-    public void withDelimiter(String delimiter, String id, Promise promise) {
-        if (D) Log.d(TAG, "Set delimiter of device id " + id + " to " + delimiter);
+    public void startCapture(String path, Promise promise) {
+        File file = path != null
+                ? new File(path)
+                : new File(mReactContext.getCacheDir(), "capture-" + System.currentTimeMillis() + ".rbsc");
 
-        if (id == null) {
-            id = mBluetoothService.getFirstDeviceAddress();
-        }
+        if (D) Log.d(TAG, "Start capture to " + file);
 
-        if (id != null) {
-            mDelimiters.put(id, delimiter);
+        try {
+            mBluetoothService.getRecorder().start(file);
+            promise.resolve(file.getAbsolutePath());
+        } catch (IOException e) {
+            promise.reject(e);
         }
-
-        promise.resolve(id);
     }
 
     @ReactMethod
-    public void clear(String id, Promise promise) {
-        if (id == null) {
+    public void stopCapture(Promise promise) {
+        TrafficRecorder.Summary summary = mBluetoothService.getRecorder().stop();
 
-            id = mBluetoothService.getFirstDeviceAddress();
+        if (summary == null) {
+            promise.resolve(null);
+            return;
         }
 
-        if (mBuffers.containsKey(id)) {
-            StringBuffer buffer = mBuffers.get(id);
-            buffer.setLength(0);
-            mBuffers.put(id, buffer);
+        if (summary.error != null) {
+            promise.reject(new Exception("Capture to " + summary.file + " failed: " + summary.error.getMessage()));
+            return;
         }
 
-        promise.resolve(true);
+        WritableMap params = Arguments.createMap();
+        params.putString("path", summary.file.getAbsolutePath());
+        params.putDouble("records", summary.records);
+        params.putDouble("bytes", summary.bytes);
+        params.putDouble("dropped", summary.dropped);
+        promise.resolve(params);
     }
 
     @ReactMethod
-    public void available(String id, Promise promise) {
-        if (id == null) {
-            id = mBluetoothService.getFirstDeviceAddress();
-        }
+    public void replayCapture(String path, ReadableMap options, final Promise promise) {
+        if (D) Log.d(TAG, "Replay capture " + path);
+
+        boolean realtime = true;
+        String prefix = DEFAULT_REPLAY_PREFIX;
+
+        if (options != null) {
+            if (options.hasKey("realtime") && !options.isNull("realtime")) {
+                realtime = options.getBoolean("realtime");
+            }
+
+            if (options.hasKey("prefix") && !options.isNull("prefix")) {
+                prefix = options.getString("prefix");
+            }
+        }
+
+        TrafficReplayer replayer = new TrafficReplayer(new File(path), prefix, realtime, new TrafficReplayer.Listener() {
+            @Override
+            public void onDevice(PipeTransport transport) {
+                mBluetoothService.connectTransport(transport, "Replay " + transport.getId());
+            }
+
+            @Override
+            public void onDeviceFinished(PipeTransport transport) {
+                mBluetoothService.stop(transport.getId());
+            }
+
+            @Override
+            public void onFinished(TrafficReplayer replayer, IOException error) {
+                synchronized (mReplayers) {
+                    mReplayers.remove(replayer);
+                }
+
+                if (error != null) {
+                    promise.reject(new Exception("Could not replay capture: " + error.getMessage()));
+                    return;
+                }
+
+                WritableMap params = Arguments.createMap();
+                params.putDouble("records", replayer.getRecords());
+                params.putDouble("bytes", replayer.getBytes());
+                params.putInt("devices", replayer.getDevices());
+                params.putDouble("durationMs", replayer.getDurationNanos() / 1e6);
+                promise.resolve(params);
+            }
+        });
+
+        synchronized (mReplayers) {
+            mReplayers.add(replayer);
+        }
+
+        replayer.start();
+    }
+
+    @ReactMethod
+    public void stopReplay(Promise promise) {
+        synchronized (mReplayers) {
+            for (TrafficReplayer replayer : mReplayers) {
+                replayer.cancel();
+            }
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void discoverServices(String id, boolean refresh, Promise promise) {
+        if (D) Log.d(TAG, "Discover services of device id " + id);
+
+        if (mBluetoothAdapter != null) {
+            List<UUID> cachedUuids = mDeviceCache.getServiceUuids(id);
+
+            if (cachedUuids != null && !refresh) {
+                promise.resolve(uuidsToWritableArray(cachedUuids));
+                return;
+            }
+
+            BluetoothDevice rawDevice = mBluetoothAdapter.getRemoteDevice(id);
+
+            if (rawDevice == null) {
+                promise.reject(new Exception("Could not discover services of device " + id));
+                return;
+            }
+
+            synchronized (mServiceDiscoveryPromises) {
+                List<Promise> promises = mServiceDiscoveryPromises.get(id);
+
+                if (promises != null) {
+                    // An SDP query for this device is already running
+                    promises.add(promise);
+                    return;
+                }
+
+                promises = new ArrayList<>();
+                promises.add(promise);
+                mServiceDiscoveryPromises.put(id, promises);
+            }
+
+            // SDP queries fail while an inquiry scan is running
+            mBluetoothAdapter.cancelDiscovery();
+
+            if (!rawDevice.fetchUuidsWithSdp()) {
+                resolveServiceDiscovery(id, null);
+            }
+        } else {
+            rejectNullBluetoothAdapter(promise);
+        }
+    }
+
+    @ReactMethod
+    public void disconnect(String id, Promise promise) {
+        if (D) Log.d(TAG, "Disconnect from device id " + id);
+
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id != null) {
+            mBluetoothService.stop(id);
+
+            Promise pending = mConnectedPromises.remove(id);
+
+            if (pending != null) {
+                pending.reject(new Exception("Connection to device " + id + " was cancelled"));
+            }
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void startServer(ReadableMap options, Promise promise) {
+        if (D) Log.d(TAG, "Start server");
+
+        if (mBluetoothAdapter != null) {
+            String name = DEFAULT_SERVER_NAME;
+            boolean secure = true;
+            int maxClients = DEFAULT_MAX_CLIENTS;
+
+            if (options != null) {
+                if (options.hasKey("name") && !options.isNull("name")) {
+                    name = options.getString("name");
+                }
+
+                if (options.hasKey("secure") && !options.isNull("secure")) {
+                    secure = options.getBoolean("secure");
+                }
+
+                if (options.hasKey("maxClients") && !options.isNull("maxClients")) {
+                    maxClients = options.getInt("maxClients");
+                }
+            }
+
+            UUID uuid = null;
+
+            if (options != null && options.hasKey("uuid") && !options.isNull("uuid")) {
+                try {
+                    uuid = UUID.fromString(options.getString("uuid"));
+                } catch (Exception e) {
+                    promise.reject(new Exception("Invalid service UUID " + options.getString("uuid")));
+                    return;
+                }
+            }
+
+            try {
+                mBluetoothService.startServer(name, uuid, secure, maxClients);
+                promise.resolve(true);
+            } catch (Exception e) {
+                Log.e(TAG, "Cannot start server", e);
+                promise.reject(e);
+                onError(e);
+            }
+        } else {
+            rejectNullBluetoothAdapter(promise);
+        }
+    }
+
+    @ReactMethod
+    public void stopServer(Promise promise) {
+        if (D) Log.d(TAG, "Stop server");
+
+        mBluetoothService.stopServer();
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void isServerRunning(Promise promise) {
+        promise.resolve(mBluetoothService.isServerRunning());
+    }
+
+    @ReactMethod
+    public void isConnected(String id, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null) {
+            promise.resolve(false);
+        } else {
+            promise.resolve(mBluetoothService.isConnected(id));
+        }
+
+    }
+
+    @ReactMethod
+    public void getConnectionState(String id, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        promise.resolve(id != null ? mBluetoothService.getState(id).name : ConnectionState.State.NONE.name);
+    }
+
+    /**
+     * Synchronous counterpart of isConnected
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean isConnectedSync(String id) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        return id != null && mBluetoothService.isConnected(id);
+    }
+
+    @ReactMethod
+    public void writeToDevice(String message, String id, Promise promise) {
+        if (D) Log.d(TAG, "Write to device id " + id + " : " + message);
+
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id != null) {
+            byte[] data;
+
+            try {
+                data = Base64Decoder.decode(message);
+            } catch (IllegalArgumentException e) {
+                promise.reject(e);
+                return;
+            }
+
+            Checksum checksum = mChecksums.get(id);
+
+            if (checksum != null && checksum.appendOnWrite) {
+                String delimiter = mDelimiters.get(id);
+                // A checksum is only allowed on ISO-8859-1 decoded frames, see setCharset
+                data = checksum.append(data, delimiter != null ? delimiter.getBytes(ChunkDecoder.ISO_8859_1) : null);
+            }
+
+            try {
+                if (!mBluetoothService.write(id, data)) {
+                    promise.reject(new Exception("Write journal of device " + id + " is full"));
+                    return;
+                }
+            } catch (IOException e) {
+                promise.reject(new Exception("Unable to append to write journal of device " + id + ": " + e.getMessage()));
+                return;
+            }
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void printImage(String id, final String path, ReadableMap options, final Promise promise) {
+        if (D) Log.d(TAG, "Print image " + path + " on device id " + id);
+
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null || !mBluetoothService.isConnected(id)) {
+            promise.reject(new Exception("Device " + id + " is not connected"));
+            return;
+        }
+
+        final String deviceId = id;
+        int width = DEFAULT_PRINT_WIDTH;
+        int bandHeight = DEFAULT_PRINT_BAND_HEIGHT;
+        boolean dither = true;
+        int bandDelay = DEFAULT_PRINT_BAND_DELAY;
+        int feedLines = 0;
+
+        if (options != null) {
+            if (options.hasKey("width") && !options.isNull("width")) {
+                width = options.getInt("width");
+            }
+
+            if (options.hasKey("bandHeight") && !options.isNull("bandHeight")) {
+                bandHeight = options.getInt("bandHeight");
+            }
+
+            if (options.hasKey("dither") && !options.isNull("dither")) {
+                dither = options.getBoolean("dither");
+            }
+
+            if (options.hasKey("bandDelay") && !options.isNull("bandDelay")) {
+                bandDelay = options.getInt("bandDelay");
+            }
+
+            if (options.hasKey("feedLines") && !options.isNull("feedLines")) {
+                feedLines = options.getInt("feedLines");
+            }
+        }
+
+        final ImagePrinter printer = new ImagePrinter(path, width, bandHeight, dither);
+        final int delay = bandDelay;
+        final int feed = feedLines;
+
+        mPrintExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    EscPos.Raster raster = printer.print(new EscPos.Raster.Sink() {
+                        @Override
+                        public void write(byte[] band) throws IOException {
+                            writeToPrinter(deviceId, band, delay);
+                        }
+                    });
+
+                    if (feed > 0) {
+                        writeToPrinter(deviceId, EscPos.feed(feed), 0);
+                    }
+
+                    WritableMap params = Arguments.createMap();
+                    params.putInt("bands", raster.getBands());
+                    params.putDouble("bytes", raster.getBytes());
+                    promise.resolve(params);
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to print image", e);
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void printQRCode(String id, String data, ReadableMap options, final Promise promise) {
+        if (D) Log.d(TAG, "Print QR code on device id " + id);
+
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null || !mBluetoothService.isConnected(id)) {
+            promise.reject(new Exception("Device " + id + " is not connected"));
+            return;
+        }
+
+        final String deviceId = id;
+        int moduleSize = DEFAULT_QR_MODULE_SIZE;
+        String errorCorrection = null;
+        int feedLines = 0;
+
+        if (options != null) {
+            if (options.hasKey("size") && !options.isNull("size")) {
+                moduleSize = options.getInt("size");
+            }
+
+            if (options.hasKey("errorCorrection") && !options.isNull("errorCorrection")) {
+                errorCorrection = options.getString("errorCorrection");
+            }
+
+            if (options.hasKey("feedLines") && !options.isNull("feedLines")) {
+                feedLines = options.getInt("feedLines");
+            }
+        }
+
+        final byte[] commands;
+
+        try {
+            commands = EscPos.qrCode(data, moduleSize, EscPos.qrErrorCorrection(errorCorrection));
+        } catch (IllegalArgumentException e) {
+            promise.reject(e);
+            return;
+        }
+
+        final int feed = feedLines;
+
+        // Queued behind running image jobs, so prints do not interleave
+        mPrintExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeToPrinter(deviceId, commands, 0);
+
+                    if (feed > 0) {
+                        writeToPrinter(deviceId, EscPos.feed(feed), 0);
+                    }
+
+                    promise.resolve(true);
+                } catch (IOException e) {
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void enableJournal(final String id, ReadableMap options, final Promise promise) {
+        long maxBytes = DEFAULT_JOURNAL_MAX_BYTES;
+        long ttl = DEFAULT_JOURNAL_TTL;
+
+        if (options != null) {
+            if (options.hasKey("maxBytes") && !options.isNull("maxBytes")) {
+                maxBytes = (long) options.getDouble("maxBytes");
+            }
+
+            if (options.hasKey("ttl") && !options.isNull("ttl")) {
+                ttl = (long) options.getDouble("ttl");
+            }
+        }
+
+        final long journalMaxBytes = maxBytes;
+        final long journalTtl = ttl;
+
+        // Queued behind the journals opened at startup
+        mJournalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    WriteJournal journal = mBluetoothService.getJournal(id);
+
+                    if (journal != null) {
+                        journal.configure(journalMaxBytes, journalTtl, System.currentTimeMillis());
+                    } else {
+                        mBluetoothService.setJournal(WriteJournal.create(getJournalDirectory(), id, journalMaxBytes, journalTtl));
+                    }
+
+                    promise.resolve(true);
+                } catch (IOException e) {
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void disableJournal(final String id, final Promise promise) {
+        mJournalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                WriteJournal journal = mBluetoothService.removeJournal(id);
+                promise.resolve(journal != null ? journal.delete() : 0);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getJournal(final String id, final Promise promise) {
+        mJournalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                WriteJournal journal = mBluetoothService.getJournal(id);
+
+                if (journal == null) {
+                    promise.resolve(null);
+                    return;
+                }
+
+                WritableMap params = Arguments.createMap();
+                params.putString("id", id);
+                params.putInt("entries", journal.size());
+                params.putDouble("bytes", journal.getBytes());
+                promise.resolve(params);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void readFromDevice(String id, Promise promise) {
+        if (D) Log.d(TAG, "Read from device id " + id);
+
+        if (id == null) {
+           id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        String data = "";
+        ReceiveBuffer buffer = id != null ? mBuffers.get(id) : null;
+
+        if (buffer != null) {
+            data = buffer.readAll();
+        }
+
+        promise.resolve(data);
+    }
+
+    @ReactMethod
+    public void readUntilDelimiter(String delimiter, String id, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        promise.resolve(readUntil(id, delimiter));
+    }
+
+    @ReactMethod
+    public void withDelimiter(String delimiter, String id, Promise promise) {
+        if (D) Log.d(TAG, "Set delimiter of device id " + id + " to " + delimiter);
+
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id != null) {
+            mDelimiters.put(id, delimiter != null ? delimiter : "");
+        }
+
+        promise.resolve(id);
+    }
+
+    @ReactMethod
+    public void clear(String id, Promise promise) {
+        if (id == null) {
+
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        ReceiveBuffer buffer = id != null ? mBuffers.get(id) : null;
+
+        if (buffer != null) {
+            buffer.clear();
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void available(String id, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
 
         int length = 0;
+        ReceiveBuffer buffer = id != null ? mBuffers.get(id) : null;
+
+        if (buffer != null) {
+            length = buffer.length();
+        }
+
+        promise.resolve(length);
+    }
+
+    /**
+     * Synchronous counterpart of available for parsers that poll the
+     * receive buffer. It blocks the JS thread for a single buffer access
+     * instead of a bridge round trip; it is not available while debugging
+     * JS remotely.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public int availableSync(String id) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        ReceiveBuffer buffer = id != null ? mBuffers.get(id) : null;
+        return buffer != null ? buffer.length() : 0;
+    }
+
+    /**
+     * Synchronous counterpart of readFromDevice
+     *
+     * @param id Device address, or null for the first connected device
+     * @param maxLength Maximum number of bytes to read, 0 or less for all
+     * @return Unread data
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public String readSync(String id, int maxLength) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        ReceiveBuffer buffer = id != null ? mBuffers.get(id) : null;
+
+        if (buffer == null) {
+            return "";
+        }
+
+        return maxLength > 0 ? buffer.read(maxLength) : buffer.readAll();
+    }
+
+    /**
+     * Synchronous counterpart of readUntilDelimiter
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public String readUntilDelimiterSync(String delimiter, String id) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        return readUntil(id, delimiter);
+    }
+
+    @ReactMethod
+    public void openCursor(String id, String name, ReadableMap options, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null) {
+            promise.reject(new Exception("No device to open a cursor for"));
+            return;
+        }
+
+        int capacity = ReceiveLog.DEFAULT_CAPACITY;
+
+        if (options != null && options.hasKey("capacity") && !options.isNull("capacity")) {
+            capacity = options.getInt("capacity");
+        }
+
+        synchronized (mReceiveLogs) {
+            ReceiveLog log = mReceiveLogs.get(id);
+
+            if (log == null) {
+                try {
+                    // The capacity of the first cursor's log holds for all cursors of the device
+                    log = new ReceiveLog(capacity);
+                } catch (IllegalArgumentException e) {
+                    promise.reject(e);
+                    return;
+                }
+
+                mReceiveLogs.put(id, log);
+            }
+
+            if (!log.open(name)) {
+                promise.reject(new Exception("Cursor " + name + " of device " + id + " is already open"));
+                return;
+            }
+        }
+
+        if (D) Log.d(TAG, "Cursor " + name + " of device " + id + " opened");
+        promise.resolve(id);
+    }
+
+    @ReactMethod
+    public void closeCursor(String id, String name, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        boolean closed = false;
+
+        synchronized (mReceiveLogs) {
+            ReceiveLog log = id != null ? mReceiveLogs.get(id) : null;
+
+            if (log != null) {
+                closed = log.close(name);
+
+                if (log.isEmpty()) {
+                    mReceiveLogs.remove(id);
+                }
+            }
+        }
+
+        promise.resolve(closed);
+    }
+
+    @ReactMethod
+    public void cursorAvailable(String id, String name, Promise promise) {
+        ReceiveLog log = getReceiveLog(id);
+        long available = log != null ? log.available(name) : -1;
+
+        if (available < 0) {
+            rejectUnknownCursor(id, name, promise);
+            return;
+        }
+
+        promise.resolve((double) available);
+    }
+
+    @ReactMethod
+    public void readCursor(String id, String name, int maxLength, Promise promise) {
+        ReceiveLog log = getReceiveLog(id);
+        resolveCursorRead(log != null ? log.read(name, maxLength) : null, id, name, promise);
+    }
+
+    @ReactMethod
+    public void readCursorUntil(String id, String name, String delimiter, Promise promise) {
+        ReceiveLog log = getReceiveLog(id);
+        resolveCursorRead(log != null ? log.readUntil(name, delimiter) : null, id, name, promise);
+    }
+
+    @ReactMethod
+    public void addFilter(String id, ReadableMap filter, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null) {
+            promise.reject(new Exception("No device to add a filter to"));
+            return;
+        }
+
+        FrameFilter frameFilter;
+
+        try {
+            frameFilter = filterFromReadableMap(mNextFilterId.getAndIncrement(), filter);
+        } catch (IllegalArgumentException e) {
+            // Also covers PatternSyntaxException
+            promise.reject(e);
+            return;
+        }
+
+        if (frameFilter.binary && !decodesBytes(id)) {
+            promise.reject(byteStageException("A bytes or field filter", id));
+            return;
+        }
+
+        CopyOnWriteArrayList<FrameFilter> filters = mFilters.get(id);
+
+        if (filters == null) {
+            CopyOnWriteArrayList<FrameFilter> created = new CopyOnWriteArrayList<>();
+            filters = mFilters.putIfAbsent(id, created);
+
+            if (filters == null) {
+                filters = created;
+            }
+        }
+
+        filters.add(frameFilter);
+        promise.resolve(frameFilter.id);
+    }
+
+    @ReactMethod
+    public void removeFilter(String id, int filterId, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        CopyOnWriteArrayList<FrameFilter> filters = id != null ? mFilters.get(id) : null;
+        boolean removed = false;
+
+        if (filters != null) {
+            for (FrameFilter filter : filters) {
+                if (filter.id == filterId) {
+                    removed = filters.remove(filter);
+                }
+            }
+        }
+
+        promise.resolve(removed);
+    }
+
+    @ReactMethod
+    public void clearFilters(String id, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id != null) {
+            mFilters.remove(id);
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setChecksum(String id, ReadableMap options, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null) {
+            promise.reject(new Exception("No device to set a checksum for"));
+            return;
+        }
+
+        if (options == null) {
+            mChecksums.remove(id);
+            promise.resolve(true);
+            return;
+        }
+
+        if (!decodesBytes(id)) {
+            promise.reject(byteStageException("A checksum", id));
+            return;
+        }
+
+        try {
+            Checksum.Algorithm algorithm = Checksum.Algorithm.parse(
+                    options.hasKey("algorithm") ? options.getString("algorithm") : null);
+            int start = options.hasKey("start") && !options.isNull("start") ? options.getInt("start") : 0;
+            boolean littleEndian = options.hasKey("endian") && !options.isNull("endian")
+                    && "little".equals(options.getString("endian"));
+            boolean dropInvalid = options.hasKey("invalid") && !options.isNull("invalid")
+                    && "drop".equals(options.getString("invalid"));
+            boolean appendOnWrite = options.hasKey("appendOnWrite") && !options.isNull("appendOnWrite")
+                    && options.getBoolean("appendOnWrite");
+
+            mChecksums.put(id, new Checksum(algorithm, start, littleEndian, dropInvalid, appendOnWrite));
+            promise.resolve(true);
+        } catch (IllegalArgumentException e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void setCharset(String id, String charset, Promise promise) {
+        if (D) Log.d(TAG, "Set charset of device " + id + " : " + charset);
+
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null) {
+            promise.reject(new Exception("No device to set a charset for"));
+            return;
+        }
+
+        Charset decoder;
+
+        try {
+            // Unknown names throw IllegalCharsetNameException or UnsupportedCharsetException
+            decoder = charset != null ? Charset.forName(charset) : null;
+        } catch (IllegalArgumentException e) {
+            promise.reject(e);
+            return;
+        }
+
+        String stage = byteStage(id);
+
+        if (decoder != null && !ChunkDecoder.ISO_8859_1.equals(decoder) && stage != null) {
+            promise.reject(new Exception("Charset " + decoder.name() + " cannot be used while " + stage
+                    + " is set on device " + id + ", as it needs ISO-8859-1 frames"));
+            return;
+        }
+
+        mBluetoothService.setCharset(id, decoder);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setMaxFrameSize(String id, ReadableMap options, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null) {
+            promise.reject(new Exception("No device to set a maximum frame size for"));
+            return;
+        }
+
+        FrameSpool spool = null;
+
+        if (options != null) {
+            try {
+                if (!options.hasKey("maxSize") || options.isNull("maxSize")) {
+                    throw new IllegalArgumentException("Maximum frame size is missing");
+                }
+
+                int chunkSize = options.hasKey("chunkSize") && !options.isNull("chunkSize")
+                        ? options.getInt("chunkSize") : FrameSpool.DEFAULT_CHUNK_SIZE;
+                String mode = options.hasKey("mode") && !options.isNull("mode")
+                        ? options.getString("mode") : "chunks";
+                File directory;
+
+                if ("chunks".equals(mode)) {
+                    directory = null;
+                } else if ("file".equals(mode)) {
+                    if (!decodesBytes(id)) {
+                        promise.reject(byteStageException("A large frame file", id));
+                        return;
+                    }
+
+                    directory = new File(mReactContext.getCacheDir(), FRAME_DIRECTORY);
+                } else {
+                    throw new IllegalArgumentException("Unknown large frame mode " + mode);
+                }
+
+                spool = new FrameSpool(options.getInt("maxSize"), chunkSize, directory, mSpoolListener);
+            } catch (IllegalArgumentException e) {
+                promise.reject(e);
+                return;
+            }
+        }
+
+        FrameSpool previous = spool != null ? mSpools.put(id, spool) : mSpools.remove(id);
+
+        if (previous != null) {
+            previous.abort();
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setConflation(String id, ReadableMap options, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        if (id == null) {
+            promise.reject(new Exception("No device to set conflation for"));
+            return;
+        }
+
+        Conflator conflator = null;
+
+        if (options != null) {
+            try {
+                double rate = options.hasKey("rate") && !options.isNull("rate")
+                        ? options.getDouble("rate") : DEFAULT_CONFLATION_RATE;
+                int keyOffset = -1;
+                int keyLength = 0;
+                Pattern keyPattern = null;
+
+                if (options.hasKey("key") && !options.isNull("key")) {
+                    ReadableMap key = options.getMap("key");
+
+                    if (key.hasKey("pattern") && !key.isNull("pattern")) {
+                        keyPattern = Pattern.compile(key.getString("pattern"));
+                    } else if (key.hasKey("offset") && key.hasKey("length")) {
+                        keyOffset = key.getInt("offset");
+                        keyLength = key.getInt("length");
+                    } else {
+                        throw new IllegalArgumentException("Conflation key needs a pattern or an offset and length");
+                    }
+                }
+
+                int maxKeys = options.hasKey("maxKeys") && !options.isNull("maxKeys")
+                        ? options.getInt("maxKeys") : Conflator.DEFAULT_MAX_KEYS;
+
+                conflator = new Conflator(rate, keyOffset, keyLength, keyPattern, maxKeys);
+            } catch (IllegalArgumentException e) {
+                // Also covers PatternSyntaxException
+                promise.reject(e);
+                return;
+            }
+
+            if (conflator.hasOffsetKey() && !decodesBytes(id)) {
+                promise.reject(byteStageException("A conflation key offset", id));
+                return;
+            }
+        }
+
+        final String deviceId = id;
+
+        synchronized (mConflators) {
+            Conflator previous = conflator != null ? mConflators.put(id, conflator) : mConflators.remove(id);
+
+            if (previous != null) {
+                previous.task.cancel(false);
+                // Frames still waiting are delivered right away
+                flushConflated(id, previous);
+            }
+
+            if (conflator != null) {
+                final Conflator scheduled = conflator;
+
+                conflator.task = mConflationScheduler.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushConflated(deviceId, scheduled);
+                    }
+                }, conflator.periodMicros, conflator.periodMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void startConnectionKeeper(ReadableMap options, Promise promise) {
+        String title = null;
+        String text = null;
+        int maxFrames = DEFAULT_BACKLOG_FRAMES;
+        long maxBytes = DEFAULT_BACKLOG_BYTES;
+        int batchSize = DEFAULT_BACKLOG_BATCH_SIZE;
+
+        if (options != null) {
+            if (options.hasKey("title") && !options.isNull("title")) {
+                title = options.getString("title");
+            }
+
+            if (options.hasKey("text") && !options.isNull("text")) {
+                text = options.getString("text");
+            }
+
+            if (options.hasKey("maxFrames") && !options.isNull("maxFrames")) {
+                maxFrames = options.getInt("maxFrames");
+            }
+
+            if (options.hasKey("maxBytes") && !options.isNull("maxBytes")) {
+                maxBytes = (long) options.getDouble("maxBytes");
+            }
+
+            if (options.hasKey("batchSize") && !options.isNull("batchSize")) {
+                batchSize = options.getInt("batchSize");
+            }
+        }
+
+        if (batchSize <= 0) {
+            promise.reject(new Exception("Batch size must be positive"));
+            return;
+        }
+
+        if (mBacklog == null) {
+            try {
+                mBacklog = new FrameBacklog(maxFrames, maxBytes);
+            } catch (IllegalArgumentException e) {
+                promise.reject(e);
+                return;
+            }
+        }
+
+        mBacklogBatchSize = batchSize;
+
+        try {
+            ConnectionKeeperService.start(mReactContext, title, text);
+        } catch (RuntimeException e) {
+            // E.g. started from the background on Android 12+
+            mBacklog = null;
+            promise.reject(e);
+            return;
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void stopConnectionKeeper(Promise promise) {
+        final FrameBacklog backlog = mBacklog;
+
+        if (backlog != null) {
+            mBacklog = null;
+            ConnectionKeeperService.stop(mReactContext);
+
+            // Frames held back until now are still delivered
+            backlog.resume();
+            mScheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushBacklog(backlog);
+                }
+            });
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setFrameMetadata(boolean enabled, Promise promise) {
+        mFrameMetadata = enabled;
+        promise.resolve(enabled);
+    }
+
+    @ReactMethod
+    public void getStats(String id, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
 
-        if (mBuffers.containsKey(id)) {
-            StringBuffer buffer = mBuffers.get(id);
-            length = buffer.length();
+        DeviceStats stats = id != null ? mBluetoothService.getAllStats().get(id) : null;
+
+        if (stats == null) {
+            promise.reject(new Exception("No statistics for device " + id));
+            return;
         }
 
-        promise.resolve(length);
+        promise.resolve(statsToWritableMap(id, stats));
+    }
+
+    @ReactMethod
+    public void getLatency(String id, Promise promise) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        DeviceStats stats = id != null ? mBluetoothService.getAllStats().get(id) : null;
+
+        if (stats == null) {
+            promise.reject(new Exception("No statistics for device " + id));
+            return;
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putString("id", id);
+        params.putMap("readToFrame", histogramToWritableMap(stats.getReadToFrame()));
+        params.putMap("frameToEmit", histogramToWritableMap(stats.getFrameToEmit()));
+        params.putMap("readToEmit", histogramToWritableMap(stats.getReadToEmit()));
+        promise.resolve(params);
+    }
+
+    @ReactMethod
+    public void resetLatency(String id, Promise promise) {
+        if (id == null) {
+            for (DeviceStats stats : mBluetoothService.getAllStats().values()) {
+                stats.resetLatency();
+            }
+        } else {
+            DeviceStats stats = mBluetoothService.getAllStats().get(id);
+
+            if (stats != null) {
+                stats.resetLatency();
+            }
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setStatsInterval(int intervalMs, Promise promise) {
+        synchronized (mScheduler) {
+            if (mStatsTask != null) {
+                mStatsTask.cancel(false);
+                mStatsTask = null;
+            }
+
+            if (intervalMs > 0) {
+                mStatsTask = mScheduler.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        emitStats();
+                    }
+                }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setAdapterName(String newName, Promise promise) {
+        if (mBluetoothAdapter != null) {
+            mBluetoothAdapter.setName(newName);
+            promise.resolve(mBluetoothAdapter.getName());
+        } else {
+            rejectNullBluetoothAdapter(promise);
+        }
+    }
+
+    /**
+     * Keep the promise of a connection attempt until it settles. A pending
+     * promise of an earlier attempt to the same device is rejected, as the
+     * new attempt cancels it.
+     *
+     * @param id Device id
+     * @param promise Promise of the new attempt
+     */
+    private void putConnectPromise(String id, Promise promise) {
+        Promise replaced = mConnectedPromises.put(id, promise);
+
+        if (replaced != null) {
+            replaced.reject(new Exception("Connection attempt to device " + id + " was replaced"));
+        }
+    }
+
+    /**
+     * Handle connection success
+     * 
+     * @param msg Additional message
+     * @param id Connected device id
+     */
+    void onConnectionSuccess(String msg, String id) {
+        WritableMap params = Arguments.createMap();
+        WritableMap device  = connectionToWritableMap(id);
+
+        params.putMap("device", device);
+        params.putString("message", msg);
+        sendEvent(CONN_SUCCESS, params);
+
+        if (!mDelimiters.containsKey(id)) {
+            mDelimiters.put(id, "");
+        }
+
+        if (!mBuffers.containsKey(id)) {
+            mBuffers.put(id, new ReceiveBuffer());
+        }
+
+        Promise promise = mConnectedPromises.remove(id);
+
+        if (promise != null) {
+            promise.resolve(params);
+        }
+    }
+
+    /**
+     * handle connection failure
+     * 
+     * @param msg Additional message
+     * @param id Device id
+     */
+    void onConnectionFailed(String msg, String id) {
+        WritableMap params = Arguments.createMap();
+        WritableMap device  = connectionToWritableMap(id);
+
+        params.putMap("device", device);
+        params.putString("message", msg);
+        sendEvent(CONN_FAILED, params);
+
+        Promise promise = mConnectedPromises.remove(id);
+
+        if (promise != null) {
+            promise.reject(new Exception(msg));
+        }
+    }
+
+    /**
+     * Handle lost connection
+     * 
+     * @param msg Message
+     * @param id Device id
+     */
+    void onConnectionLost(String msg, String id) {
+        WritableMap params = Arguments.createMap();
+        WritableMap device  = connectionToWritableMap(id);
+
+        params.putMap("device", device);
+        params.putString("message", msg);
+        sendEvent(CONN_LOST, params);
+
+        mConnectedPromises.remove(id);
+    }
+
+    /**
+     * Handle connection state transition
+     *
+     * @param id Device id
+     * @param previous State before the transition
+     * @param state State after the transition
+     */
+    @Override
+    public void onStateChanged(String id, ConnectionState.State previous, ConnectionState.State state) {
+        if (D) Log.d(TAG, "Device id " + id + " state " + previous.name + " -> " + state.name);
+
+        WritableMap params = Arguments.createMap();
+        params.putString("id", id);
+        params.putString("state", state.name);
+        params.putString("previous", previous.name);
+        sendEvent(CONN_STATE_CHANGED, params);
+
+        // Lost or stopped, a flush task must not outlive the connection
+        if (state == ConnectionState.State.NONE) {
+            removeConflator(id);
+        }
+    }
+
+    /**
+     * Handle error
+     * 
+     * @param e Exception
+     */
+    void onError(Exception e) {
+        onError(DeviceStats.ErrorType.OTHER, null, null, e);
+    }
+
+    /**
+     * Handle error of a device. Identical errors are aggregated and the
+     * error events are rate limited.
+     *
+     * @param type Error category, sent as the code
+     * @param id Device address, or null
+     * @param phase What was being done, or null
+     * @param e Exception
+     */
+    void onError(DeviceStats.ErrorType type, @Nullable String id, @Nullable String phase, Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.toString();
+        mErrors.report(type.name().toLowerCase(Locale.US), id, phase, message);
+    }
+
+    /**
+     * Handle read
+     *
+     * @param id Device address
+     * @param data Message
+     * @param readNanos System.nanoTime() of the socket read
+     */
+    void onData(String id, String data, long readNanos) {
+        ReceiveBuffer buffer = mBuffers.get(id);
+        DeviceStats stats = mBluetoothService.getStats(id);
+        ReceiveLog log = mReceiveLogs.get(id);
+
+        if (log != null) {
+            log.append(data);
+        }
+
+        if (buffer != null) {
+            buffer.append(data);
+            stats.onBuffered(buffer.length());
+        }
+
+        String delimiter = mDelimiters.get(id);
+
+        if (delimiter == null) {
+            delimiter = "";
+        }
+
+        Checksum checksum = mChecksums.get(id);
+        List<FrameFilter> filters = mFilters.get(id);
+        Conflator conflator = mConflators.get(id);
+        FrameSpool spool = buffer != null && delimiter.length() > 0 ? mSpools.get(id) : null;
+        String completeData;
+
+        if (spool != null && spool.isActive()) {
+            // A large frame is streamed out until its delimiter shows up
+            spool.drain(id, buffer, delimiter, stats);
+
+            if (spool.isActive()) {
+                return;
+            }
+        }
+
+        // Every frame in the buffer was completed by this read
+        while ((completeData = readUntil(id, delimiter)).length() > 0) {
+            long frameNanos = System.nanoTime();
+            long seq = stats.onFrameIn();
+            boolean valid = true;
+
+            if (checksum != null) {
+                valid = checksum.isValid(completeData, completeData.length() - delimiter.length());
+
+                if (!valid) {
+                    stats.onError(DeviceStats.ErrorType.CHECKSUM);
+
+                    if (checksum.dropInvalid) {
+                        continue;
+                    }
+                }
+            }
+
+            int end = completeData.length() - delimiter.length();
+
+            if (filters != null && !filters.isEmpty() && !FrameFilter.matchesAny(filters, completeData, end)) {
+                stats.onFrameFiltered();
+                continue;
+            }
+
+            Boolean checked = checksum != null ? valid : null;
+
+            ReceivedFrame frame = new ReceivedFrame(id, completeData, end, seq, readNanos, frameNanos, checked);
+
+            if (conflator != null) {
+                if (!conflator.offer(frame)) {
+                    stats.onFrameConflated();
+                }
+
+                continue;
+            }
+
+            emitFrame(frame, filters, stats);
+        }
+
+        if (spool != null) {
+            // Starts a large frame if the incomplete one outgrew the maximum
+            spool.drain(id, buffer, delimiter, stats);
+        }
+    }
+
+    /**
+     * Turn conflation of a device off, e.g. when it disconnects. Frames
+     * still waiting are delivered right away.
+     *
+     * @param id Device address
+     */
+    private void removeConflator(String id) {
+        synchronized (mConflators) {
+            Conflator conflator = mConflators.remove(id);
+
+            if (conflator != null) {
+                conflator.task.cancel(false);
+                flushConflated(id, conflator);
+            }
+        }
+    }
+
+    /**
+     * Deliver the frames a conflator kept since its last flush
+     *
+     * @param id Device address
+     * @param conflator Conflator of the device
+     */
+    private void flushConflated(String id, Conflator conflator) {
+        List<ReceivedFrame> frames = conflator.drain();
+
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        DeviceStats stats = mBluetoothService.getStats(id);
+        List<FrameFilter> filters = mFilters.get(id);
+
+        for (ReceivedFrame frame : frames) {
+            emitFrame(frame, filters, stats);
+        }
+    }
+
+    /**
+     * Deliver the frames held back while the host was in the background,
+     * in batches of read events
+     *
+     * @param backlog Backlog of the connection keeper
+     */
+    private void flushBacklog(FrameBacklog backlog) {
+        List<ReceivedFrame> batch;
+
+        while (!backlog.isPaused() && (batch = backlog.nextBatch(mBacklogBatchSize)) != null) {
+            WritableArray frames = Arguments.createArray();
+
+            for (ReceivedFrame frame : batch) {
+                frames.pushMap(frameToWritableMap(frame, mFilters.get(frame.id)));
+            }
+
+            WritableMap params = Arguments.createMap();
+            params.putArray("frames", frames);
+            params.putDouble("dropped", backlog.takeDropped());
+            params.putInt("remaining", backlog.size());
+            sendEvent(READ_BATCH, params);
+        }
+    }
+
+    /**
+     * Send a complete frame to JS, or hold it back while the host is in
+     * the background
+     *
+     * @param frame Complete frame
+     * @param filters Filters of the device, or null
+     * @param stats Stats of the device
+     */
+    private void emitFrame(ReceivedFrame frame, @Nullable List<FrameFilter> filters, DeviceStats stats) {
+        FrameBacklog backlog = mBacklog;
+
+        if (backlog != null && backlog.offer(frame)) {
+            return;
+        }
+
+        WritableMap params = frameToWritableMap(frame, filters);
+
+        sendEvent(DEVICE_READ, params);
+        sendEvent(DATA_READ, params);
+
+        stats.onFrameEmitted(frame.readNanos, frame.frameNanos, System.nanoTime());
+    }
+
+    /**
+     * Build the read event of a frame
+     *
+     * @param frame Complete frame
+     * @param filters Filters of the device, or null
+     * @return Event params
+     */
+    private WritableMap frameToWritableMap(ReceivedFrame frame, @Nullable List<FrameFilter> filters) {
+        WritableMap params = Arguments.createMap();
+        params.putString("id", frame.id);
+        params.putString("data", frame.data);
+
+        if (frame.valid != null) {
+            params.putBoolean("valid", frame.valid);
+        }
+
+        if (filters != null && !filters.isEmpty()) {
+            WritableArray matches = Arguments.createArray();
+
+            for (FrameFilter filter : filters) {
+                if (filter.matches(frame.data, frame.end)) {
+                    matches.pushInt(filter.id);
+                }
+            }
+
+            params.putArray("filters", matches);
+        }
+
+        if (mFrameMetadata) {
+            params.putDouble("timestamp", frame.readNanos / 1e6);
+            params.putDouble("seq", frame.seq);
+        }
+
+        return params;
+    }
+
+    /**
+     * @param id Device address, or null for the first connected device
+     * @return Receive log of the device, or null if no cursor is open
+     */
+    @Nullable
+    private ReceiveLog getReceiveLog(String id) {
+        if (id == null) {
+            id = mBluetoothService.getFirstDeviceAddress();
+        }
+
+        return id != null ? mReceiveLogs.get(id) : null;
+    }
+
+    private void resolveCursorRead(@Nullable ReceiveLog.Read read, String id, String name, Promise promise) {
+        if (read == null) {
+            rejectUnknownCursor(id, name, promise);
+            return;
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putString("data", read.data);
+        result.putDouble("lost", read.lost);
+        promise.resolve(result);
+    }
+
+    private void rejectUnknownCursor(String id, String name, Promise promise) {
+        promise.reject(new Exception("Cursor " + name + " of device " + id + " is not open"));
+    }
+
+    /**
+     * Handle read until find a certain delimiter
+     *
+     * @param id Device address
+     * @param delimiter
+     * @return buffer data from device
+     */
+    private String readUntil(String id, String delimiter) {
+        ReceiveBuffer buffer = id != null ? mBuffers.get(id) : null;
+
+        if (buffer == null) {
+            return "";
+        }
+
+        return buffer.readUntil(delimiter);
+    }
+
+    /**
+     * Check if is api level 19 or above
+     * 
+     * @return is above api level 19
+     */
+    private boolean isKitKatOrAbove() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
     }
 
-    @ReactMethod
-    public void setAdapterName(String newName, Promise promise) {
-        if (mBluetoothAdapter != null) {
-            mBluetoothAdapter.setName(newName);
-            promise.resolve(mBluetoothAdapter.getName());
-        } else {
-            rejectNullBluetoothAdapter(promise);
+    /**
+     * Send event to javascript
+     * 
+     * @param eventName Name of the event
+     * @param params    Additional params
+     */
+    private void sendEvent(String eventName, @Nullable WritableMap params) {
+        if (mReactContext.hasActiveCatalystInstance()) {
+            if (D) Log.d(TAG, "Sending event: " + eventName);
+            mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
         }
     }
 
     /**
-     * Handle connection success
+     * Convert BluetoothDevice into WritableMap, served from the device descriptor cache
      * 
-     * @param msg Additional message
-     * @param connectedDevice Connected device
+     * @param device Bluetooth device
      */
-    void onConnectionSuccess(String msg, BluetoothDevice connectedDevice) {
-        WritableMap params = Arguments.createMap();
-        WritableMap device  = deviceToWritableMap(connectedDevice);
+    private WritableMap deviceToWritableMap(BluetoothDevice device) {
+        if (device == null) {
+            return Arguments.createMap();
+        }
 
-        params.putMap("device", device);
-        params.putString("message", msg);
-        sendEvent(CONN_SUCCESS, params);
+        return descriptorToWritableMap(mDeviceCache.get(device));
+    }
 
-        String id = connectedDevice.getAddress();
+    /**
+     * Convert connection id into WritableMap, served from the device descriptor cache
+     *
+     * @param id Device address or other connection id
+     */
+    private WritableMap connectionToWritableMap(String id) {
+        DeviceDescriptorCache.Descriptor descriptor = mDeviceCache.get(id);
 
-        if (!mDelimiters.containsKey(id)) {
-            mDelimiters.put(id, "");
+        if (descriptor == null) {
+            descriptor = new DeviceDescriptorCache.Descriptor(id, null, null, false);
         }
 
-        if (!mBuffers.containsKey(id)) {
-            mBuffers.put(id, new StringBuffer());
-        }
+        return descriptorToWritableMap(descriptor);
+    }
 
-        if (mConnectedPromises.containsKey(id)) {
-            Promise promise = mConnectedPromises.get(id);
+    /**
+     * Convert cached device descriptor into WritableMap
+     *
+     * @param descriptor Device descriptor
+     */
+    private WritableMap descriptorToWritableMap(DeviceDescriptorCache.Descriptor descriptor) {
+        WritableMap params = Arguments.createMap();
 
-            if (promise != null) {
-                promise.resolve(params);
-            }
+        params.putString("name", descriptor.name);
+        params.putString("address", descriptor.address);
+        params.putString("id", descriptor.address);
+
+        if (descriptor.deviceClass != null) {
+            params.putInt("class", descriptor.deviceClass);
         }
+
+        return params;
     }
 
     /**
-     * handle connection failure
-     * 
-     * @param msg Additional message
-     * @param connectedDevice Connected device
+     * Checksums, byte and field filters, conflation key offsets and large
+     * frame files count chars as bytes, which only holds for ISO-8859-1
+     * decoded frames
+     *
+     * @param id Device id
+     * @return Whether frames of the device are decoded as ISO-8859-1
      */
-    void onConnectionFailed(String msg, BluetoothDevice connectedDevice) {
-        WritableMap params = Arguments.createMap();
-        WritableMap device  = deviceToWritableMap(connectedDevice);
-
-        params.putMap("device", device);
-        params.putString("message", msg);
-        sendEvent(CONN_FAILED, params);
+    private boolean decodesBytes(String id) {
+        return ChunkDecoder.ISO_8859_1.equals(mBluetoothService.getCharset(id));
+    }
 
-        String id = connectedDevice.getAddress();
+    /**
+     * @param id Device id
+     * @return The first frame stage of the device that counts chars as bytes, or null
+     */
+    private String byteStage(String id) {
+        if (mChecksums.containsKey(id)) {
+            return "a checksum";
+        }
 
-        if (mConnectedPromises.containsKey(id)) {
-            Promise promise = mConnectedPromises.get(id);
+        List<FrameFilter> filters = mFilters.get(id);
 
-            if (promise != null) {
-                promise.reject(new Exception(msg));
+        if (filters != null) {
+            for (FrameFilter filter : filters) {
+                if (filter.binary) {
+                    return "a bytes or field filter";
+                }
             }
         }
+
+        Conflator conflator = mConflators.get(id);
+
+        if (conflator != null && conflator.hasOffsetKey()) {
+            return "a conflation key offset";
+        }
+
+        FrameSpool spool = mSpools.get(id);
+
+        if (spool != null && spool.writesFiles()) {
+            return "a large frame file";
+        }
+
+        return null;
     }
 
     /**
-     * Handle lost connection
-     * 
-     * @param msg Message
-     * @param connectedDevice Connected device
+     * @param stage Frame stage that counts chars as bytes
+     * @param id Device id
+     * @return Rejection of the stage for a device with another charset
      */
-    void onConnectionLost(String msg, BluetoothDevice connectedDevice) {
-        WritableMap params = Arguments.createMap();
-        WritableMap device  = deviceToWritableMap(connectedDevice);
-
-        params.putMap("device", device);
-        params.putString("message", msg);
-        sendEvent(CONN_LOST, params);
-
-        mConnectedPromises.remove(connectedDevice.getAddress());
+    private Exception byteStageException(String stage, String id) {
+        return new Exception(stage + " needs ISO-8859-1 frames, but device " + id
+                + " uses charset " + mBluetoothService.getCharset(id).name());
     }
 
     /**
-     * Handle error
-     * 
-     * @param e Exception
+     * Convert a JS filter description into a FrameFilter
+     *
+     * @param filterId Filter id
+     * @param filter Filter description with a type and its parameters
+     * @throws IllegalArgumentException When the description is invalid
      */
-    void onError(Exception e) {
-        WritableMap params = Arguments.createMap();
-        params.putString("message", e.getMessage());
-        sendEvent(ERROR, params);
+    private static FrameFilter filterFromReadableMap(int filterId, ReadableMap filter) {
+        String type = filter != null && filter.hasKey("type") ? filter.getString("type") : null;
+
+        if ("prefix".equals(type) && filter.hasKey("prefix")) {
+            return FrameFilter.prefix(filterId, filter.getString("prefix"));
+        } else if ("regex".equals(type) && filter.hasKey("pattern")) {
+            return FrameFilter.regex(filterId, filter.getString("pattern"));
+        } else if ("bytes".equals(type) && filter.hasKey("pattern")) {
+            int offset = filter.hasKey("offset") && !filter.isNull("offset") ? filter.getInt("offset") : -1;
+            return FrameFilter.bytes(filterId, filter.getString("pattern"), offset);
+        } else if ("field".equals(type) && filter.hasKey("offset") && filter.hasKey("length")) {
+            boolean littleEndian = filter.hasKey("endian") && "little".equals(filter.getString("endian"));
+            boolean signed = filter.hasKey("signed") && filter.getBoolean("signed");
+            double min = filter.hasKey("min") && !filter.isNull("min") ? filter.getDouble("min") : Double.NEGATIVE_INFINITY;
+            double max = filter.hasKey("max") && !filter.isNull("max") ? filter.getDouble("max") : Double.POSITIVE_INFINITY;
+            return FrameFilter.field(filterId, filter.getInt("offset"), filter.getInt("length"), littleEndian, signed, min, max);
+        }
+
+        throw new IllegalArgumentException("Invalid filter " + type);
     }
 
     /**
-     * Handle read
+     * Write print commands and give the printer time to process them
      *
      * @param id Device address
-     * @param data Message
+     * @param data Commands
+     * @param delayMs Pause after the write
+     * @throws IOException When the device is no longer connected or the write failed
      */
-    void onData(String id, String data) {
-        if (mBuffers.containsKey(id)) {
-            StringBuffer buffer = mBuffers.get(id);
-            buffer.append(data);
-            mBuffers.put(id, buffer);
+    private void writeToPrinter(String id, byte[] data, int delayMs) throws IOException {
+        if (!mBluetoothService.isConnected(id)) {
+            throw new IOException("Device " + id + " was disconnected while printing");
         }
 
-        String delimiter = "";
+        // A print job is not journaled, a failed band has to fail the job
+        if (!mBluetoothService.writeDirect(id, data)) {
+            throw new IOException("Unable to write print data to device " + id);
+        }
 
-        if (mDelimiters.containsKey(id)) {
-            delimiter = mDelimiters.get(id);
+        if (delayMs > 0) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Printing was interrupted");
+            }
         }
+    }
+
+    /**
+     * Directory of the write journals, kept across app restarts
+     */
+    private File getJournalDirectory() {
+        return new File(mReactContext.getFilesDir(), JOURNAL_DIRECTORY);
+    }
 
-        String completeData = readUntil(id, delimiter);
+    /**
+     * Emit counters of all devices that were ever connected
+     */
+    private void emitStats() {
+        WritableArray devices = Arguments.createArray();
 
-        if (completeData != null && completeData.length() > 0) {
-            WritableMap params = Arguments.createMap();
-            params.putString("id", id);
-            params.putString("data", completeData);
-            sendEvent(DEVICE_READ, params);
-            sendEvent(DATA_READ, params);
+        for (Map.Entry<String, DeviceStats> entry : mBluetoothService.getAllStats().entrySet()) {
+            devices.pushMap(statsToWritableMap(entry.getKey(), entry.getValue()));
         }
+
+        WritableMap params = Arguments.createMap();
+        params.putArray("devices", devices);
+        sendEvent(STATS, params);
     }
 
     /**
-     * Handle read until find a certain delimiter
+     * Convert device counters into WritableMap. Counters are sent as
+     * doubles because they may not fit in an int.
      *
      * @param id Device address
-     * @param delimiter
-     * @return buffer data from device
+     * @param stats Device counters
      */
-    private String readUntil(String id, String delimiter) {
-        String data = "";
-
-        if (mBuffers.containsKey(id)) {
-            StringBuffer buffer = mBuffers.get(id);
-            int index = buffer.indexOf(delimiter, 0);
-
-            if (index > -1) {
-                data = buffer.substring(0, index + delimiter.length());
-                buffer.delete(0, index + delimiter.length());
-                mBuffers.put(id, buffer);
-            }
+    private WritableMap statsToWritableMap(String id, DeviceStats stats) {
+        WritableMap params = Arguments.createMap();
+        ReceiveBuffer buffer = mBuffers.get(id);
+
+        params.putString("id", id);
+        params.putBoolean("connected", mBluetoothService.isConnected(id));
+        params.putDouble("bytesIn", stats.getBytesIn());
+        params.putDouble("bytesOut", stats.getBytesOut());
+        params.putDouble("framesIn", stats.getFramesIn());
+        params.putDouble("framesOut", stats.getFramesOut());
+        params.putDouble("framesFiltered", stats.getFramesFiltered());
+        params.putDouble("framesConflated", stats.getFramesConflated());
+        params.putDouble("reads", stats.getReads());
+        params.putDouble("readsPerSecond", stats.getReadsPerSecond());
+        params.putDouble("bytesInPerSecond", stats.getBytesInPerSecond());
+        params.putInt("buffered", buffer != null ? buffer.length() : 0);
+        params.putDouble("bufferHighWater", stats.getBufferHighWater());
+        params.putDouble("writesInFlight", stats.getWritesInFlight());
+        params.putDouble("writesInFlightHighWater", stats.getWritesInFlightHighWater());
+        params.putDouble("reconnects", stats.getReconnects());
+
+        WritableMap errors = Arguments.createMap();
+
+        for (DeviceStats.ErrorType type : DeviceStats.ErrorType.values()) {
+            errors.putDouble(type.name().toLowerCase(Locale.US), stats.getErrors(type));
         }
 
-        return data;
+        params.putMap("errors", errors);
+        return params;
     }
 
     /**
-     * Check if is api level 19 or above
-     * 
-     * @return is above api level 19
+     * Convert latency histogram into WritableMap of milliseconds
+     *
+     * @param histogram Latency histogram
      */
-    private boolean isKitKatOrAbove() {
-        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    private WritableMap histogramToWritableMap(LatencyHistogram histogram) {
+        WritableMap params = Arguments.createMap();
+
+        params.putDouble("count", histogram.getCount());
+        params.putDouble("p50", histogram.getPercentile(0.50) / 1e6);
+        params.putDouble("p90", histogram.getPercentile(0.90) / 1e6);
+        params.putDouble("p99", histogram.getPercentile(0.99) / 1e6);
+        params.putDouble("max", histogram.getMax() / 1e6);
+        return params;
     }
 
     /**
-     * Send event to javascript
-     * 
-     * @param eventName Name of the event
-     * @param params    Additional params
+     * Convert service UUIDs into WritableArray
+     *
+     * @param uuids Service UUIDs
      */
-    private void sendEvent(String eventName, @Nullable WritableMap params) {
-        if (mReactContext.hasActiveCatalystInstance()) {
-            if (D) Log.d(TAG, "Sending event: " + eventName);
-            mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
+    private WritableArray uuidsToWritableArray(List<UUID> uuids) {
+        WritableArray array = Arguments.createArray();
+
+        for (UUID uuid : uuids) {
+            array.pushString(uuid.toString());
         }
+
+        return array;
     }
 
     /**
-     * Convert BluetoothDevice into WritableMap
-     * 
-     * @param device Bluetooth device
+     * Cache the result of an SDP query and resolve pending service discovery promises
+     *
+     * @param id Device address
+     * @param uuids Advertised service UUIDs, or null if the query failed
      */
-    private WritableMap deviceToWritableMap(BluetoothDevice device) {
-        if (D) Log.d(TAG, "device" + device.toString());
+    private void resolveServiceDiscovery(String id, @Nullable Parcelable[] uuids) {
+        List<Promise> promises;
 
-        WritableMap params = Arguments.createMap();
+        synchronized (mServiceDiscoveryPromises) {
+            promises = mServiceDiscoveryPromises.remove(id);
+        }
 
-        if (device != null) {
-            params.putString("name", device.getName());
-            params.putString("address", device.getAddress());
-            params.putString("id", device.getAddress());
+        List<UUID> serviceUuids = null;
 
-            if (device.getBluetoothClass() != null) {
-                params.putInt("class", device.getBluetoothClass().getDeviceClass());
+        if (uuids != null) {
+            serviceUuids = new ArrayList<>();
+
+            for (Parcelable uuid : uuids) {
+                serviceUuids.add(((ParcelUuid) uuid).getUuid());
             }
+
+            mDeviceCache.putServiceUuids(id, serviceUuids);
         }
 
-        return params;
+        if (promises == null) {
+            return;
+        }
+
+        for (Promise promise : promises) {
+            if (serviceUuids != null) {
+                promise.resolve(uuidsToWritableArray(serviceUuids));
+            } else {
+                promise.reject(new Exception("Could not discover services of device " + id));
+            }
+        }
     }
 
     /**
-     * Pair device before kitkat
-     * 
-     * @param device Device
+     * Call a hidden bonding method of a device, they are public from kitkat
+     *
+     * @param id Device address
+     * @param name Method name, e.g. createBond
+     * @throws Exception When the method is missing or refused
      */
-    private void pairDevice(BluetoothDevice device) {
-        try {
-            if (D) Log.d(TAG, "Start Pairing...");
-            Method m = device.getClass().getMethod("createBond", (Class[]) null);
-            m.invoke(device, (Object[]) null);
-            registerDevicePairingReceiver(device, BluetoothDevice.BOND_BONDED);
-        } catch (Exception e) {
-            Log.e(TAG, "Cannot pair device", e);
-            if (mPairDevicePromise != null) {
-                mPairDevicePromise.reject(e);
-                mPairDevicePromise = null;
-            }
-            onError(e);
+    private void invokeBondMethod(String id, String name) throws Exception {
+        BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(id);
+        Method m = device.getClass().getMethod(name, (Class[]) null);
+
+        if (!Boolean.TRUE.equals(m.invoke(device, (Object[]) null))) {
+            throw new Exception("Bluetooth refused " + name + " for device " + id);
         }
     }
 
     /**
-     * Unpair device
-     * 
-     * @param device Device
+     * Settle a promise with the outcome of a single pairing request
+     *
+     * @param promise Promise of pairDevice or unpairDevice
+     * @return Callback
      */
-    private void unpairDevice(BluetoothDevice device) {
-        try {
-            if (D) Log.d(TAG, "Start Unpairing...");
-            Method m = device.getClass().getMethod("removeBond", (Class[]) null);
-            m.invoke(device, (Object[]) null);
-            registerDevicePairingReceiver(device, BluetoothDevice.BOND_NONE);
-        } catch (Exception e) {
-            Log.e(TAG, "Cannot unpair device", e);
-            if (mPairDevicePromise != null) {
-                mPairDevicePromise.reject(e);
-                mPairDevicePromise = null;
+    private PairingQueue.Callback promiseCallback(final Promise promise) {
+        return new PairingQueue.Callback() {
+            @Override
+            public void onDone(String id, String status, String error) {
+                if (PairingQueue.PAIRED.equals(status) || PairingQueue.UNPAIRED.equals(status)) {
+                    if (D) Log.d(TAG, "Device " + id + " " + status);
+                    promise.resolve(deviceToWritableMap(mBluetoothAdapter.getRemoteDevice(id)));
+                } else {
+                    Exception e = new Exception(error != null ? error : "Could not pair device " + id);
+                    Log.e(TAG, "Cannot change bond of device " + id, e);
+                    promise.reject(e);
+                    onError(DeviceStats.ErrorType.OTHER, id, "pair", e);
+                }
             }
-            onError(e);
-        }
+        };
+    }
+
+    private static WritableMap pairingSummary(WritableArray results, int paired, int failed) {
+        WritableMap summary = Arguments.createMap();
+        summary.putInt("paired", paired);
+        summary.putInt("failed", failed);
+        summary.putArray("results", results);
+        return summary;
     }
 
     /**
@@ -745,61 +2817,30 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
     }
 
     /**
-     * Register receiver for device pairing
-     * 
-     * @param rawDevice Bluetooth device
-     * @param requiredState State that we require
+     * Answer a PIN pairing request of a device in the pairing queue
+     *
+     * @param rawDevice Device asking for a PIN
+     * @param variant Pairing variant of the request
      */
-    private void registerDevicePairingReceiver(final BluetoothDevice rawDevice, final int requiredState) {
-        final WritableMap device = deviceToWritableMap(rawDevice);
-        IntentFilter intentFilter = new IntentFilter();
-
-        intentFilter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
+    private void answerPairingRequest(BluetoothDevice rawDevice, int variant) {
+        String pin = mPairingQueue.getPin(rawDevice.getAddress());
 
-        final BroadcastReceiver devicePairingReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                String action = intent.getAction();
-
-                if (BluetoothDevice.ACTION_BOND_STATE_CHANGED.equals(action)) {
-                    final int state = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.ERROR);
-                    final int prevState = intent.getIntExtra(BluetoothDevice.EXTRA_PREVIOUS_BOND_STATE,
-                            BluetoothDevice.ERROR);
-
-                    if (state == BluetoothDevice.BOND_BONDED && prevState == BluetoothDevice.BOND_BONDING) {
-                        if (D) Log.d(TAG, "Device paired");
-                        if (mPairDevicePromise != null) {
-                            mPairDevicePromise.resolve(device);
-                            mPairDevicePromise = null;
-                        }
-                        try {
-                            mReactContext.unregisterReceiver(this);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Cannot unregister receiver", e);
-                            onError(e);
-                        }
-                    } else if (state == BluetoothDevice.BOND_NONE && prevState == BluetoothDevice.BOND_BONDED) {
-                        if (D) Log.d(TAG, "Device unpaired");
-                        if (mPairDevicePromise != null) {
-                            mPairDevicePromise.resolve(device);
-                            mPairDevicePromise = null;
-                        }
-                        try {
-                            mReactContext.unregisterReceiver(this);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Cannot unregister receiver", e);
-                            onError(e);
-                        }
-                    }
-                }
-            }
-        };
+        if (pin == null || variant != BluetoothDevice.PAIRING_VARIANT_PIN) {
+            return;
+        }
 
-        mReactContext.registerReceiver(devicePairingReceiver, intentFilter);
+        try {
+            Method m = rawDevice.getClass().getMethod("setPin", byte[].class);
+            m.invoke(rawDevice, (Object) pin.getBytes("UTF-8"));
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot set pairing PIN", e);
+            onError(DeviceStats.ErrorType.OTHER, rawDevice.getAddress(), "pair", e);
+        }
     }
 
     /**
-     * Register receiver for bluetooth device discovery
+     * Register receiver for bluetooth device discovery. It lives for a
+     * single scan of the discovery scheduler.
      */
     private void registerBluetoothDeviceDiscoveryReceiver() {
         IntentFilter intentFilter = new IntentFilter();
@@ -809,8 +2850,6 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
         intentFilter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
 
         final BroadcastReceiver deviceDiscoveryReceiver = new BroadcastReceiver() {
-            private WritableArray unpairedDevices = Arguments.createArray();
-
             @Override
             public void onReceive(Context context, Intent intent) {
                 String action = intent.getAction();
@@ -824,29 +2863,74 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
 
                     if (D) Log.d(TAG, "Discovery extra device (device id: " + rawDevice.getAddress() + ")");
 
-                    WritableMap device = deviceToWritableMap(rawDevice);
-                    unpairedDevices.pushMap(device);
+                    synchronized (mDeviceDiscoveryPromises) {
+                        mDiscoveredDevices.add(mDeviceCache.refresh(rawDevice));
+                    }
                 } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
                     if (D) Log.d(TAG, "Discovery finished");
-
-                    if (mDeviceDiscoveryPromise != null) {
-                        mDeviceDiscoveryPromise.resolve(unpairedDevices);
-                        mDeviceDiscoveryPromise = null;
-                    }
-
-                    try {
-                        mReactContext.unregisterReceiver(this);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Unable to unregister receiver", e);
-                        onError(e);
-                    }
+                    mDiscoveryScheduler.onDiscoveryFinished();
                 }
             }
         };
 
+        synchronized (mDeviceDiscoveryPromises) {
+            unregisterDeviceDiscoveryReceiver();
+            mDiscoveredDevices.clear();
+            mDeviceDiscoveryReceiver = deviceDiscoveryReceiver;
+        }
+
         mReactContext.registerReceiver(deviceDiscoveryReceiver, intentFilter);
     }
 
+    /**
+     * Resolve every listUnpaired promise waiting for the scan that just ended
+     *
+     * @param started Whether discovery could be started
+     */
+    private void resolveDeviceDiscovery(boolean started) {
+        List<Promise> promises;
+        List<DeviceDescriptorCache.Descriptor> devices;
+
+        synchronized (mDeviceDiscoveryPromises) {
+            unregisterDeviceDiscoveryReceiver();
+            promises = new ArrayList<>(mDeviceDiscoveryPromises);
+            devices = new ArrayList<>(mDiscoveredDevices);
+            mDeviceDiscoveryPromises.clear();
+            mDiscoveredDevices.clear();
+        }
+
+        for (Promise promise : promises) {
+            if (!started) {
+                promise.reject(new Exception("Could not start discovery"));
+                continue;
+            }
+
+            // A WritableArray can only be sent once
+            WritableArray unpairedDevices = Arguments.createArray();
+
+            for (DeviceDescriptorCache.Descriptor device : devices) {
+                unpairedDevices.pushMap(descriptorToWritableMap(device));
+            }
+
+            promise.resolve(unpairedDevices);
+        }
+    }
+
+    private void unregisterDeviceDiscoveryReceiver() {
+        if (mDeviceDiscoveryReceiver == null) {
+            return;
+        }
+
+        try {
+            mReactContext.unregisterReceiver(mDeviceDiscoveryReceiver);
+        } catch (Exception e) {
+            Log.e(TAG, "Unable to unregister receiver", e);
+            onError(e);
+        }
+
+        mDeviceDiscoveryReceiver = null;
+    }
+
     /**
      * Register receiver for first available device discovery
      */
@@ -872,12 +2956,11 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
 
                     if (D) Log.d(TAG, "Discovery first available device (device id: " + id + ")");
 
-                    mBluetoothService.connect(rawDevice);
+                    mBluetoothService.connect(rawDevice, null);
 
                     if (mConnectedPromises.containsKey(FIRST_DEVICE)) {
-                        Promise promise = mConnectedPromises.get(FIRST_DEVICE);
-                        mConnectedPromises.remove(FIRST_DEVICE);
-                        mConnectedPromises.put(id, promise);
+                        // Already resolved with the device, so it is not kept for the connection
+                        Promise promise = mConnectedPromises.remove(FIRST_DEVICE);
 
                         if (promise != null) {
                             WritableMap device = deviceToWritableMap(rawDevice);
@@ -916,10 +2999,13 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
                     switch (state) {
                     case BluetoothAdapter.STATE_OFF:
                         if (D) Log.d(TAG, "Bluetooth was disabled");
+                        // Bonds may change while the adapter is off, reload on STATE_ON
+                        mDeviceCache.resetBonded();
                         sendEvent(BT_DISABLED, null);
                         break;
                     case BluetoothAdapter.STATE_ON:
                         if (D) Log.d(TAG, "Bluetooth was enabled");
+                        mDeviceCache.load(mBluetoothAdapter);
                         sendEvent(BT_ENABLED, null);
                         break;
                     default:
@@ -931,4 +3017,51 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule
 
         mReactContext.registerReceiver(bluetoothStateReceiver, intentFilter);
     }
+
+    /**
+     * Register receiver that keeps the device descriptor and service UUID caches current
+     */
+    private void registerDeviceDescriptorReceiver() {
+        IntentFilter intentFilter = new IntentFilter();
+
+        intentFilter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
+        intentFilter.addAction(BluetoothDevice.ACTION_NAME_CHANGED);
+        intentFilter.addAction(BluetoothDevice.ACTION_UUID);
+        intentFilter.addAction(BluetoothDevice.ACTION_PAIRING_REQUEST);
+
+        final BroadcastReceiver deviceDescriptorReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final String action = intent.getAction();
+                BluetoothDevice rawDevice = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+
+                if (rawDevice == null) {
+                    return;
+                }
+
+                if (BluetoothDevice.ACTION_BOND_STATE_CHANGED.equals(action)) {
+                    final int state = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.ERROR);
+                    final int prevState = intent.getIntExtra(BluetoothDevice.EXTRA_PREVIOUS_BOND_STATE,
+                            BluetoothDevice.ERROR);
+                    mDeviceCache.onBondStateChanged(rawDevice, state);
+
+                    if (state == BluetoothDevice.BOND_BONDED) {
+                        mPairingQueue.onBonded(rawDevice.getAddress());
+                    } else if (state == BluetoothDevice.BOND_NONE) {
+                        mPairingQueue.onUnbonded(rawDevice.getAddress(), prevState == BluetoothDevice.BOND_BONDING);
+                    }
+                } else if (BluetoothDevice.ACTION_PAIRING_REQUEST.equals(action)) {
+                    answerPairingRequest(rawDevice,
+                            intent.getIntExtra(BluetoothDevice.EXTRA_PAIRING_VARIANT, BluetoothDevice.ERROR));
+                } else if (BluetoothDevice.ACTION_NAME_CHANGED.equals(action)) {
+                    mDeviceCache.onNameChanged(rawDevice, intent.getStringExtra(BluetoothDevice.EXTRA_NAME));
+                } else if (BluetoothDevice.ACTION_UUID.equals(action)) {
+                    resolveServiceDiscovery(rawDevice.getAddress(),
+                            intent.getParcelableArrayExtra(BluetoothDevice.EXTRA_UUID));
+                }
+            }
+        };
+
+        mReactContext.registerReceiver(deviceDescriptorReceiver, intentFilter);
+    }
 }
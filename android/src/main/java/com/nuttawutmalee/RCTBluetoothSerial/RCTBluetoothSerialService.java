@@ -4,12 +4,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothServerSocket;
 import android.bluetooth.BluetoothSocket;
 import android.os.Build;
 import android.util.Log;
@@ -22,6 +27,9 @@ import static com.nuttawutmalee.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG
  * connections, a thread for connecting with a device, and a thread for
  * performing data transmissions when connected.
  *
+ * Connected threads work on a {@link Transport}, so the same code also
+ * manages TCP connections and in-memory pipes.
+ *
  * This code was based on the Android SDK BluetoothChat Sample
  * $ANDROID_SDK/samples/android-17/BluetoothChat
  */
@@ -32,39 +40,49 @@ class RCTBluetoothSerialService {
     // UUIDs
     private static final UUID UUID_SPP = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
+    // RFCOMM based service classes a serial connection can be made to, in order of preference:
+    // Serial Port, Dial-up Networking, OBEX Object Push, OBEX File Transfer
+    private static final List<UUID> SERIAL_UUIDS = Arrays.asList(
+            UUID_SPP,
+            UUID.fromString("00001103-0000-1000-8000-00805F9B34FB"),
+            UUID.fromString("00001105-0000-1000-8000-00805F9B34FB"),
+            UUID.fromString("00001106-0000-1000-8000-00805F9B34FB"));
+
+    // Write journal replay batches
+    private static final int JOURNAL_BATCH_ENTRIES = 32;
+    private static final int JOURNAL_BATCH_BYTES = 4096;
+
     // Member fields
     private BluetoothAdapter mAdapter;
     private RCTBluetoothSerialModule mModule;
+    private DeviceDescriptorCache mDeviceCache;
 
-    private String mFirstDeviceAddress = null;
-    private HashMap<String, ConnectThread> mConnectThreads;
-    private HashMap<String, ConnectedThread> mConnectedThreads;
-    private HashMap<String, String> mStates;
+    private volatile String mFirstDeviceAddress = null;
+    private final ConcurrentHashMap<String, ConnectThread> mConnectThreads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConnectedThread> mConnectedThreads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConnectionState> mStates = new ConcurrentHashMap<>();
 
-    // Constants that indicate the current connection state
-    private static final String STATE_NONE = "none"; // we're doing nothing
-    private static final String STATE_CONNECTING = "connecting"; // now initiating an outgoing connection
-    private static final String STATE_CONNECTED = "connected"; // now connected to a remote device
+    private AcceptThread mAcceptThread = null;
+    private HashSet<String> mServerClients;
+
+    private final ConcurrentHashMap<String, DeviceStats> mStats = new ConcurrentHashMap<>();
+    private final TrafficRecorder mRecorder = new TrafficRecorder();
+    private final ConcurrentHashMap<String, WriteJournal> mJournals = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Charset> mCharsets = new ConcurrentHashMap<>();
 
     /**
      * Constructor. Prepares a new RCTBluetoothSerialModule session.
      * 
      * @param module Module which handles service events
+     * @param deviceCache Device descriptor cache shared with the module
      */
-    RCTBluetoothSerialService(RCTBluetoothSerialModule module) {
+    RCTBluetoothSerialService(RCTBluetoothSerialModule module, DeviceDescriptorCache deviceCache) {
         mAdapter = BluetoothAdapter.getDefaultAdapter();
         mModule = module;
+        mDeviceCache = deviceCache;
 
-        if (mConnectThreads == null) {
-            mConnectThreads = new HashMap<>();
-        }
-
-        if (mConnectedThreads == null) {
-            mConnectedThreads = new HashMap<>();
-        }
-
-        if (mStates == null) {
-            mStates = new HashMap<>();
+        if (mServerClients == null) {
+            mServerClients = new HashSet<>();
         }
     }
 
@@ -76,25 +94,152 @@ class RCTBluetoothSerialService {
      * Start the ConnectThread to initiate a connection to a remote device.
      * 
      * @param device The BluetoothDevice to connect
+     * @param uuid The service UUID to connect to, or null to pick one from the UUID cache
      */
-    synchronized void connect(BluetoothDevice device) {
+    void connect(BluetoothDevice device, UUID uuid) {
         if (D) Log.d(TAG, "connect to: " + device);
 
         String id = device.getAddress();
+        ConnectionState state = getConnectionState(id);
 
-        cancelConnectThread(id); // Cancel any thread attempting to make a connection
-        cancelConnectedThread(id); // Cancel any thread currently running a connection
+        synchronized (state) {
+            cancelConnectThread(id); // Cancel any thread attempting to make a connection
+            cancelConnectedThread(id); // Cancel any thread currently running a connection
 
-        // Start the thread to connect with the given device
-        ConnectThread thread = new ConnectThread(device);
-        thread.start();
+            if (uuid == null) {
+                uuid = resolveServiceUuid(id);
+            }
+
+            mDeviceCache.get(device); // Make sure event payloads can be served from the cache
+
+            // Start the thread to connect with the given device
+            ConnectThread thread = new BluetoothConnectThread(device, uuid);
+
+            if (mConnectedThreads.isEmpty()) {
+                mFirstDeviceAddress = id;
+            }
+
+            mConnectThreads.put(id, thread);
+            state.moveTo(ConnectionState.State.CONNECTING);
+            thread.start();
+        }
+    }
+
+    /**
+     * Start the ConnectThread to initiate a TCP connection, e.g. to a serial
+     * gateway. The connection is registered under "host:port".
+     *
+     * @param host Host name or address
+     * @param port Port
+     * @param timeoutMs Connect timeout in milliseconds, 0 for none
+     * @return Connection id
+     */
+    String connectTcp(String host, int port, int timeoutMs) {
+        String id = TcpTransport.idOf(host, port);
+
+        if (D) Log.d(TAG, "connect to: " + id);
+
+        ConnectionState state = getConnectionState(id);
+
+        synchronized (state) {
+            cancelConnectThread(id); // Cancel any thread attempting to make a connection
+            cancelConnectedThread(id); // Cancel any thread currently running a connection
+
+            mDeviceCache.put(new DeviceDescriptorCache.Descriptor(id, id, null, false));
+
+            // Start the thread to connect with the given endpoint
+            ConnectThread thread = new TcpConnectThread(id, host, port, timeoutMs);
+
+            if (mConnectedThreads.isEmpty()) {
+                mFirstDeviceAddress = id;
+            }
+
+            mConnectThreads.put(id, thread);
+            state.moveTo(ConnectionState.State.CONNECTING);
+            thread.start();
+        }
+
+        return id;
+    }
+
+    /**
+     * Register an already connected transport, e.g. an in-memory pipe.
+     *
+     * @param transport Connected transport
+     * @param name Name reported in event payloads
+     */
+    void connectTransport(Transport transport, String name) {
+        String id = transport.getId();
+
+        mDeviceCache.put(new DeviceDescriptorCache.Descriptor(id, name, null, false));
 
         if (mConnectedThreads.isEmpty()) {
             mFirstDeviceAddress = id;
         }
 
-        mConnectThreads.put(id, thread);
-        mStates.put(id, STATE_CONNECTING);
+        getConnectionState(id).moveTo(ConnectionState.State.CONNECTING);
+        connectionSuccess(transport);
+    }
+
+    /**
+     * Get the state machine of a device, creating it on first use
+     *
+     * @param id Device address
+     * @return Connection state of the device
+     */
+    ConnectionState getConnectionState(String id) {
+        ConnectionState state = mStates.get(id);
+
+        if (state == null) {
+            ConnectionState created = new ConnectionState(id, mModule);
+            state = mStates.putIfAbsent(id, created);
+
+            if (state == null) {
+                state = created;
+            }
+        }
+
+        return state;
+    }
+
+    /**
+     * Get the counters of a device, creating them on first use. They are
+     * kept across reconnects.
+     *
+     * @param id Device address
+     * @return Device counters
+     */
+    DeviceStats getStats(String id) {
+        DeviceStats stats = mStats.get(id);
+
+        if (stats == null) {
+            DeviceStats created = new DeviceStats();
+            stats = mStats.putIfAbsent(id, created);
+
+            if (stats == null) {
+                stats = created;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Get the recorder that captures the traffic of all connections
+     *
+     * @return Traffic recorder
+     */
+    TrafficRecorder getRecorder() {
+        return mRecorder;
+    }
+
+    /**
+     * Get the counters of all devices that were ever connected
+     *
+     * @return Device counters by device address
+     */
+    Map<String, DeviceStats> getAllStats() {
+        return mStats;
     }
 
     /**
@@ -104,144 +249,381 @@ class RCTBluetoothSerialService {
      * @return Is connected to device
      */
     boolean isConnected(String id) {
-        return mStates.containsKey(id) && getState(id).equals(STATE_CONNECTED);
+        return getState(id) == ConnectionState.State.CONNECTED;
     }
 
     /**
-     * Write to the ConnectedThread in an unsynchronized manner
+     * Get the connection state of a device without waiting for a
+     * connect or stop in progress
+     *
+     * @param id Device address
+     * @return Connection state
+     */
+    ConnectionState.State getState(String id) {
+        ConnectionState state = mStates.get(id);
+        return state != null ? state.get() : ConnectionState.State.NONE;
+    }
+
+    /**
+     * Write to the ConnectedThread in an unsynchronized manner. If the
+     * device has a write journal, writes made while it is disconnected or
+     * while the journal is being replayed are appended to the journal.
      *
      * @param id Device address
      * @param out The bytes to write
+     * @return False if the write journal is full
+     * @throws IOException When the write journal cannot be written
      * @see ConnectedThread#write(byte[])
      */
-    void write(String id, byte[] out) {
-        if (D) Log.d(TAG, "Write in service of device id " + id + ", state is " + STATE_CONNECTED);
-        ConnectedThread r = null; // Create temporary object
+    boolean write(String id, byte[] out) throws IOException {
+        if (D) Log.d(TAG, "Write in service of device id " + id);
 
-        // Synchronize a copy of the ConnectedThread
-        synchronized (this) {
-            if (!isConnected(id)) {
-                return;
-            }
+        WriteJournal journal = mJournals.get(id);
 
-            if (mConnectedThreads.containsKey(id)) {
-                r = mConnectedThreads.get(id);
+        if (journal != null) {
+            synchronized (journal) {
+                if (!isConnected(id) || journal.isPending()) {
+                    return journal.append(out, System.currentTimeMillis());
+                }
             }
         }
 
+        if (!isConnected(id)) {
+            return true;
+        }
+
+        ConnectedThread r = mConnectedThreads.get(id);
+
         if (r != null) {
             r.write(out); // Perform the write unsynchronized
         } else {
             Log.e(TAG, "Unable to write, connected thread is null");
-            mModule.onError(new Exception(("Unable to write, connected thread is null")));
+            mModule.onError(DeviceStats.ErrorType.WRITE, id, "write",
+                    new Exception("Unable to write, connected thread is null"));
         }
+
+        return true;
     }
 
     /**
-     * Stop threads of a specific device
+     * Write straight to the ConnectedThread, bypassing the write journal,
+     * for writes that have to fail rather than wait for a reconnection
      *
      * @param id Device address
+     * @param out The bytes to write
+     * @return False if the device is not connected or the write failed
+     * @see ConnectedThread#write(byte[])
      */
-    synchronized void stop(String id) {
-        if (D) Log.d(TAG, "Stop device id " + id);
+    boolean writeDirect(String id, byte[] out) {
+        ConnectedThread r = isConnected(id) ? mConnectedThreads.get(id) : null;
+        return r != null && r.write(out);
+    }
+
+    /**
+     * Keep writes made while a device is disconnected in a journal. A
+     * journal with entries is replayed right away if the device is
+     * already connected, e.g. when it was opened after the connection.
+     *
+     * @param journal Write journal of the device
+     */
+    void setJournal(WriteJournal journal) {
+        mJournals.put(journal.getId(), journal);
+
+        if (journal.size() > 0 && isConnected(journal.getId())) {
+            replayJournal(journal.getId());
+        }
+    }
+
+    /**
+     * @param id Device address
+     * @return Write journal of the device or null
+     */
+    WriteJournal getJournal(String id) {
+        return mJournals.get(id);
+    }
 
-        cancelConnectThread(id);
-        cancelConnectedThread(id);
+    /**
+     * Stop journaling writes of a device
+     *
+     * @param id Device address
+     * @return Removed journal or null
+     */
+    WriteJournal removeJournal(String id) {
+        return mJournals.remove(id);
+    }
+
+    /**
+     * Decode data of a device with a charset, from the next read on if
+     * the device is connected
+     *
+     * @param id Device address
+     * @param charset Charset, null for the default ISO-8859-1
+     */
+    void setCharset(String id, Charset charset) {
+        if (charset == null || ChunkDecoder.ISO_8859_1.equals(charset)) {
+            mCharsets.remove(id);
+            charset = ChunkDecoder.ISO_8859_1;
+        } else {
+            mCharsets.put(id, charset);
+        }
 
-        mStates.put(id, STATE_NONE);
+        ConnectedThread thread = mConnectedThreads.get(id);
 
-        if (id == mFirstDeviceAddress) {
-            mFirstDeviceAddress = null;
+        if (thread != null) {
+            thread.setCharset(charset);
         }
     }
 
     /**
-     * Stop all threads of all devices
+     * @param id Device address
+     * @return Charset data of the device is decoded with
      */
-    synchronized void stopAll() {
-        if (D) Log.d(TAG, "Stop all devices");
+    Charset getCharset(String id) {
+        Charset charset = mCharsets.get(id);
+        return charset != null ? charset : ChunkDecoder.ISO_8859_1;
+    }
 
-        for (Map.Entry<String, ConnectThread> item : mConnectThreads.entrySet()) {
-            ConnectThread thread = mConnectThreads.get(item.getKey());
+    /**
+     * Replay the write journal of a freshly connected device in batches.
+     * Writes made in the meantime are appended to the journal, so they
+     * keep their order. A replay that still holds the journal, e.g. from
+     * a connection that was replaced, carries on over the new connection
+     * and the new replay ends right away.
+     *
+     * @param id Device address
+     */
+    private void replayJournal(final String id) {
+        final WriteJournal journal = mJournals.get(id);
 
-            if (thread != null) {
-                thread.cancel();
-            }
+        if (journal == null) {
+            return;
         }
 
-        mConnectThreads.clear();
+        Thread thread = new Thread("JournalReplay-" + id) {
+            @Override
+            public void run() {
+                int entries = 0;
+                WriteJournal.Batch batch;
+
+                while ((batch = journal.nextBatch(this, JOURNAL_BATCH_ENTRIES, JOURNAL_BATCH_BYTES, System.currentTimeMillis())) != null) {
+                    ConnectedThread connectedThread = isConnected(id) ? mConnectedThreads.get(id) : null;
+
+                    if (connectedThread == null || !connectedThread.write(batch.data)) {
+                        // The rest is replayed on the next connection
+                        journal.abort(this);
+
+                        // Unless that connection already came up while this one failed
+                        ConnectedThread current = isConnected(id) ? mConnectedThreads.get(id) : null;
+
+                        if (current != null && current != connectedThread) {
+                            replayJournal(id);
+                        }
 
+                        return;
+                    }
+
+                    try {
+                        journal.commit(batch);
+                    } catch (IOException e) {
+                        // The batch is gone from memory, only the file is behind
+                        Log.e(TAG, "Unable to update write journal", e);
+                        mModule.onError(DeviceStats.ErrorType.WRITE, id, "journal", e);
+                    }
 
-        for (Map.Entry<String, ConnectedThread> item : mConnectedThreads.entrySet()) {
-            ConnectedThread thread = mConnectedThreads.get(item.getKey());
+                    entries += batch.count;
+                }
 
-            if (thread != null) {
-                thread.cancel();
+                if (D) Log.d(TAG, "Replayed " + entries + " journal entries of device id " + id);
+            }
+        };
+
+        thread.start();
+    }
+
+    /**
+     * Stop threads of a specific device
+     *
+     * @param id Device address
+     */
+    void stop(String id) {
+        if (D) Log.d(TAG, "Stop device id " + id);
+
+        ConnectionState state = getConnectionState(id);
+
+        synchronized (state) {
+            state.moveTo(ConnectionState.State.DISCONNECTING);
+
+            cancelConnectThread(id);
+            cancelConnectedThread(id);
+
+            state.moveTo(ConnectionState.State.NONE);
+
+            synchronized (mServerClients) {
+                mServerClients.remove(id);
+            }
+
+            if (id.equals(mFirstDeviceAddress)) {
+                mFirstDeviceAddress = null;
             }
         }
+    }
+
+    /**
+     * Start listening for incoming RFCOMM connections. Every accepted client
+     * is handed to a ConnectedThread and registered under its address, so
+     * it can be used like any outgoing connection.
+     *
+     * @param name Service name for the SDP record
+     * @param uuid Service UUID for the SDP record, or null for SPP
+     * @param secure Whether to use an authenticated and encrypted socket
+     * @param maxClients Maximum number of concurrently connected clients
+     * @throws IOException If the server socket cannot be created
+     */
+    synchronized void startServer(String name, UUID uuid, boolean secure, int maxClients) throws IOException {
+        if (D) Log.d(TAG, "Start server " + name + ", secure: " + secure + ", max clients: " + maxClients);
 
-        mConnectedThreads.clear();
+        stopServer();
 
-        for (Map.Entry<String, String> item : mStates.entrySet()) {
-            mStates.put(item.getKey(), STATE_NONE);
+        if (uuid == null) {
+            uuid = UUID_SPP;
+        }
+
+        BluetoothServerSocket serverSocket = secure
+                ? mAdapter.listenUsingRfcommWithServiceRecord(name, uuid)
+                : mAdapter.listenUsingInsecureRfcommWithServiceRecord(name, uuid);
+
+        mAcceptThread = new AcceptThread(serverSocket, maxClients);
+        mAcceptThread.start();
+    }
+
+    /**
+     * Stop listening for incoming connections. Clients that are already
+     * connected stay connected.
+     */
+    synchronized void stopServer() {
+        if (mAcceptThread != null) {
+            if (D) Log.d(TAG, "Stop server");
+            mAcceptThread.cancel();
+            mAcceptThread = null;
+        }
+    }
+
+    /**
+     * Check whether the server is accepting connections
+     *
+     * @return Is server running
+     */
+    synchronized boolean isServerRunning() {
+        return mAcceptThread != null;
+    }
+
+    /**
+     * Stop all threads of all devices
+     */
+    void stopAll() {
+        if (D) Log.d(TAG, "Stop all devices");
+
+        stopServer();
+
+        for (String id : mStates.keySet()) {
+            stop(id);
         }
 
         mFirstDeviceAddress = null;
     }
 
     /**
-     * Return the current connection state.
+     * Pick the service UUID for a device: the one that connected last time,
+     * otherwise the first known serial service the device advertises, and
+     * SPP when it advertises none of them or nothing is known about it.
+     * Other advertised services, e.g. PnP information or audio profiles,
+     * cannot be talked to over a serial connection.
      *
      * @param id Device address
+     * @return Service UUID
      */
-    private synchronized String getState(String id) {
-        return mStates.get(id);
+    private UUID resolveServiceUuid(String id) {
+        UUID preferred = mDeviceCache.getPreferredUuid(id);
+
+        if (preferred != null) {
+            return preferred;
+        }
+
+        List<UUID> uuids = mDeviceCache.getServiceUuids(id);
+
+        if (uuids != null) {
+            for (UUID uuid : SERIAL_UUIDS) {
+                if (uuids.contains(uuid)) {
+                    return uuid;
+                }
+            }
+        }
+
+        return UUID_SPP;
     }
 
     /**
-     * Start the ConnectedThread to begin managing a Bluetooth connection
+     * Start the ConnectedThread to begin managing a connection
      * 
-     * @param socket The BluetoothSocket on which the connection was made
-     * @param device The BluetoothDevice that has been connected
+     * @param transport The transport on which the connection was made
      */
-    private synchronized void connectionSuccess(BluetoothSocket socket, BluetoothDevice device) {
-        String id = device.getAddress();
+    private void connectionSuccess(Transport transport) {
+        String id = transport.getId();
 
         if (D) Log.d(TAG, "Connected to device id " + id);
 
-        cancelConnectThread(id); // Cancel any thread attempting to make a connection
-        cancelConnectedThread(id); // Cancel any thread currently running a connection
+        ConnectionState state = getConnectionState(id);
 
-        // Start the thread to manage the connection and perform transmissions
-        ConnectedThread thread = new ConnectedThread(socket, device);
-        thread.start();
+        synchronized (state) {
+            cancelConnectThread(id); // Cancel any thread attempting to make a connection
+            cancelConnectedThread(id); // Cancel any thread currently running a connection
 
-        mConnectedThreads.put(id, thread);
-        mModule.onConnectionSuccess("Connected to " + device.getName(), device);
+            // Start the thread to manage the connection and perform transmissions
+            ConnectedThread thread = new ConnectedThread(transport);
 
-        if (mStates.containsKey(id)) {
-            String oldState = mStates.get(id);
-            if (D) Log.d(TAG, "Device id " + id + " setState() " + oldState + " -> " + STATE_CONNECTED);
-            mStates.put(id, STATE_CONNECTED);
+            mConnectedThreads.put(id, thread);
+            getStats(id).onConnected();
+            state.moveTo(ConnectionState.State.CONNECTED);
+            thread.start();
         }
+
+        DeviceDescriptorCache.Descriptor descriptor = mDeviceCache.get(id);
+        String name = descriptor != null ? descriptor.name : id;
+        mModule.onConnectionSuccess("Connected to " + name, id);
+
+        replayJournal(id);
     }
 
     /**
      * Indicate that the connection attempt failed and notify the UI Activity.
-     * @param device The BluetoothDevice that has been failed to connect
+     * @param thread The connect thread that failed
      */
-    private void connectionFailed(BluetoothDevice device) {
-        mModule.onConnectionFailed("Unable to connect to device", device); // Send a failure message with device
-        RCTBluetoothSerialService.this.stop(device.getAddress()); // Start the service over to restart listening mode
+    private void connectionFailed(ConnectThread thread) {
+        String id = thread.mmId;
+
+        synchronized (getConnectionState(id)) {
+            // A cancelled attempt must not report on or stop the connection that replaced it
+            if (mConnectThreads.get(id) == thread) {
+                mModule.onConnectionFailed("Unable to connect to device", id); // Send a failure message with device
+                stop(id);
+            }
+        }
     }
 
     /**
      * Indicate that the connection was lost and notify the UI Activity.
-     * @param device The BluetoothDevice that has been lost
+     * @param thread The connected thread whose connection was lost
      */
-    private void connectionLost(BluetoothDevice device) {
-        mModule.onConnectionLost("Device connection was lost", device); // Send a failure message
-        RCTBluetoothSerialService.this.stop(device.getAddress()); // Start the service over to restart listening mode
+    private void connectionLost(ConnectedThread thread) {
+        String id = thread.mmId;
+
+        synchronized (getConnectionState(id)) {
+            // A replaced connection must not report on or stop the one that replaced it
+            if (mConnectedThreads.get(id) == thread) {
+                mModule.onConnectionLost("Device connection was lost", id); // Send a failure message
+                stop(id);
+            }
+        }
     }
 
     /**
@@ -250,13 +632,10 @@ class RCTBluetoothSerialService {
      * @param id Device address
      */
     private void cancelConnectThread(String id) {
-        if (mConnectThreads.containsKey(id)) {
-            ConnectThread thread = mConnectThreads.get(id);
+        ConnectThread thread = mConnectThreads.remove(id);
 
-            if (thread != null) {
-                thread.cancel();
-                mConnectThreads.remove(id);
-            }
+        if (thread != null) {
+            thread.cancel();
         }
     }
 
@@ -266,12 +645,100 @@ class RCTBluetoothSerialService {
      * @param id Device address
      */
     private void cancelConnectedThread(String id) {
-        if (mConnectedThreads.containsKey(id)) {
-            ConnectedThread thread = mConnectedThreads.get(id);
+        ConnectedThread thread = mConnectedThreads.remove(id);
+
+        if (thread != null) {
+            thread.cancel();
+        }
+    }
 
-            if (thread != null) {
-                thread.cancel();
-                mConnectedThreads.remove(id);
+    /**
+     * Register a client accepted by the server socket, unless the maximum
+     * number of clients has been reached.
+     *
+     * @param socket The accepted BluetoothSocket
+     * @param maxClients Maximum number of concurrently connected clients
+     * @return Whether the client was accepted
+     */
+    private boolean acceptClient(BluetoothSocket socket, int maxClients) {
+        BluetoothDevice device = socket.getRemoteDevice();
+        String id = device.getAddress();
+
+        synchronized (mServerClients) {
+            if (!mServerClients.contains(id) && mServerClients.size() >= maxClients) {
+                return false;
+            }
+
+            mServerClients.add(id);
+        }
+
+        if (mConnectedThreads.isEmpty()) {
+            mFirstDeviceAddress = id;
+        }
+
+        mDeviceCache.get(device); // Make sure event payloads can be served from the cache
+
+        getConnectionState(id).moveTo(ConnectionState.State.CONNECTING);
+        connectionSuccess(new BluetoothTransport(socket));
+        return true;
+    }
+
+    /**
+     * This thread runs while listening for incoming connections. It behaves
+     * like a server-side client: it accepts connections until cancelled and
+     * hands each of them to a ConnectedThread.
+     */
+    private class AcceptThread extends Thread {
+        private final BluetoothServerSocket mmServerSocket;
+        private final int mmMaxClients;
+
+        AcceptThread(BluetoothServerSocket serverSocket, int maxClients) {
+            if (D) Log.d(TAG, "Create AcceptThread");
+            mmServerSocket = serverSocket;
+            mmMaxClients = maxClients;
+        }
+
+        public void run() {
+            if (D) Log.d(TAG, "Begin mAcceptThread");
+            setName("AcceptThread");
+
+            // Keep listening until the server socket is closed
+            while (true) {
+                BluetoothSocket socket;
+
+                try {
+                    // This is a blocking call and will only return on a successful connection
+                    // or an exception
+                    socket = mmServerSocket.accept();
+                } catch (Exception e) {
+                    if (D) Log.d(TAG, "Server socket closed", e);
+                    break;
+                }
+
+                if (!acceptClient(socket, mmMaxClients)) {
+                    Log.w(TAG, "Maximum number of clients reached, rejecting " + socket.getRemoteDevice().getAddress());
+
+                    try {
+                        socket.close();
+                    } catch (Exception e) {
+                        Log.e(TAG, "close() of rejected socket failed", e);
+                    }
+                }
+            }
+
+            synchronized (RCTBluetoothSerialService.this) {
+                if (mAcceptThread == this) {
+                    mAcceptThread = null;
+                }
+            }
+        }
+
+        void cancel() {
+            try {
+                mmServerSocket.close();
+            } catch (Exception e) {
+                Log.e(TAG, "close() of server socket failed", e);
+                mModule.onError(DeviceStats.ErrorType.OTHER, null, "server", e);
             }
         }
     }
@@ -279,44 +746,102 @@ class RCTBluetoothSerialService {
     /**
      * This thread runs while attempting to make an outgoing connection with a
      * device. It runs straight through; the connection either succeeds or fails.
+     * Subclasses open the transport of a specific backend.
      */
-    private class ConnectThread extends Thread {
+    private abstract class ConnectThread extends Thread {
+        final String mmId;
+
+        ConnectThread(String id) {
+            mmId = id;
+        }
+
+        /**
+         * Open the connection. This is a blocking call and will only return
+         * on a successful connection or an exception.
+         *
+         * @return Connected transport
+         * @throws Exception If the connection cannot be established
+         */
+        abstract Transport open() throws Exception;
+
+        abstract void cancel();
+
+        public void run() {
+            if (D) Log.d(TAG, "Begin mConnectThread");
+            setName("ConnectThread");
+
+            Transport transport;
+
+            // Make a connection
+            try {
+                transport = open();
+            } catch (Exception e) {
+                getStats(mmId).onError(DeviceStats.ErrorType.CONNECT);
+                connectionFailed(this);
+                return;
+            }
+
+            synchronized (getConnectionState(mmId)) {
+                // Reset the ConnectThread because we're done
+                if (!mConnectThreads.remove(mmId, this)) {
+                    // Cancelled or replaced while the connection was made
+                    try {
+                        transport.close();
+                    } catch (Exception e) {
+                        Log.e(TAG, "close() of cancelled connection failed", e);
+                    }
+
+                    return;
+                }
+
+                connectionSuccess(transport); // Start the connected thread
+            }
+        }
+    }
+
+    /**
+     * Connect thread for Bluetooth RFCOMM sockets
+     */
+    private class BluetoothConnectThread extends ConnectThread {
         private BluetoothSocket mmSocket;
         private final BluetoothDevice mmDevice;
+        private final UUID mmUuid;
+
+        BluetoothConnectThread(BluetoothDevice device, UUID uuid) {
+            super(device.getAddress());
 
-        ConnectThread(BluetoothDevice device) {
-            if (D) Log.d(TAG, "Create ConnectThread");
+            if (D) Log.d(TAG, "Create ConnectThread to service " + uuid);
 
             mmDevice = device;
+            mmUuid = uuid;
             BluetoothSocket tmp = null;
 
             // Get a BluetoothSocket for a connection with the given BluetoothDevice
             try {
-                tmp = device.createRfcommSocketToServiceRecord(UUID_SPP);
+                tmp = device.createRfcommSocketToServiceRecord(uuid);
             } catch (Exception e) {
-                mModule.onError(e);
+                mModule.onError(DeviceStats.ErrorType.CONNECT, device.getAddress(), "socket", e);
                 Log.e(TAG, "Socket create() failed", e);
             }
             mmSocket = tmp;
         }
 
-        public void run() {
-            if (D) Log.d(TAG, "Begin mConnectThread");
-            setName("ConnectThread");
-
+        Transport open() throws Exception {
             // Always cancel discovery because it will slow down a connection
             mAdapter.cancelDiscovery();
 
+            // Only a connection to the service itself tells which UUID to use next time
+            boolean serviceConnected = false;
+
             // Make a connection to the BluetoothSocket
             try {
-                // This is a blocking call and will only return on a successful connection
-                // or an exception
                 if (D) Log.d(TAG, "Connecting to socket...");
                 mmSocket.connect();
+                serviceConnected = true;
                 if (D) Log.d(TAG, "Connected");
             } catch (Exception e) {
+                // Only the last attempt is reported, failed fallbacks are just logged
                 Log.e(TAG, e.toString());
-                mModule.onError(e);
 
                 // Some 4.1 devices have problems, try an alternative way to connect
                 // See https://github.com/don/RCTBluetoothSerialModule/issues/89
@@ -326,8 +851,7 @@ class RCTBluetoothSerialService {
                     mmSocket.connect();
                     Log.i(TAG, "Connected");
                 } catch (Exception e2) {
-                    Log.e(TAG, e.toString());
-                    mModule.onError(e);
+                    Log.e(TAG, e2.toString());
 
                     // Fallback to insecure socket
                     try {
@@ -336,25 +860,23 @@ class RCTBluetoothSerialService {
                         mmSocket.connect();
                     } catch (Exception e3) {
                         Log.e(TAG, "Couldn't establish a Bluetooth connection.");
-                        mModule.onError(e3);
+                        mModule.onError(DeviceStats.ErrorType.CONNECT, mmId, "connect", e3);
                         try {
                             mmSocket.close();
                         } catch (Exception e4) {
                             Log.e(TAG, "unable to close() socket during connection failure", e3);
-                            mModule.onError(e4);
+                            mModule.onError(DeviceStats.ErrorType.OTHER, mmId, "close", e4);
                         }
-                        connectionFailed(mmDevice);
-                        return;
+                        throw e3;
                     }
                 }
             }
 
-            // Reset the ConnectThread because we're done
-            synchronized (RCTBluetoothSerialService.this) {
-                mConnectThreads.remove(mmDevice.getAddress());
+            if (serviceConnected) {
+                mDeviceCache.setPreferredUuid(mmId, mmUuid);
             }
 
-            connectionSuccess(mmSocket, mmDevice); // Start the connected thread
+            return new BluetoothTransport(mmSocket);
         }
 
         void cancel() {
@@ -362,7 +884,7 @@ class RCTBluetoothSerialService {
                 mmSocket.close();
             } catch (Exception e) {
                 Log.e(TAG, "close() of connect socket failed", e);
-                mModule.onError(e);
+                mModule.onError(DeviceStats.ErrorType.OTHER, mmId, "close", e);
             }
         }
 
@@ -370,12 +892,63 @@ class RCTBluetoothSerialService {
             if(Build.VERSION.SDK_INT >= 10){
                 try {
                     final Method m = device.getClass().getMethod("createInsecureRfcommSocketToServiceRecord", new Class[] { UUID.class });
-                    return (BluetoothSocket) m.invoke(device, UUID_SPP);
+                    return (BluetoothSocket) m.invoke(device, mmUuid);
                 } catch (Exception e) {
                     Log.e(TAG, "Could not create Insecure RFComm Connection",e);
                 }
             }
-            return device.createRfcommSocketToServiceRecord(UUID_SPP);
+            return device.createRfcommSocketToServiceRecord(mmUuid);
+        }
+    }
+
+    /**
+     * Connect thread for TCP sockets
+     */
+    private class TcpConnectThread extends ConnectThread {
+        private final String mmHost;
+        private final int mmPort;
+        private final int mmTimeoutMs;
+        private volatile boolean mmCancelled = false;
+        private volatile TcpTransport mmTransport;
+
+        TcpConnectThread(String id, String host, int port, int timeoutMs) {
+            super(id);
+
+            if (D) Log.d(TAG, "Create ConnectThread to " + id);
+
+            mmHost = host;
+            mmPort = port;
+            mmTimeoutMs = timeoutMs;
+        }
+
+        Transport open() throws Exception {
+            try {
+                mmTransport = TcpTransport.connect(mmHost, mmPort, mmTimeoutMs);
+            } catch (Exception e) {
+                Log.e(TAG, "Couldn't establish a TCP connection.", e);
+                mModule.onError(DeviceStats.ErrorType.CONNECT, mmId, "connect", e);
+                throw e;
+            }
+
+            if (mmCancelled) {
+                mmTransport.close();
+                throw new IOException("Connection cancelled");
+            }
+
+            return mmTransport;
+        }
+
+        void cancel() {
+            mmCancelled = true;
+
+            try {
+                if (mmTransport != null) {
+                    mmTransport.close();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "close() of connect socket failed", e);
+                mModule.onError(DeviceStats.ErrorType.OTHER, mmId, "close", e);
+            }
         }
     }
 
@@ -384,50 +957,56 @@ class RCTBluetoothSerialService {
      * incoming and outgoing transmissions.
      */
     private class ConnectedThread extends Thread {
-        private final BluetoothSocket mmSocket;
-        private final BluetoothDevice mmDevice;
+        private final Transport mmTransport;
+        private final String mmId;
+        private final DeviceStats mmStats;
         private final InputStream mmInStream;
         private final OutputStream mmOutStream;
+        private final StreamReader mmReader;
 
-        ConnectedThread(BluetoothSocket socket, BluetoothDevice device) {
+        ConnectedThread(Transport transport) {
             if (D) Log.d(TAG, "Create ConnectedThread");
-            mmSocket = socket;
-            mmDevice = device;
+            mmTransport = transport;
+            mmId = transport.getId();
+            mmStats = getStats(mmId);
             InputStream tmpIn = null;
             OutputStream tmpOut = null;
 
-            // Get the BluetoothSocket input and output streams
+            // Get the transport input and output streams
             try {
-                tmpIn = socket.getInputStream();
-                tmpOut = socket.getOutputStream();
+                tmpIn = transport.getInputStream();
+                tmpOut = transport.getOutputStream();
             } catch (Exception e) {
                 Log.e(TAG, "temp sockets not created", e);
-                mModule.onError(e);
+                mModule.onError(DeviceStats.ErrorType.CONNECT, mmId, "streams", e);
             }
 
             mmInStream = tmpIn;
             mmOutStream = tmpOut;
+            mmReader = new StreamReader(mmId, mmInStream, new StreamReader.Listener() {
+                @Override
+                public void onData(String id, String data, long readNanos) {
+                    mModule.onData(id, data, readNanos); // Send the new data String to the UI Activity
+                }
+            }, mmStats, mRecorder, getCharset(mmId));
         }
 
         public void run() {
             Log.i(TAG, "Begin mConnectedThread");
-            byte[] buffer = new byte[1024];
-            int bytes;
-
-            String id = mmDevice.getAddress();
 
             // Keep listening to the InputStream while connected
-            while (true) {
-                try {
-                    bytes = mmInStream.read(buffer); // Read from the InputStream
-                    String data = new String(buffer, 0, bytes, "ISO-8859-1");
-                    mModule.onData(id, data); // Send the new data String to the UI Activity
-                } catch (Exception e) {
-                    Log.e(TAG, "disconnected", e);
-                    mModule.onError(e);
-                    connectionLost(mmDevice);
-                    break;
+            try {
+                mmReader.run();
+            } catch (Exception e) {
+                Log.e(TAG, "disconnected", e);
+
+                // A stopped or replaced connection fails its read on purpose
+                if (mConnectedThreads.get(mmId) == this) {
+                    mmStats.onError(DeviceStats.ErrorType.READ);
+                    mModule.onError(DeviceStats.ErrorType.READ, mmId, "read", e);
                 }
+
+                connectionLost(this);
             }
         }
 
@@ -435,24 +1014,36 @@ class RCTBluetoothSerialService {
          * Write to the connected OutStream.
          * 
          * @param buffer The bytes to write
+         * @return Whether the bytes were written
          */
-        void write(byte[] buffer) {
+        boolean write(byte[] buffer) {
+            mmStats.onWriteStart();
+
             try {
-                String str = new String(buffer, "UTF-8");
-                if (D) Log.d(TAG, "Write in thread " + str);
+                if (D) Log.d(TAG, "Write in thread " + new String(buffer, "UTF-8"));
                 mmOutStream.write(buffer);
+                mRecorder.record(TrafficRecorder.OUT, mmId, buffer, 0, buffer.length, System.nanoTime());
+                mmStats.onWriteEnd(buffer.length);
+                return true;
             } catch (Exception e) {
+                mmStats.onWriteEnd(0);
+                mmStats.onError(DeviceStats.ErrorType.WRITE);
                 Log.e(TAG, "Exception during write", e);
-                mModule.onError(e);
+                mModule.onError(DeviceStats.ErrorType.WRITE, mmId, "write", e);
+                return false;
             }
         }
 
+        void setCharset(Charset charset) {
+            mmReader.setCharset(charset);
+        }
+
         void cancel() {
             try {
-                mmSocket.close();
+                mmTransport.close();
             } catch (Exception e) {
                 Log.e(TAG, "close() of connect socket failed", e);
-                mModule.onError(e);
+                mModule.onError(DeviceStats.ErrorType.OTHER, mmId, "close", e);
             }
         }
     }
@@ -0,0 +1,122 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+/**
+ * Buffer of data received from a single device, split into frames by a
+ * delimiter.
+ *
+ * Frames are consumed by moving a read offset instead of deleting from the
+ * front of the buffer, so draining many small frames out of a large backlog
+ * does not shift the whole backlog for every frame. The consumed prefix is
+ * compacted once it outgrows the unread data. The delimiter search resumes
+ * where the previous unsuccessful search stopped.
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+class ReceiveBuffer {
+    private static final int COMPACT_THRESHOLD = 4096;
+
+    private final StringBuilder mBuffer = new StringBuilder();
+    private int mStart = 0;
+    private int mScanned = 0;
+    private String mScannedDelimiter = null;
+
+    /**
+     * Append received data
+     *
+     * @param data Received data
+     */
+    synchronized void append(CharSequence data) {
+        mBuffer.append(data);
+    }
+
+    /**
+     * @return Number of unread chars
+     */
+    synchronized int length() {
+        return mBuffer.length() - mStart;
+    }
+
+    /**
+     * Read and remove all unread data
+     *
+     * @return Unread data
+     */
+    synchronized String readAll() {
+        String data = mBuffer.substring(mStart);
+        reset();
+        return data;
+    }
+
+    /**
+     * Read and remove the oldest unread data
+     *
+     * @param maxLength Maximum number of chars to read
+     * @return Up to maxLength unread chars
+     */
+    synchronized String read(int maxLength) {
+        int end = mStart + Math.min(Math.max(maxLength, 0), mBuffer.length() - mStart);
+        String data = mBuffer.substring(mStart, end);
+        consume(end);
+        return data;
+    }
+
+    /**
+     * Read and remove data up to and including the first delimiter
+     *
+     * @param delimiter Frame delimiter
+     * @return Frame including the delimiter, or an empty string if there is
+     *         no complete frame or the delimiter is empty
+     */
+    synchronized String readUntil(String delimiter) {
+        if (delimiter == null || delimiter.length() == 0) {
+            return "";
+        }
+
+        int from = mStart;
+
+        if (delimiter.equals(mScannedDelimiter)) {
+            // A delimiter may straddle the end of the previous search
+            from = Math.max(mStart, mScanned - delimiter.length() + 1);
+        }
+
+        int index = mBuffer.indexOf(delimiter, from);
+
+        if (index < 0) {
+            mScanned = mBuffer.length();
+            mScannedDelimiter = delimiter;
+            return "";
+        }
+
+        int end = index + delimiter.length();
+        String data = mBuffer.substring(mStart, end);
+        consume(end);
+
+        return data;
+    }
+
+    /**
+     * Remove all unread data
+     */
+    synchronized void clear() {
+        reset();
+    }
+
+    private void consume(int end) {
+        mStart = end;
+        mScannedDelimiter = null;
+
+        if (mStart == mBuffer.length()) {
+            reset();
+        } else if (mStart > COMPACT_THRESHOLD && mStart > mBuffer.length() - mStart) {
+            mBuffer.delete(0, mStart);
+            mStart = 0;
+        }
+    }
+
+    private void reset() {
+        mBuffer.setLength(0);
+        mStart = 0;
+        mScanned = 0;
+        mScannedDelimiter = null;
+    }
+}
@@ -0,0 +1,207 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.util.HashMap;
+
+/**
+ * Log of data received from a single device, read by several named
+ * consumers. Every consumer has its own cursor over the same shared
+ * buffer, so each one sees every char no matter what the others read,
+ * and the data is stored once however many consumers there are.
+ *
+ * The log keeps at most its capacity behind the newest data. A consumer
+ * that falls further behind skips ahead and is told how much it lost.
+ * Space is reclaimed once every cursor has passed it, compacting in steps
+ * like ReceiveBuffer does.
+ *
+ * This class is plain Java so it can be driven on a desktop JVM.
+ */
+class ReceiveLog {
+    static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+    private static final int COMPACT_THRESHOLD = 4096;
+
+    /**
+     * Result of a read
+     */
+    static final class Read {
+        final String data;
+        // Chars skipped since the last read because the consumer fell behind
+        final long lost;
+
+        Read(String data, long lost) {
+            this.data = data;
+            this.lost = lost;
+        }
+    }
+
+    private static final class Cursor {
+        long position;
+        long lost = 0;
+
+        Cursor(long position) {
+            this.position = position;
+        }
+    }
+
+    private final int mCapacity;
+    private final StringBuilder mLog = new StringBuilder();
+    private final HashMap<String, Cursor> mCursors = new HashMap<>();
+    // Position of the first char of mLog since the log was created
+    private long mBase = 0;
+
+    /**
+     * @param capacity Maximum number of chars kept behind the newest data
+     */
+    ReceiveLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Receive log capacity must be positive");
+        }
+
+        mCapacity = capacity;
+    }
+
+    /**
+     * Add a consumer that starts reading at the newest data
+     *
+     * @param name Consumer name
+     * @return False if the consumer already exists
+     */
+    synchronized boolean open(String name) {
+        if (mCursors.containsKey(name)) {
+            return false;
+        }
+
+        mCursors.put(name, new Cursor(end()));
+        return true;
+    }
+
+    /**
+     * Remove a consumer
+     *
+     * @param name Consumer name
+     * @return False if there is no such consumer
+     */
+    synchronized boolean close(String name) {
+        if (mCursors.remove(name) == null) {
+            return false;
+        }
+
+        reclaim();
+        return true;
+    }
+
+    /**
+     * @return Whether no consumer is left
+     */
+    synchronized boolean isEmpty() {
+        return mCursors.isEmpty();
+    }
+
+    /**
+     * Append received data
+     *
+     * @param data Received data
+     */
+    synchronized void append(CharSequence data) {
+        mLog.append(data);
+
+        long oldest = end() - mCapacity;
+
+        for (Cursor cursor : mCursors.values()) {
+            if (cursor.position < oldest) {
+                cursor.lost += oldest - cursor.position;
+                cursor.position = oldest;
+            }
+        }
+
+        reclaim();
+    }
+
+    /**
+     * @param name Consumer name
+     * @return Number of chars the consumer has not read, or -1 if there
+     *         is no such consumer
+     */
+    synchronized long available(String name) {
+        Cursor cursor = mCursors.get(name);
+        return cursor != null ? end() - cursor.position : -1;
+    }
+
+    /**
+     * Read the oldest data the consumer has not read
+     *
+     * @param name Consumer name
+     * @param maxLength Maximum number of chars, 0 or less for all
+     * @return Read, or null if there is no such consumer
+     */
+    synchronized Read read(String name, int maxLength) {
+        Cursor cursor = mCursors.get(name);
+
+        if (cursor == null) {
+            return null;
+        }
+
+        int start = (int) (cursor.position - mBase);
+        int end = maxLength > 0 ? Math.min(mLog.length(), start + maxLength) : mLog.length();
+
+        return take(cursor, end);
+    }
+
+    /**
+     * Read the consumer's data up to and including the first delimiter
+     *
+     * @param name Consumer name
+     * @param delimiter Frame delimiter
+     * @return Read with an empty string if there is no complete frame, or
+     *         null if there is no such consumer
+     */
+    synchronized Read readUntil(String name, String delimiter) {
+        Cursor cursor = mCursors.get(name);
+
+        if (cursor == null) {
+            return null;
+        }
+
+        int start = (int) (cursor.position - mBase);
+        int index = delimiter != null && delimiter.length() > 0 ? mLog.indexOf(delimiter, start) : -1;
+
+        return take(cursor, index < 0 ? start : index + delimiter.length());
+    }
+
+    private Read take(Cursor cursor, int end) {
+        int start = (int) (cursor.position - mBase);
+        String data = mLog.substring(start, end);
+        long lost = cursor.lost;
+
+        cursor.position += data.length();
+        cursor.lost = 0;
+        reclaim();
+
+        return new Read(data, lost);
+    }
+
+    private long end() {
+        return mBase + mLog.length();
+    }
+
+    /**
+     * Drop the prefix every cursor has passed
+     */
+    private void reclaim() {
+        long min = end();
+
+        for (Cursor cursor : mCursors.values()) {
+            min = Math.min(min, cursor.position);
+        }
+
+        int passed = (int) (min - mBase);
+
+        if (passed == mLog.length()) {
+            mLog.setLength(0);
+            mBase = min;
+        } else if (passed > COMPACT_THRESHOLD && passed > mLog.length() - passed) {
+            mLog.delete(0, passed);
+            mBase = min;
+        }
+    }
+}
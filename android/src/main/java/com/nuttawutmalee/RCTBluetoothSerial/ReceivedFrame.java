@@ -0,0 +1,36 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+/**
+ * Complete frame of a device that is held back before it is sent to JS,
+ * e.g. by conflation or while the host is in the background
+ *
+ * This class is plain Java so it can be benchmarked on a desktop JVM.
+ */
+final class ReceivedFrame {
+    final String id;
+    final String data;
+    final int end;
+    final long seq;
+    final long readNanos;
+    final long frameNanos;
+    final Boolean valid;
+
+    /**
+     * @param id Device address
+     * @param data Frame with its delimiter
+     * @param end Length of the frame without its delimiter
+     * @param seq Sequence number
+     * @param readNanos System.nanoTime() of the socket read
+     * @param frameNanos System.nanoTime() of the frame leaving the receive buffer
+     * @param valid Checksum result, or null without a checksum
+     */
+    ReceivedFrame(String id, String data, int end, long seq, long readNanos, long frameNanos, Boolean valid) {
+        this.id = id;
+        this.data = data;
+        this.end = end;
+        this.seq = seq;
+        this.readNanos = readNanos;
+        this.frameNanos = frameNanos;
+        this.valid = valid;
+    }
+}
@@ -0,0 +1,280 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Scriptable simulated peer device. It runs on the peer end of a
+ * {@link PipeTransport}: it streams frames into the receive path at a
+ * configured rate and consumes everything written to it.
+ *
+ * Every frame has the form "seq:sentNanos:padding" followed by the
+ * delimiter, so a receiver can measure end-to-end latency and spot gaps.
+ * The timestamp is System.nanoTime(), which is only meaningful within the
+ * same process.
+ *
+ * This class is plain Java so it can drive load tests on a desktop JVM.
+ */
+class SimulatedPeer {
+    private final Transport mTransport;
+    private final Script mScript;
+    private final Random mRandom;
+
+    private volatile boolean mRunning = false;
+    private volatile long mFramesSent = 0;
+    private volatile long mBytesSent = 0;
+    private volatile long mBytesConsumed = 0;
+
+    private Thread mSendThread;
+    private Thread mConsumeThread;
+
+    /**
+     * Traffic script of a simulated peer
+     */
+    static final class Script {
+        int rate = 10240; // Bytes per second, 0 for as fast as possible
+        int frameMin = 64; // Frame size including the delimiter
+        int frameMax = 64;
+        String delimiter = "\r\n";
+        int burstFrames = 0; // Extra frames sent back to back every burst interval
+        int burstIntervalMs = 1000;
+        int disconnectAfterMs = 0; // Close the connection after this time, 0 for never
+        long seed = 0;
+
+        /**
+         * Parse a script of comma separated key=value pairs, e.g.
+         * "rate=10240,frameMin=32,frameMax=128,delimiter=\r\n,burstFrames=20,burstIntervalMs=500,disconnectAfterMs=60000"
+         * Backslash escapes \r, \n and \t are allowed in the delimiter.
+         *
+         * @param script Script
+         * @return Parsed script
+         * @throws IllegalArgumentException If the script is invalid
+         */
+        static Script parse(String script) {
+            Script result = new Script();
+
+            if (script == null || script.trim().length() == 0) {
+                return result;
+            }
+
+            for (String pair : script.split(",")) {
+                int separator = pair.indexOf('=');
+
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Invalid script entry " + pair);
+                }
+
+                String key = pair.substring(0, separator).trim();
+                String value = pair.substring(separator + 1).trim();
+
+                try {
+                    if ("rate".equals(key)) {
+                        result.rate = Integer.parseInt(value);
+                    } else if ("frameMin".equals(key)) {
+                        result.frameMin = Integer.parseInt(value);
+                    } else if ("frameMax".equals(key)) {
+                        result.frameMax = Integer.parseInt(value);
+                    } else if ("frameSize".equals(key)) {
+                        result.frameMin = result.frameMax = Integer.parseInt(value);
+                    } else if ("delimiter".equals(key)) {
+                        result.delimiter = unescape(value);
+                    } else if ("burstFrames".equals(key)) {
+                        result.burstFrames = Integer.parseInt(value);
+                    } else if ("burstIntervalMs".equals(key)) {
+                        result.burstIntervalMs = Integer.parseInt(value);
+                    } else if ("disconnectAfterMs".equals(key)) {
+                        result.disconnectAfterMs = Integer.parseInt(value);
+                    } else if ("seed".equals(key)) {
+                        result.seed = Long.parseLong(value);
+                    } else {
+                        throw new IllegalArgumentException("Unknown script key " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value of " + key + ": " + value);
+                }
+            }
+
+            if (result.delimiter.length() == 0 || result.frameMin <= result.delimiter.length()
+                    || result.frameMax < result.frameMin || result.burstIntervalMs <= 0) {
+                throw new IllegalArgumentException("Invalid frame sizes, delimiter or burst interval");
+            }
+
+            return result;
+        }
+
+        private static String unescape(String value) {
+            return value.replace("\\r", "\r").replace("\\n", "\n").replace("\\t", "\t");
+        }
+    }
+
+    /**
+     * @param transport Peer end of the connection
+     * @param script Traffic script
+     */
+    SimulatedPeer(Transport transport, Script script) {
+        mTransport = transport;
+        mScript = script;
+        mRandom = new Random(script.seed);
+    }
+
+    /**
+     * Start sending and consuming
+     */
+    synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+
+        mRunning = true;
+
+        mSendThread = new Thread("SimulatedPeer-send-" + mTransport.getId()) {
+            public void run() {
+                try {
+                    send();
+                } catch (IOException e) {
+                    // The connection was closed by the other end
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    SimulatedPeer.this.stop();
+                }
+            }
+        };
+
+        mConsumeThread = new Thread("SimulatedPeer-consume-" + mTransport.getId()) {
+            public void run() {
+                try {
+                    consume();
+                } catch (IOException e) {
+                    // The connection was closed
+                }
+            }
+        };
+
+        mSendThread.setDaemon(true);
+        mConsumeThread.setDaemon(true);
+        mSendThread.start();
+        mConsumeThread.start();
+    }
+
+    /**
+     * Stop the peer and close its end of the connection
+     */
+    void stop() {
+        mRunning = false;
+
+        try {
+            mTransport.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+
+    /**
+     * Wait until the peer stopped sending
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    void join() throws InterruptedException {
+        Thread sendThread;
+
+        synchronized (this) {
+            sendThread = mSendThread;
+        }
+
+        if (sendThread != null) {
+            sendThread.join();
+        }
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    long getFramesSent() {
+        return mFramesSent;
+    }
+
+    long getBytesSent() {
+        return mBytesSent;
+    }
+
+    long getBytesConsumed() {
+        return mBytesConsumed;
+    }
+
+    private void send() throws IOException, InterruptedException {
+        OutputStream out = mTransport.getOutputStream();
+        long start = System.nanoTime();
+        long nextBurst = start + mScript.burstIntervalMs * 1000000L;
+        long seq = 0;
+
+        while (mRunning) {
+            long now = System.nanoTime();
+
+            if (mScript.disconnectAfterMs > 0 && now - start >= mScript.disconnectAfterMs * 1000000L) {
+                return;
+            }
+
+            int frames = 1;
+
+            if (mScript.burstFrames > 0 && now >= nextBurst) {
+                frames += mScript.burstFrames;
+                nextBurst += mScript.burstIntervalMs * 1000000L;
+            }
+
+            for (int i = 0; i < frames; i++) {
+                byte[] frame = frame(seq++);
+                out.write(frame);
+                mBytesSent += frame.length;
+                mFramesSent++;
+            }
+
+            if (mScript.rate > 0) {
+                long due = start + mBytesSent * 1000000000L / mScript.rate;
+                long wait = due - System.nanoTime();
+
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                }
+            }
+        }
+    }
+
+    private void consume() throws IOException {
+        InputStream in = mTransport.getInputStream();
+        byte[] buffer = new byte[1024];
+        int bytes;
+
+        while ((bytes = in.read(buffer)) >= 0) {
+            mBytesConsumed += bytes;
+        }
+    }
+
+    private byte[] frame(long seq) {
+        int size = mScript.frameMin;
+
+        if (mScript.frameMax > mScript.frameMin) {
+            size += mRandom.nextInt(mScript.frameMax - mScript.frameMin + 1);
+        }
+
+        StringBuilder frame = new StringBuilder(size);
+        frame.append(seq).append(':').append(System.nanoTime()).append(':');
+
+        while (frame.length() < size - mScript.delimiter.length()) {
+            frame.append('x');
+        }
+
+        frame.append(mScript.delimiter);
+
+        byte[] bytes = new byte[frame.length()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) frame.charAt(i);
+        }
+
+        return bytes;
+    }
+}
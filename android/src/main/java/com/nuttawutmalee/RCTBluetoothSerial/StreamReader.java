@@ -0,0 +1,101 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Read loop of a connected thread: reads chunks from the input stream,
+ * decodes them and hands them to a listener until the stream ends or fails.
+ *
+ * This class is plain Java so the read path can be driven by simulated
+ * peers on a desktop JVM.
+ */
+class StreamReader {
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * Receiver of decoded chunks
+     */
+    interface Listener {
+        /**
+         * @param id Connection id
+         * @param data Decoded chunk
+         * @param readNanos System.nanoTime() when the read returned
+         */
+        void onData(String id, String data, long readNanos);
+    }
+
+    private final String mId;
+    private final InputStream mInStream;
+    private final Listener mListener;
+    private final DeviceStats mStats;
+    private final TrafficRecorder mRecorder;
+    private final byte[] mBuffer;
+    private ChunkDecoder mDecoder;
+    private volatile Charset mCharset;
+
+    StreamReader(String id, InputStream inStream, Listener listener, DeviceStats stats) {
+        this(id, inStream, listener, stats, null, ChunkDecoder.ISO_8859_1, DEFAULT_BUFFER_SIZE);
+    }
+
+    StreamReader(String id, InputStream inStream, Listener listener, DeviceStats stats,
+                 TrafficRecorder recorder, Charset charset) {
+        this(id, inStream, listener, stats, recorder, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    StreamReader(String id, InputStream inStream, Listener listener, DeviceStats stats,
+                 TrafficRecorder recorder, Charset charset, int bufferSize) {
+        mId = id;
+        mInStream = inStream;
+        mListener = listener;
+        mStats = stats;
+        mRecorder = recorder;
+        mBuffer = new byte[bufferSize];
+        mCharset = charset;
+        mDecoder = new ChunkDecoder(charset, bufferSize);
+    }
+
+    /**
+     * Decode the next chunks with another charset. An incomplete sequence
+     * carried over by the old charset is dropped.
+     *
+     * @param charset Charset of the stream
+     */
+    void setCharset(Charset charset) {
+        mCharset = charset;
+    }
+
+    /**
+     * Keep reading until the stream ends or fails
+     *
+     * @throws IOException When the stream ends or fails
+     */
+    void run() throws IOException {
+        while (true) {
+            int bytes = mInStream.read(mBuffer); // Read from the InputStream
+
+            if (bytes < 0) {
+                throw new IOException("End of stream");
+            }
+
+            long now = System.nanoTime();
+
+            if (mStats != null) {
+                mStats.onRead(bytes, now);
+            }
+
+            if (mRecorder != null) {
+                mRecorder.record(TrafficRecorder.IN, mId, mBuffer, 0, bytes, now);
+            }
+
+            Charset charset = mCharset;
+
+            if (!charset.equals(mDecoder.getCharset())) {
+                mDecoder = new ChunkDecoder(charset, mBuffer.length);
+            }
+
+            mListener.onData(mId, mDecoder.decode(mBuffer, 0, bytes), now);
+        }
+    }
+}
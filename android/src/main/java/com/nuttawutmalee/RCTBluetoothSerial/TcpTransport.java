@@ -0,0 +1,75 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Transport over a TCP socket, e.g. to a serial-over-TCP gateway.
+ * The connection is registered under "host:port".
+ */
+class TcpTransport implements Transport {
+    private final Socket mSocket;
+    private final String mId;
+
+    TcpTransport(Socket socket, String id) {
+        mSocket = socket;
+        mId = id;
+    }
+
+    /**
+     * Open a TCP connection
+     *
+     * @param host Host name or address
+     * @param port Port
+     * @param timeoutMs Connect timeout in milliseconds, 0 for none
+     * @return Connected transport
+     * @throws IOException If the connection cannot be established
+     */
+    static TcpTransport connect(String host, int port, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        return new TcpTransport(socket, idOf(host, port));
+    }
+
+    /**
+     * Connection id of a TCP endpoint
+     *
+     * @param host Host name or address
+     * @param port Port
+     * @return Connection id
+     */
+    static String idOf(String host, int port) {
+        return host + ":" + port;
+    }
+
+    @Override
+    public String getId() {
+        return mId;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return mSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return mSocket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+    }
+}
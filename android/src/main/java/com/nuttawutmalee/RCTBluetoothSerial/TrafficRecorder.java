@@ -0,0 +1,400 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in capture of every inbound and outbound chunk to a compact binary
+ * file, so the traffic of a misbehaving device can be replayed later.
+ *
+ * The read and write paths only copy the chunk and offer it to a bounded
+ * queue. A writer thread encodes and writes the records through a
+ * buffered stream, so capturing never blocks the link; when the writer
+ * falls behind, records are dropped and counted instead.
+ *
+ * File format, all integers big endian, varints are unsigned LEB128:
+ * <pre>
+ * header:  "RBSC", version (1 byte), capture start in ms since epoch (8 bytes)
+ * record:  type (1 byte) followed by
+ *   DEVICE: varint device index, varint length, UTF-8 device id
+ *   IN/OUT: varint ns since the previous record, varint device index,
+ *           varint length, chunk bytes
+ * </pre>
+ * A DEVICE record is written before the first chunk of every device.
+ *
+ * This class is plain Java so captures can be read on a desktop JVM.
+ */
+class TrafficRecorder {
+    static final int IN = 1;
+    static final int OUT = 2;
+
+    private static final int DEVICE = 0;
+    private static final byte[] MAGIC = { 'R', 'B', 'S', 'C' };
+    private static final int VERSION = 1;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private volatile Session mSession = null;
+
+    /**
+     * Start capturing to a file, replacing its content
+     *
+     * @param file Capture file
+     * @throws IOException When the file cannot be written
+     */
+    synchronized void start(File file) throws IOException {
+        if (mSession != null) {
+            throw new IOException("Capture already running to " + mSession.mFile);
+        }
+
+        mSession = new Session(file);
+        mSession.start();
+    }
+
+    /**
+     * Stop capturing and flush everything queued so far
+     *
+     * @return Summary of the capture or null if none was running
+     */
+    synchronized Summary stop() {
+        Session session = mSession;
+
+        if (session == null) {
+            return null;
+        }
+
+        mSession = null;
+        return session.finish();
+    }
+
+    /**
+     * @return Whether a capture is running
+     */
+    boolean isRecording() {
+        return mSession != null;
+    }
+
+    /**
+     * Capture a chunk. Does nothing when no capture is running.
+     *
+     * @param direction IN or OUT
+     * @param id Connection id
+     * @param buffer Chunk bytes, copied before returning
+     * @param offset Chunk offset
+     * @param length Chunk length
+     * @param nanos System.nanoTime() of the chunk
+     */
+    void record(int direction, String id, byte[] buffer, int offset, int length, long nanos) {
+        Session session = mSession;
+
+        if (session == null || length <= 0) {
+            return;
+        }
+
+        byte[] data = new byte[length];
+        System.arraycopy(buffer, offset, data, 0, length);
+        session.offer(new Record(direction, id, data, nanos));
+    }
+
+    /**
+     * A captured chunk
+     */
+    static final class Record {
+        final int direction;
+        final String id;
+        final byte[] data;
+        final long nanos;
+
+        Record(int direction, String id, byte[] data, long nanos) {
+            this.direction = direction;
+            this.id = id;
+            this.data = data;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Outcome of a capture
+     */
+    static final class Summary {
+        final File file;
+        final long records;
+        final long bytes;
+        final long dropped;
+        final IOException error;
+
+        Summary(File file, long records, long bytes, long dropped, IOException error) {
+            this.file = file;
+            this.records = records;
+            this.bytes = bytes;
+            this.dropped = dropped;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Sequential reader of a capture file. Record nanos are relative to
+     * the start of the capture.
+     */
+    static final class Reader implements Closeable {
+        private final DataInputStream mIn;
+        private final List<String> mDevices = new ArrayList<>();
+        private final long mStartMillis;
+        private long mNanos = 0;
+
+        Reader(File file) throws IOException {
+            this(new FileInputStream(file));
+        }
+
+        Reader(InputStream in) throws IOException {
+            mIn = new DataInputStream(new BufferedInputStream(in, FILE_BUFFER_SIZE));
+
+            byte[] magic = new byte[MAGIC.length];
+            mIn.readFully(magic);
+
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not a capture file");
+                }
+            }
+
+            int version = mIn.readUnsignedByte();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported capture version " + version);
+            }
+
+            mStartMillis = mIn.readLong();
+        }
+
+        /**
+         * @return Capture start in ms since epoch
+         */
+        long getStartMillis() {
+            return mStartMillis;
+        }
+
+        /**
+         * Read the next chunk
+         *
+         * @return Chunk or null at the end of the capture
+         * @throws IOException When the file is corrupt
+         */
+        Record next() throws IOException {
+            while (true) {
+                int type = mIn.read();
+
+                if (type < 0) {
+                    return null;
+                }
+
+                try {
+                    if (type == DEVICE) {
+                        int index = (int) readVarint(mIn);
+
+                        if (index != mDevices.size()) {
+                            throw new IOException("Unexpected device index " + index);
+                        }
+
+                        mDevices.add(new String(readBytes(mIn), "UTF-8"));
+                    } else if (type == IN || type == OUT) {
+                        mNanos += readVarint(mIn);
+                        int index = (int) readVarint(mIn);
+
+                        if (index < 0 || index >= mDevices.size()) {
+                            throw new IOException("Unknown device index " + index);
+                        }
+
+                        return new Record(type, mDevices.get(index), readBytes(mIn), mNanos);
+                    } else {
+                        throw new IOException("Unknown record type " + type);
+                    }
+                } catch (EOFException e) {
+                    // The capture was cut off in the middle of a record
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+
+    /**
+     * One running capture with its queue and writer thread
+     */
+    private static final class Session extends Thread {
+        private static final Record END = new Record(0, null, null, 0);
+
+        private final File mFile;
+        private final BlockingQueue<Record> mQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final DataOutputStream mOut;
+        private final HashMap<String, Integer> mDevices = new HashMap<>();
+        private final AtomicLong mDropped = new AtomicLong();
+        private long mRecords = 0;
+        private long mBytes = 0;
+        private long mLastNanos;
+        private IOException mError = null;
+
+        Session(File file) throws IOException {
+            super("TrafficRecorder");
+            setDaemon(true);
+
+            mFile = file;
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), FILE_BUFFER_SIZE));
+            mOut.write(MAGIC);
+            mOut.writeByte(VERSION);
+            mOut.writeLong(System.currentTimeMillis());
+            mLastNanos = System.nanoTime();
+        }
+
+        void offer(Record record) {
+            if (!mQueue.offer(record)) {
+                mDropped.incrementAndGet();
+            }
+        }
+
+        Summary finish() {
+            boolean interrupted = false;
+
+            while (true) {
+                try {
+                    mQueue.put(END);
+                    join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new Summary(mFile, mRecords, mBytes, mDropped.get(), mError);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Record record = mQueue.take();
+
+                    if (record == END) {
+                        break;
+                    }
+
+                    if (mError == null) {
+                        write(record);
+                    } else {
+                        mDropped.incrementAndGet();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stopped without flushing the queue
+            }
+
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+        }
+
+        private void write(Record record) {
+            try {
+                Integer index = mDevices.get(record.id);
+
+                if (index == null) {
+                    index = mDevices.size();
+                    mDevices.put(record.id, index);
+
+                    mOut.writeByte(DEVICE);
+                    writeVarint(mOut, index);
+                    writeBytes(mOut, utf8(record.id));
+                }
+
+                // Chunks of different threads may be queued slightly out of order
+                long delta = Math.max(0, record.nanos - mLastNanos);
+                mLastNanos = Math.max(mLastNanos, record.nanos);
+
+                mOut.writeByte(record.direction);
+                writeVarint(mOut, delta);
+                writeVarint(mOut, index);
+                writeBytes(mOut, record.data);
+
+                mRecords++;
+                mBytes += record.data.length;
+            } catch (IOException e) {
+                mError = e;
+                mDropped.incrementAndGet();
+            }
+        }
+    }
+
+    private static byte[] utf8(String value) throws UnsupportedEncodingException {
+        return value.getBytes("UTF-8");
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    private static void writeBytes(OutputStream out, byte[] data) throws IOException {
+        writeVarint(out, data.length);
+        out.write(data);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        long length = readVarint(in);
+
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed length " + length);
+        }
+
+        byte[] data = new byte[(int) length];
+        in.readFully(data);
+        return data;
+    }
+}
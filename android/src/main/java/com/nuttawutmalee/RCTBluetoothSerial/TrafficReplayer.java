@@ -0,0 +1,215 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a capture written by TrafficRecorder back through the receive path.
+ * Every captured device gets an in-memory pipe whose app side is handed to
+ * the listener to be connected like any other transport; inbound chunks
+ * are written to the other side, either with their original timing or as
+ * fast as the receive path takes them. Outbound chunks are not replayed,
+ * anything the app writes to a replayed device is discarded. When the
+ * replay ends, every device is disconnected through the listener once the
+ * app has read what is left in its pipe, so the end of a replay does not
+ * look like a lost connection.
+ *
+ * This class is plain Java so captures can be replayed on a desktop JVM.
+ */
+class TrafficReplayer extends Thread {
+    private static final int DRAIN_BUFFER_SIZE = 1024;
+    // Longest wait for the app to read what is left in a pipe
+    private static final long DELIVER_TIMEOUT_NANOS = 1000000000L;
+    private static final long DELIVER_POLL_NANOS = 1000000L;
+
+    /**
+     * Receiver of replayed devices and of the end of the replay
+     */
+    interface Listener {
+        /**
+         * A captured device sends its first chunk
+         *
+         * @param transport App side of the device pipe
+         */
+        void onDevice(PipeTransport transport);
+
+        /**
+         * A captured device sent its last chunk and should be disconnected
+         *
+         * @param transport App side of the device pipe
+         */
+        void onDeviceFinished(PipeTransport transport);
+
+        /**
+         * The replay ended
+         *
+         * @param replayer Replayer with the final counters
+         * @param error Why the replay stopped early, or null
+         */
+        void onFinished(TrafficReplayer replayer, IOException error);
+    }
+
+    private final File mFile;
+    private final String mPrefix;
+    private final boolean mRealtime;
+    private final Listener mListener;
+    private final HashMap<String, PipeTransport> mPeers = new HashMap<>();
+
+    private volatile boolean mCancelled = false;
+    private volatile long mRecords = 0;
+    private volatile long mBytes = 0;
+    private volatile long mDurationNanos = 0;
+
+    /**
+     * @param file Capture file
+     * @param prefix Prefix of the replayed connection ids
+     * @param realtime Keep the original timing, or replay as fast as possible
+     * @param listener Receiver of replayed devices
+     */
+    TrafficReplayer(File file, String prefix, boolean realtime, Listener listener) {
+        super("TrafficReplayer");
+        setDaemon(true);
+
+        mFile = file;
+        mPrefix = prefix != null ? prefix : "";
+        mRealtime = realtime;
+        mListener = listener;
+    }
+
+    /**
+     * Stop replaying, replayed devices are disconnected
+     */
+    void cancel() {
+        mCancelled = true;
+        interrupt();
+    }
+
+    long getRecords() {
+        return mRecords;
+    }
+
+    long getBytes() {
+        return mBytes;
+    }
+
+    int getDevices() {
+        return mPeers.size();
+    }
+
+    long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    @Override
+    public void run() {
+        IOException error = null;
+        long start = System.nanoTime();
+        TrafficRecorder.Reader reader = null;
+
+        try {
+            reader = new TrafficRecorder.Reader(mFile);
+            TrafficRecorder.Record record;
+
+            while (!mCancelled && (record = reader.next()) != null) {
+                if (record.direction != TrafficRecorder.IN) {
+                    continue;
+                }
+
+                PipeTransport peer = peerOf(record.id);
+
+                if (mRealtime) {
+                    long delay;
+
+                    while (!mCancelled && (delay = start + record.nanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                }
+
+                peer.getOutputStream().write(record.data);
+                mRecords++;
+                mBytes += record.data.length;
+            }
+        } catch (IOException e) {
+            if (!mCancelled) {
+                error = e;
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Nothing left to read
+                }
+            }
+
+            for (PipeTransport peer : mPeers.values()) {
+                if (!mCancelled) {
+                    awaitDelivery(peer.getPeer());
+                }
+
+                mListener.onDeviceFinished(peer.getPeer());
+                peer.close();
+            }
+
+            mDurationNanos = System.nanoTime() - start;
+        }
+
+        mListener.onFinished(this, error);
+    }
+
+    private PipeTransport peerOf(String capturedId) {
+        PipeTransport peer = mPeers.get(capturedId);
+
+        if (peer == null) {
+            PipeTransport transport = new PipeTransport(mPrefix + capturedId);
+            peer = transport.getPeer();
+            mPeers.put(capturedId, peer);
+
+            drain(peer.getInputStream(), transport.getId());
+            mListener.onDevice(transport);
+        }
+
+        return peer;
+    }
+
+    /**
+     * Wait until the app has read the chunks buffered in a device pipe
+     */
+    private void awaitDelivery(PipeTransport transport) {
+        long deadline = System.nanoTime() + DELIVER_TIMEOUT_NANOS;
+
+        try {
+            while (!mCancelled && transport.getInputStream().available() > 0 && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(DELIVER_POLL_NANOS);
+            }
+        } catch (IOException e) {
+            // Pipe closed, nothing left to deliver
+        }
+    }
+
+    /**
+     * Discard everything the app writes to a replayed device
+     */
+    private static void drain(final InputStream in, String id) {
+        Thread thread = new Thread("TrafficReplayer-" + id) {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+
+                try {
+                    while (in.read(buffer) >= 0) {
+                        // Discard
+                    }
+                } catch (IOException e) {
+                    // Pipe closed
+                }
+            }
+        };
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,41 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A connected, bidirectional byte stream to a peer. The connected thread
+ * only talks to this interface, so the same read, write and framing code
+ * runs over Bluetooth RFCOMM, TCP or an in-memory pipe.
+ *
+ * Implementations other than the Bluetooth one must not depend on Android
+ * classes, so they can be used on a plain JVM.
+ */
+interface Transport {
+    /**
+     * Identifier the connection is registered under, e.g. the device address
+     *
+     * @return Connection id
+     */
+    String getId();
+
+    /**
+     * @return Stream of bytes received from the peer
+     * @throws IOException If the stream is not available
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * @return Stream of bytes sent to the peer
+     * @throws IOException If the stream is not available
+     */
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Close the connection. Blocked reads and writes fail with an IOException.
+     *
+     * @throws IOException If closing fails
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,466 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Durable outbound journal of a single device. Writes made while the device
+ * is disconnected are appended to a file and replayed in order once it is
+ * connected again. The file survives app restarts, entries older than the
+ * TTL are discarded and appends are refused once the size limit is hit.
+ *
+ * The entries are mirrored in memory, so replaying never reads the file;
+ * the file is only read when the journal is opened. Replayed entries are
+ * not removed from the file one batch at a time: the header counts the
+ * bytes of entries already written to the device, which is updated in
+ * place. The file is compacted when the journal runs empty and when it is
+ * opened.
+ *
+ * File format, all integers big endian:
+ * <pre>
+ * header: "RBSJ", version (1 byte), replayed bytes (8 bytes), max bytes (8 bytes),
+ *         TTL in ms (8 bytes), device id (modified UTF-8 with a 2 byte length)
+ * entry:  time in ms since epoch (8 bytes), length (4 bytes), bytes
+ * </pre>
+ *
+ * Version 1 files have no replayed bytes field and are still read.
+ */
+class WriteJournal {
+    static final String EXTENSION = ".journal";
+
+    private static final byte[] MAGIC = { 'R', 'B', 'S', 'J' };
+    private static final int VERSION = 2;
+    private static final int ENTRY_OVERHEAD = 12;
+    // Position of the replayed bytes in the header
+    private static final int REPLAYED_POSITION = MAGIC.length + 1;
+
+    private final File mFile;
+    private final String mId;
+    private final ArrayDeque<Entry> mEntries = new ArrayDeque<>();
+    private long mMaxBytes;
+    private long mTtlMillis;
+    private long mBytes = 0;
+    private long mHeaderLength = 0;
+    // Bytes of the entries in the file before the first one in memory
+    private long mReplayed = 0;
+    // Replay holding the journal, or null
+    private Object mReplayer = null;
+
+    private static final class Entry {
+        final long time;
+        final byte[] data;
+
+        Entry(long time, byte[] data) {
+            this.time = time;
+            this.data = data;
+        }
+    }
+
+    private WriteJournal(File file, String id, long maxBytes, long ttlMillis) {
+        mFile = file;
+        mId = id;
+        mMaxBytes = maxBytes;
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * Create an empty journal, replacing any journal of the device
+     *
+     * @param directory Journal directory
+     * @param id Device address
+     * @param maxBytes Size limit of the entries
+     * @param ttlMillis Entries older than this are discarded
+     * @return Journal
+     * @throws IOException When the file cannot be written
+     */
+    static WriteJournal create(File directory, String id, long maxBytes, long ttlMillis) throws IOException {
+        WriteJournal journal = new WriteJournal(fileOf(directory, id), id, maxBytes, ttlMillis);
+        journal.rewrite();
+        return journal;
+    }
+
+    /**
+     * Open all journals of a directory, e.g. after an app restart
+     *
+     * @param directory Journal directory
+     * @param now Current time in ms since epoch
+     * @return Journals, unreadable files are skipped
+     */
+    static List<WriteJournal> openAll(File directory, long now) {
+        List<WriteJournal> journals = new ArrayList<>();
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            return journals;
+        }
+
+        for (File file : files) {
+            if (!file.getName().endsWith(EXTENSION)) {
+                continue;
+            }
+
+            try {
+                journals.add(open(file, now));
+            } catch (IOException e) {
+                // Not a journal or cut off in its header
+            }
+        }
+
+        return journals;
+    }
+
+    private static WriteJournal open(File file, long now) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not a journal file");
+                }
+            }
+
+            int version = in.readUnsignedByte();
+
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported journal version");
+            }
+
+            long replayed = version > 1 ? in.readLong() : 0;
+            long maxBytes = in.readLong();
+            long ttlMillis = in.readLong();
+            WriteJournal journal = new WriteJournal(file, in.readUTF(), maxBytes, ttlMillis);
+
+            try {
+                // Skip the entries that were already written to the device
+                while (replayed > 0) {
+                    int skipped = in.skipBytes((int) Math.min(replayed, Integer.MAX_VALUE));
+
+                    if (skipped <= 0) {
+                        throw new EOFException();
+                    }
+
+                    replayed -= skipped;
+                }
+
+                while (true) {
+                    long time = in.readLong();
+                    int length = in.readInt();
+
+                    if (length < 0 || length > maxBytes) {
+                        break;
+                    }
+
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    journal.add(new Entry(time, data));
+                }
+            } catch (EOFException e) {
+                // The last entry was cut off, e.g. by a crash during an append
+            }
+
+            journal.expire(now);
+            journal.rewrite();
+            return journal;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File fileOf(File directory, String id) throws IOException {
+        StringBuilder name = new StringBuilder();
+
+        for (byte b : id.getBytes("UTF-8")) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return new File(directory, name.append(EXTENSION).toString());
+    }
+
+    /**
+     * @return Device address
+     */
+    String getId() {
+        return mId;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Change the limits, keeping the entries that still fit
+     *
+     * @param maxBytes Size limit of the entries
+     * @param ttlMillis Entries older than this are discarded
+     * @param now Current time in ms since epoch
+     * @throws IOException When the file cannot be written
+     */
+    synchronized void configure(long maxBytes, long ttlMillis, long now) throws IOException {
+        mMaxBytes = maxBytes;
+        mTtlMillis = ttlMillis;
+        expire(now);
+
+        while (mBytes > mMaxBytes) {
+            Entry entry = mEntries.pollLast();
+            mBytes -= ENTRY_OVERHEAD + entry.data.length;
+        }
+
+        rewrite();
+    }
+
+    /**
+     * Whether a write has to go through the journal to keep its order:
+     * the journal still holds entries or is being replayed.
+     *
+     * @return Is pending
+     */
+    synchronized boolean isPending() {
+        return mReplayer != null || !mEntries.isEmpty();
+    }
+
+    /**
+     * Append a write
+     *
+     * @param data Bytes to write
+     * @param now Current time in ms since epoch
+     * @return False if the journal is full
+     * @throws IOException When the file cannot be written
+     */
+    synchronized boolean append(byte[] data, long now) throws IOException {
+        if (mBytes + ENTRY_OVERHEAD + data.length > mMaxBytes) {
+            return false;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+
+        try {
+            out.writeLong(now);
+            out.writeInt(data.length);
+            out.write(data);
+            out.close();
+        } catch (IOException e) {
+            out.close();
+            // Cut off the partial entry, so the entries after it can still be read
+            truncate();
+            throw e;
+        }
+
+        add(new Entry(now, data));
+        return true;
+    }
+
+    /**
+     * Take the oldest entries that have not expired as a single write and
+     * mark the journal as being replayed by the caller. Only one replay
+     * holds the journal at a time, until nothing is left or it is aborted.
+     * Once nothing is left the journal stops being replayed, so later
+     * writes go straight to the device.
+     *
+     * @param replayer Replay taking the batch
+     * @param maxEntries Maximum number of entries
+     * @param maxBytes Maximum size of the batch, at least one entry is taken
+     * @param now Current time in ms since epoch
+     * @return Batch with the number of entries it holds, or null if the journal
+     *         is empty or held by another replay
+     */
+    synchronized Batch nextBatch(Object replayer, int maxEntries, int maxBytes, long now) {
+        if (mReplayer != null && mReplayer != replayer) {
+            return null;
+        }
+
+        expire(now);
+
+        if (mEntries.isEmpty()) {
+            mReplayer = null;
+            return null;
+        }
+
+        mReplayer = replayer;
+
+        int count = 0;
+        int length = 0;
+
+        for (Entry entry : mEntries) {
+            if (count == maxEntries || (count > 0 && length + entry.data.length > maxBytes)) {
+                break;
+            }
+
+            count++;
+            length += entry.data.length;
+        }
+
+        byte[] data = new byte[length];
+        int offset = 0;
+        int index = 0;
+
+        for (Entry entry : mEntries) {
+            if (index++ == count) {
+                break;
+            }
+
+            System.arraycopy(entry.data, 0, data, offset, entry.data.length);
+            offset += entry.data.length;
+        }
+
+        return new Batch(data, count);
+    }
+
+    /**
+     * Remove the entries of a batch that was written. They are removed
+     * from memory first, so a failed file update never gets them written
+     * twice while the app runs.
+     *
+     * @param batch Written batch
+     * @throws IOException When the file cannot be written
+     */
+    synchronized void commit(Batch batch) throws IOException {
+        for (int i = 0; i < batch.count && !mEntries.isEmpty(); i++) {
+            remove();
+        }
+
+        if (mEntries.isEmpty()) {
+            rewrite();
+            return;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+
+        try {
+            file.seek(REPLAYED_POSITION);
+            file.writeLong(mReplayed);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Stop replaying, e.g. because the connection was lost. The remaining
+     * entries are replayed on the next connection.
+     *
+     * @param replayer Replay holding the journal
+     */
+    synchronized void abort(Object replayer) {
+        if (mReplayer == replayer) {
+            mReplayer = null;
+        }
+    }
+
+    /**
+     * Delete the journal file
+     *
+     * @return Number of discarded entries
+     */
+    synchronized int delete() {
+        int discarded = mEntries.size();
+
+        mEntries.clear();
+        mBytes = 0;
+        mReplayed = 0;
+        mFile.delete();
+
+        return discarded;
+    }
+
+    /**
+     * Entries written to the device in one go
+     */
+    static final class Batch {
+        final byte[] data;
+        final int count;
+
+        Batch(byte[] data, int count) {
+            this.data = data;
+            this.count = count;
+        }
+    }
+
+    private void add(Entry entry) {
+        mEntries.addLast(entry);
+        mBytes += ENTRY_OVERHEAD + entry.data.length;
+    }
+
+    private void remove() {
+        Entry entry = mEntries.pollFirst();
+        mBytes -= ENTRY_OVERHEAD + entry.data.length;
+        mReplayed += ENTRY_OVERHEAD + entry.data.length;
+    }
+
+    private void expire(long now) {
+        while (!mEntries.isEmpty() && now - mEntries.peekFirst().time > mTtlMillis) {
+            remove();
+        }
+    }
+
+    private void truncate() {
+        try {
+            RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+
+            try {
+                file.setLength(mHeaderLength + mReplayed + mBytes);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            // The entry is cut off on the next open
+        }
+    }
+
+    /**
+     * Write header and entries to a temporary file and move it in place,
+     * so a crash never leaves a half written journal behind
+     */
+    private void rewrite() throws IOException {
+        File parent = mFile.getParentFile();
+
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        int headerLength;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+        try {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(0);
+            out.writeLong(mMaxBytes);
+            out.writeLong(mTtlMillis);
+            out.writeUTF(mId);
+            headerLength = out.size();
+
+            for (Entry entry : mEntries) {
+                out.writeLong(entry.time);
+                out.writeInt(entry.data.length);
+                out.write(entry.data);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Could not replace " + mFile);
+        }
+
+        mHeaderLength = headerLength;
+        mReplayed = 0;
+    }
+}
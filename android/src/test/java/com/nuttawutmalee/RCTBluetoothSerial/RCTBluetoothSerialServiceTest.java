@@ -0,0 +1,64 @@
+package com.nuttawutmalee.RCTBluetoothSerial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Service callbacks of replaced and lost connections, over in-memory pipes
+ */
+public class RCTBluetoothSerialServiceTest {
+    private static final String ID = "pipe:1";
+
+    private RCTBluetoothSerialModule mModule;
+    private RCTBluetoothSerialService mService;
+
+    @Before
+    public void setUp() {
+        mModule = mock(RCTBluetoothSerialModule.class);
+        mService = new RCTBluetoothSerialService(mModule, new DeviceDescriptorCache());
+    }
+
+    @Test
+    public void reconnectingToTheSameIdDoesNotReportTheReplacedConnection() {
+        mService.connectTransport(new PipeTransport(ID), "Pipe");
+        mService.connectTransport(new PipeTransport(ID), "Pipe");
+
+        verify(mModule, times(2)).onConnectionSuccess(anyString(), eq(ID));
+        verify(mModule, after(500).never()).onConnectionLost(anyString(), eq(ID));
+        verify(mModule, never()).onError(eq(DeviceStats.ErrorType.READ), eq(ID), anyString(), any(Exception.class));
+        assertEquals(ConnectionState.State.CONNECTED, mService.getConnectionState(ID).get());
+    }
+
+    @Test
+    public void lossOfTheCurrentConnectionIsReported() {
+        PipeTransport transport = new PipeTransport(ID);
+
+        mService.connectTransport(new PipeTransport(ID), "Pipe");
+        mService.connectTransport(transport, "Pipe");
+        transport.getPeer().close();
+
+        verify(mModule, timeout(1000).times(1)).onConnectionLost(anyString(), eq(ID));
+        verify(mModule, after(500).times(1)).onConnectionLost(anyString(), eq(ID));
+        assertEquals(ConnectionState.State.NONE, mService.getConnectionState(ID).get());
+    }
+
+    @Test
+    public void deliberateDisconnectIsNotReportedAsLost() {
+        mService.connectTransport(new PipeTransport(ID), "Pipe");
+        mService.stop(ID);
+
+        verify(mModule, after(500).never()).onConnectionLost(anyString(), eq(ID));
+        assertEquals(ConnectionState.State.NONE, mService.getConnectionState(ID).get());
+    }
+}
@@ -72,6 +72,14 @@ declare namespace BluetoothSerial {
    */
   export function isEnabled(): Promise<boolean>;
 
+  /**
+   * Synchronous counterpart of isEnabled. Blocks the JS thread,
+   * not available while debugging remotely.
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function isEnabledSync(): boolean;
+
   /**
    * Connect to certain bluetooth device / peripheral.
    *
@@ -84,6 +92,70 @@ declare namespace BluetoothSerial {
     id: string
   ): Promise<AndroidBluetoothDevice | iOSBluetoothDevice>;
 
+  /**
+   * Connect to a specific RFCOMM service of a bluetooth device.
+   *
+   * @param id Device id
+   * @param uuid Service UUID
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if bluetooth adapter
+   *         is missing or the UUID is invalid.
+   */
+  export function connectToService(
+    id: string,
+    uuid: string
+  ): Promise<AndroidBluetoothDevice>;
+
+  /**
+   * Connect to a serial-over-TCP gateway. The connection is registered
+   * under "host:port" and works with all other connection and IO methods.
+   *
+   * @param host Host name or address
+   * @param port Port
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function connectTcp(
+    host: string,
+    port: number
+  ): Promise<AndroidBluetoothDevice>;
+
+  /**
+   * Connect to a simulated device that streams frames according to a
+   * script, e.g. "rate=10240,frameMin=32,frameMax=128,delimiter=\\r\\n".
+   * The simulated device goes through the same native read and write
+   * paths as a real one.
+   *
+   * @param id Device id to register the simulated device under
+   * @param script Comma separated key=value pairs: rate, frameMin, frameMax,
+   *               frameSize, delimiter, burstFrames, burstIntervalMs,
+   *               disconnectAfterMs, seed
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function connectSimulated(
+    id: string,
+    script: string
+  ): Promise<AndroidBluetoothDevice>;
+
+  /**
+   * Fetch the service UUIDs advertised by a bluetooth device through SDP.
+   * The result is cached, later connections to the device use it to pick
+   * the right service.
+   *
+   * @param id Device id
+   * @param refresh Run a new SDP query even if the UUIDs are cached
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if bluetooth adapter
+   *         is missing or the SDP query fails.
+   */
+  export function discoverServices(
+    id: string,
+    refresh: boolean
+  ): Promise<Array<string>>;
+
   /**
    * Disconnect from connected bluetooth device / peripheral.
    *
@@ -101,6 +173,58 @@ declare namespace BluetoothSerial {
    */
   export function isConnected(id?: string): Promise<boolean>;
 
+  /**
+   * Synchronous counterpart of isConnected.
+   *
+   * @param id Device id, null for the first connected device
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function isConnectedSync(id: string | null): boolean;
+
+  type ConnectionState = "none" | "connecting" | "connected" | "disconnecting";
+
+  /**
+   * Get the connection state of a device. Every change is also
+   * sent as a `connectionStateChanged` event.
+   *
+   * @param id Device id or uuid
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function getConnectionState(id?: string): Promise<ConnectionState>;
+
+  interface ServerOptions {
+    name?: string;
+    uuid?: string;
+    secure?: boolean;
+    maxClients?: number;
+  }
+
+  /**
+   * Start listening for incoming RFCOMM connections. Every accepted
+   * client is registered under its address and works with all other
+   * connection and IO methods.
+   *
+   * @param options Service name, socket security and client limit
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if bluetooth adapter
+   *         is missing or the server socket cannot be created.
+   */
+  export function startServer(options: ServerOptions): Promise<boolean>;
+
+  /**
+   * Stop listening for incoming connections.
+   * Connected clients stay connected.
+   */
+  export function stopServer(): Promise<boolean>;
+
+  /**
+   * Indicates if the server is accepting incoming connections.
+   */
+  export function isServerRunning(): Promise<boolean>;
+
   /**
    * List all paired (Android) / connected (iOS) bluetooth devices.
    */
@@ -108,6 +232,13 @@ declare namespace BluetoothSerial {
     Array<AndroidBluetoothDevice> | Array<iOSBluetoothDevice>
   >;
 
+  /**
+   * Synchronous counterpart of list, served from the paired device cache.
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function listSync(): Array<AndroidBluetoothDevice>;
+
   /**
    * List all unpaired bluetooth devices.
    *
@@ -150,6 +281,41 @@ declare namespace BluetoothSerial {
    */
   export function stopScanning(): Promise<boolean>;
 
+  interface DiscoveryPolicy {
+    busyBytesPerSecond?: number;
+    maxDelayMs?: number;
+    shortScanMs?: number;
+  }
+
+  interface DiscoveryStats {
+    requests: number;
+    scans: number;
+    merged: number;
+    shortened: number;
+    postponedMs: number;
+    savedMs: number;
+  }
+
+  /**
+   * Tune how discovery gives way to busy connections. Scans wait up to
+   * `maxDelayMs` for busy connections and then only run for `shortScanMs`.
+   * Pass null for the defaults.
+   *
+   * @param options Busy threshold, longest delay and short scan length
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function setDiscoveryPolicy(
+    options: DiscoveryPolicy | null
+  ): Promise<boolean>;
+
+  /**
+   * Get the counters of the discovery scheduler.
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function getDiscoveryStats(): Promise<DiscoveryStats>;
+
   /**
    * Pair with certain bluetooth device.
    *
@@ -176,6 +342,48 @@ declare namespace BluetoothSerial {
     id: string
   ): Promise<AndroidBluetoothDevice | iOSBluetoothDevice | null>;
 
+  interface PairingOptions {
+    concurrency?: number;
+    timeoutMs?: number;
+    pin?: string;
+  }
+
+  type PairingStatus =
+    | "paired"
+    | "unpaired"
+    | "failed"
+    | "timeout"
+    | "cancelled";
+
+  interface PairingResult {
+    id: string;
+    status: PairingStatus;
+    error?: string;
+  }
+
+  interface PairingSummary {
+    paired: number;
+    failed: number;
+    results: PairingResult[];
+  }
+
+  /**
+   * Pair with many bluetooth devices through the pairing queue.
+   * Every finished device emits a `pairingProgress` event.
+   *
+   * @param ids Device ids
+   * @param options Number of devices pairing at once, timeout per device
+   *                and PIN to answer PIN pairing requests with
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if bluetooth adapter
+   *         is missing.
+   */
+  export function pairDevices(
+    ids: string[],
+    options?: PairingOptions
+  ): Promise<PairingSummary>;
+
   /**
    * Listen and read data from connected device.
    *
@@ -192,6 +400,161 @@ declare namespace BluetoothSerial {
     id?: string
   ): void;
 
+  type FrameFilter =
+    | { type: "prefix"; prefix: string }
+    | { type: "regex"; pattern: string }
+    | { type: "bytes"; pattern: string; offset?: number }
+    | {
+        type: "field";
+        offset: number;
+        length: 1 | 2 | 3 | 4;
+        endian?: "big" | "little";
+        signed?: boolean;
+        min?: number;
+        max?: number;
+      };
+
+  interface FrameSubscription {
+    filterId: number;
+    remove: () => Promise<boolean>;
+  }
+
+  /**
+   * Add a native filter to a device. Once a device has filters, only
+   * frames that match at least one of them are sent to JS, carrying
+   * the ids of the matching filters in `filters`.
+   *
+   * @param id Device id, null for the first connected device
+   * @param filter
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the filter is invalid.
+   */
+  export function addFilter(
+    id: string | null,
+    filter: FrameFilter
+  ): Promise<number>;
+
+  /**
+   * Remove a native filter from a device.
+   *
+   * @param id Device id, null for the first connected device
+   * @param filterId
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function removeFilter(
+    id: string | null,
+    filterId: number
+  ): Promise<boolean>;
+
+  /**
+   * Remove all native filters of a device, so all frames are sent again.
+   *
+   * @param id Device id, null for the first connected device
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function clearFilters(id: string | null): Promise<boolean>;
+
+  /**
+   * Listen to the frames of a device that match a native filter.
+   *
+   * @param filter
+   * @param callback
+   * @param id
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function subscribe(
+    filter: FrameFilter,
+    callback: (data: string, event: any) => void,
+    id?: string
+  ): Promise<FrameSubscription>;
+
+  interface CursorOptions {
+    /** Chars kept behind the newest data, set by the first cursor of the device */
+    capacity?: number;
+  }
+
+  interface CursorRead {
+    data: string;
+    /** Chars skipped since the last read because the cursor fell behind */
+    lost: number;
+  }
+
+  interface ReadCursor {
+    name: string;
+    id: string;
+    available: () => Promise<number>;
+    read: (maxLength?: number) => Promise<CursorRead>;
+    readUntil: (delimiter: string) => Promise<CursorRead>;
+    close: () => Promise<boolean>;
+  }
+
+  /**
+   * Open a named read cursor over the data of a device. Every cursor
+   * has its own read position over one shared native log.
+   *
+   * @param name Cursor name, unique per device
+   * @param options Capacity of the log
+   * @param id Device id
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the name is already open.
+   */
+  export function cursor(
+    name: string,
+    options?: CursorOptions | null,
+    id?: string
+  ): Promise<ReadCursor>;
+
+  /**
+   * Open a named read cursor, native counterpart of cursor.
+   *
+   * @param id Device id
+   * @param name Cursor name
+   * @param options Capacity of the log
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function openCursor(
+    id: string | null,
+    name: string,
+    options: CursorOptions | null
+  ): Promise<string>;
+
+  /**
+   * @throws this will always throw an error in iOS.
+   */
+  export function closeCursor(id: string | null, name: string): Promise<boolean>;
+
+  /**
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the cursor is not open.
+   */
+  export function cursorAvailable(id: string | null, name: string): Promise<number>;
+
+  /**
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the cursor is not open.
+   */
+  export function readCursor(
+    id: string | null,
+    name: string,
+    maxLength: number
+  ): Promise<CursorRead>;
+
+  /**
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the cursor is not open.
+   */
+  export function readCursorUntil(
+    id: string | null,
+    name: string,
+    delimiter: string
+  ): Promise<CursorRead>;
+
   /**
    * Read data from connected device once.
    *
@@ -222,6 +585,39 @@ declare namespace BluetoothSerial {
    */
   export function readFromDevice(id?: string): Promise<string>;
 
+  /**
+   * Get length of buffer data without a promise. Blocks the JS thread
+   * for a single buffer access, not available while debugging remotely.
+   *
+   * @param id Device id, null for the first connected device
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function availableSync(id: string | null): number;
+
+  /**
+   * Read buffer data without a promise.
+   *
+   * @param id Device id, null for the first connected device
+   * @param maxLength Maximum number of bytes, 0 reads everything
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function readSync(id: string | null, maxLength: number): string;
+
+  /**
+   * Read buffer data up to a delimiter without a promise.
+   *
+   * @param delimiter
+   * @param id Device id, null for the first connected device
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function readUntilDelimiterSync(
+    delimiter: string,
+    id: string | null
+  ): string;
+
   /**
    * Read all buffer data up to particular delimiter
    * from connected device.
@@ -250,6 +646,101 @@ declare namespace BluetoothSerial {
    */
   export function writeToDevice(data: string, id?: string): Promise<boolean>;
 
+  interface PrintImageOptions {
+    width?: number;
+    dither?: boolean;
+    bandHeight?: number;
+    bandDelay?: number;
+    feedLines?: number;
+  }
+
+  interface PrintQRCodeOptions {
+    size?: number;
+    errorCorrection?: "L" | "M" | "Q" | "H";
+    feedLines?: number;
+  }
+
+  /**
+   * Print an image file on an ESC/POS printer. The image is decoded,
+   * dithered and written band by band natively.
+   *
+   * @param id Device id
+   * @param path Image file path
+   * @param options Printer width, dithering, band size and pacing
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the device is not connected,
+   *         the image cannot be decoded or the write fails.
+   */
+  export function printImage(
+    id: string,
+    path: string,
+    options?: PrintImageOptions
+  ): Promise<{ bands: number; bytes: number }>;
+
+  /**
+   * Print a QR code rendered by an ESC/POS printer.
+   *
+   * @param id Device id
+   * @param data QR payload
+   * @param options Module size, error correction and feed
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the device is not connected
+   *         or the options are out of range.
+   */
+  export function printQRCode(
+    id: string,
+    data: string,
+    options?: PrintQRCodeOptions
+  ): Promise<boolean>;
+
+  interface JournalOptions {
+    maxBytes?: number;
+    ttl?: number;
+  }
+
+  interface JournalInfo {
+    id: string;
+    entries: number;
+    bytes: number;
+  }
+
+  /**
+   * Keep writes made while the device is disconnected in a journal
+   * on disk and write them in order once it is connected again.
+   *
+   * @param id Device id
+   * @param options Size limit and time to live of entries in ms
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the journal cannot be written.
+   */
+  export function enableJournal(
+    id: string,
+    options?: JournalOptions
+  ): Promise<boolean>;
+
+  /**
+   * Stop journaling writes of the device and delete its journal.
+   * Resolves with the number of discarded entries.
+   *
+   * @param id Device id
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function disableJournal(id: string): Promise<number>;
+
+  /**
+   * Get the entries waiting in the journal of the device,
+   * or null if it has no journal.
+   *
+   * @param id Device id
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function getJournal(id: string): Promise<JournalInfo | null>;
+
   /**
    * Clear all buffer data.
    *
@@ -287,6 +778,316 @@ declare namespace BluetoothSerial {
     id?: string
   ): Promise<string>;
 
+  interface ChecksumOptions {
+    algorithm: "crc16-ccitt" | "crc16-xmodem" | "crc32";
+    start?: number;
+    endian?: "big" | "little";
+    invalid?: "flag" | "drop";
+    appendOnWrite?: boolean;
+  }
+
+  /**
+   * Check a checksum trailer right before the delimiter of every frame
+   * received from the device. Bad frames are dropped or delivered with
+   * `valid: false`. Pass null to turn the check off.
+   *
+   * @param id Device id
+   * @param options Algorithm, covered range, byte order and what to do with bad frames
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the algorithm is unknown.
+   */
+  export function setChecksum(
+    id: string,
+    options: ChecksumOptions | null
+  ): Promise<boolean>;
+
+  /**
+   * Decode data received from the device with a charset instead of
+   * ISO-8859-1. Characters split across reads are decoded correctly.
+   * Pass null to go back to ISO-8859-1.
+   *
+   * @param id Device id
+   * @param charset Charset name, e.g. "UTF-8"
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the charset is unknown or if a
+   *         checksum, bytes or field filter, conflation key offset or
+   *         large frame file is set.
+   */
+  export function setCharset(
+    id: string,
+    charset: string | null
+  ): Promise<boolean>;
+
+  interface MaxFrameSizeOptions {
+    maxSize: number;
+    /** Deliver large frames as frameChunk events, or in a temp file */
+    mode?: "chunks" | "file";
+    /** Size of a chunk or progress step, 16384 by default */
+    chunkSize?: number;
+  }
+
+  /**
+   * Stream frames larger than `maxSize` as `frameStart`, `frameChunk`
+   * or `frameProgress`, and `frameEnd` events instead of one read event.
+   * Pass null to turn it off.
+   *
+   * @param id Device id
+   * @param options Maximum size, delivery mode and chunk size
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the options are invalid.
+   */
+  export function setMaxFrameSize(
+    id: string,
+    options: MaxFrameSizeOptions | null
+  ): Promise<boolean>;
+
+  interface ConflationOptions {
+    /** Maximum number of deliveries per second, 30 by default */
+    rate?: number;
+    /** Keep the newest frame per key instead of the newest frame */
+    key?: { offset: number; length: number } | { pattern: string };
+    /** Maximum number of keys waiting for delivery, 256 by default */
+    maxKeys?: number;
+  }
+
+  /**
+   * Only deliver the newest frame of a device, or the newest frame
+   * per key, at most `rate` times per second. Superseded frames are
+   * dropped natively. Pass null to deliver every frame again.
+   *
+   * @param id Device id, null for the first connected device
+   * @param options
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the options are invalid.
+   */
+  export function setConflation(
+    id: string | null,
+    options: ConflationOptions | null
+  ): Promise<boolean>;
+
+  interface ConnectionKeeperOptions {
+    title?: string;
+    text?: string;
+    maxFrames?: number;
+    maxBytes?: number;
+    batchSize?: number;
+  }
+
+  /**
+   * Keep connections alive in the background with a foreground service.
+   * Frames received in the background are held back and delivered
+   * as `readBatch` events when the app resumes. Every frame of a batch
+   * is also emitted as a `read` event with `backlog: true`.
+   *
+   * @param options Notification and backlog budget
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the service cannot be started.
+   */
+  export function startConnectionKeeper(
+    options?: ConnectionKeeperOptions
+  ): Promise<boolean>;
+
+  /**
+   * Stop the foreground service and deliver the frames held back.
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function stopConnectionKeeper(): Promise<boolean>;
+
+  /**
+   * Turn the monotonic receive `timestamp` (ms) and per-device
+   * `seq` fields of `read` and `data` events on or off.
+   * They are on by default.
+   *
+   * @param enabled
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function setFrameMetadata(enabled: boolean): Promise<boolean>;
+
+  interface DeviceStats {
+    id: string;
+    connected: boolean;
+    bytesIn: number;
+    bytesOut: number;
+    framesIn: number;
+    framesOut: number;
+    framesFiltered: number;
+    framesConflated: number;
+    reads: number;
+    readsPerSecond: number;
+    bytesInPerSecond: number;
+    buffered: number;
+    bufferHighWater: number;
+    writesInFlight: number;
+    writesInFlightHighWater: number;
+    reconnects: number;
+    errors: {
+      connect: number;
+      read: number;
+      write: number;
+      checksum: number;
+      other: number;
+    };
+  }
+
+  /**
+   * Get traffic and error counters of a device. Counters are
+   * kept across reconnects.
+   *
+   * @param id Device id or uuid
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the device was never connected.
+   */
+  export function getStats(id?: string): Promise<DeviceStats>;
+
+  interface LatencySummary {
+    count: number;
+    p50: number;
+    p90: number;
+    p99: number;
+    max: number;
+  }
+
+  interface DeviceLatency {
+    id: string;
+    readToFrame: LatencySummary;
+    frameToEmit: LatencySummary;
+    readToEmit: LatencySummary;
+  }
+
+  /**
+   * Get receive latency percentiles of a device in milliseconds:
+   * from the socket read to the frame leaving the receive buffer,
+   * from there to the event being sent, and end to end.
+   *
+   * @param id Device id or uuid
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the device was never connected.
+   */
+  export function getLatency(id?: string): Promise<DeviceLatency>;
+
+  /**
+   * Forget recorded latencies of a device, or of all devices
+   * if no id is given.
+   *
+   * @param id Device id or uuid
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function resetLatency(id?: string): Promise<boolean>;
+
+  interface CaptureSummary {
+    path: string;
+    records: number;
+    bytes: number;
+    dropped: number;
+  }
+
+  interface ReplayOptions {
+    realtime?: boolean;
+    prefix?: string;
+  }
+
+  interface ReplaySummary {
+    records: number;
+    bytes: number;
+    devices: number;
+    durationMs: number;
+  }
+
+  /**
+   * Start capturing every chunk read from or written to any device
+   * to a binary file.
+   *
+   * @param path Capture file, defaults to a new file in the cache directory
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the file cannot be written
+   *         or a capture is already running.
+   */
+  export function startCapture(path?: string): Promise<string>;
+
+  /**
+   * Stop capturing and flush the capture file.
+   * Resolves with null if no capture was running.
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if writing the capture failed.
+   */
+  export function stopCapture(): Promise<CaptureSummary | null>;
+
+  /**
+   * Feed the inbound traffic of a capture back through the receive
+   * path. Every captured device is connected with the id
+   * `prefix + capturedId`.
+   *
+   * @param path Capture file
+   * @param options Original timing or maximum speed, id prefix
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if the capture cannot be read.
+   */
+  export function replayCapture(
+    path: string,
+    options?: ReplayOptions
+  ): Promise<ReplaySummary>;
+
+  /**
+   * Stop all running replays.
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function stopReplay(): Promise<boolean>;
+
+  /**
+   * Emit a `stats` event with the counters of all devices
+   * every `intervalMs` milliseconds. Pass 0 to stop.
+   *
+   * @param intervalMs Interval in milliseconds
+   *
+   * @throws this will always throw an error in iOS.
+   */
+  export function setStatsInterval(intervalMs: number): Promise<boolean>;
+
+  interface ErrorPolicy {
+    windowMs?: number;
+    maxPerWindow?: number;
+    maxKeys?: number;
+  }
+
+  interface BluetoothError {
+    message: string;
+    code?: "connect" | "read" | "write" | "other";
+    id?: string;
+    phase?: string;
+    count?: number;
+    firstTimestamp?: number;
+    lastTimestamp?: number;
+    /** Distinct errors dropped because too many were tracked at once */
+    dropped?: number;
+  }
+
+  /**
+   * Aggregate identical `error` events over a window and cap the
+   * number of error events per window. Pass null for the defaults.
+   *
+   * @param options Window length, events per window and distinct errors tracked
+   *
+   * @throws this will always throw an error in iOS,
+   *         but in Android, only if a value is not positive.
+   */
+  export function setErrorPolicy(
+    options: ErrorPolicy | null
+  ): Promise<boolean>;
+
   /**
    * Select a specific bluetooth device and
    * give you the ability to read / write from
@@ -305,6 +1106,20 @@ declare namespace BluetoothSerial {
      */
     connect(): Promise<AndroidBluetoothDevice | iOSBluetoothDevice>;
 
+    /**
+     * Connect to a specific RFCOMM service of the selected bluetooth device.
+     *
+     * @param uuid Service UUID
+     */
+    connectToService: (uuid: string) => Promise<AndroidBluetoothDevice>;
+
+    /**
+     * Fetch the service UUIDs advertised by the selected bluetooth device.
+     *
+     * @param refresh Run a new SDP query even if the UUIDs are cached
+     */
+    discoverServices: (refresh?: boolean) => Promise<Array<string>>;
+
     /**
      * Disconnect from the selected bluetooth device / peripheral.
      *
@@ -318,6 +1133,20 @@ declare namespace BluetoothSerial {
      */
     isConnected: () => Promise<boolean>;
 
+    /**
+     * Synchronous counterpart of isConnected.
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    isConnectedSync: () => boolean;
+
+    /**
+     * Get the connection state of the selected device.
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    getConnectionState: () => Promise<ConnectionState>;
+
     /**
      * Clear all buffer data of the selected bluetooth device / peripheral.
      */
@@ -336,6 +1165,20 @@ declare namespace BluetoothSerial {
      */
     withDelimiter: (delimiter: string) => Promise<string>;
 
+    /**
+     * Get traffic and error counters of the selected device.
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    getStats: () => Promise<DeviceStats>;
+
+    /**
+     * Get receive latency percentiles of the selected device.
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    getLatency: () => Promise<DeviceLatency>;
+
     /**
      * Listen and read data from the selected device.
      *
@@ -350,6 +1193,32 @@ declare namespace BluetoothSerial {
       delimiter?: string
     ) => void;
 
+    /**
+     * Listen to the frames of the selected device that match a native filter.
+     *
+     * @param filter
+     * @param callback
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    subscribe: (
+      filter: FrameFilter,
+      callback: (data: string, event: any) => void
+    ) => Promise<FrameSubscription>;
+
+    /**
+     * Open a named read cursor over the data of the selected device.
+     *
+     * @param name
+     * @param options
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    cursor: (
+      name: string,
+      options?: CursorOptions | null
+    ) => Promise<ReadCursor>;
+
     /**
      * Read data from the selected device once.
      *
@@ -383,6 +1252,32 @@ declare namespace BluetoothSerial {
      */
     readFromDevice: () => Promise<string>;
 
+    /**
+     * Get length of buffer data from the selected device without a promise.
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    availableSync: () => number;
+
+    /**
+     * Read buffer data from the selected device without a promise.
+     *
+     * @param maxLength Maximum number of bytes, 0 reads everything
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    readSync: (maxLength?: number) => string;
+
+    /**
+     * Read buffer data up to a delimiter from the selected device
+     * without a promise.
+     *
+     * @param delimiter
+     *
+     * @throws this will always throw an error in iOS.
+     */
+    readUntilDelimiterSync: (delimiter: string) => string;
+
     /**
      * Write data to the selected device, you can pass string or buffer,
      * We must convert to base64 in RN there is no way to pass buffer directly.
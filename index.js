@@ -85,6 +85,23 @@ BluetoothSerial.device = (id = null) => ({
    */
   connect: () => BluetoothSerial.connect(id),
 
+  /**
+   * Connect to a specific RFCOMM service of the selected device.
+   *
+   * @param {String} uuid
+   * @return {Promise<Object>}
+   */
+  connectToService: uuid => BluetoothSerial.connectToService(id, uuid),
+
+  /**
+   * Fetch the service UUIDs advertised by the selected device.
+   *
+   * @param {Boolean} [refresh=false]
+   * @return {Promise<String[]>}
+   */
+  discoverServices: (refresh = false) =>
+    BluetoothSerial.discoverServices(id, refresh),
+
   /**
    * Disconnect from the selected bluetooth device / peripheral.
    *
@@ -102,6 +119,20 @@ BluetoothSerial.device = (id = null) => ({
    */
   isConnected: () => BluetoothSerial.isConnected(id),
 
+  /**
+   * Connection status of the selected device without a promise.
+   *
+   * @return {Boolean}
+   */
+  isConnectedSync: () => BluetoothSerial.isConnectedSync(id),
+
+  /**
+   * Get the connection state of the selected device.
+   *
+   * @return {Promise<String>}
+   */
+  getConnectionState: () => BluetoothSerial.getConnectionState(id),
+
   /**
    * Clear all buffer data of the selected bluetooth device / peripheral.
    *
@@ -125,6 +156,20 @@ BluetoothSerial.device = (id = null) => ({
    */
   withDelimiter: delimiter => BluetoothSerial.withDelimiter(delimiter, id),
 
+  /**
+   * Get traffic and error counters of the selected device.
+   *
+   * @return {Promise<Object>}
+   */
+  getStats: () => BluetoothSerial.getStats(id),
+
+  /**
+   * Get receive latency percentiles of the selected device.
+   *
+   * @return {Promise<Object>}
+   */
+  getLatency: () => BluetoothSerial.getLatency(id),
+
   /**
    * Listen and read data from the selected device.
    *
@@ -147,6 +192,25 @@ BluetoothSerial.device = (id = null) => ({
     });
   },
 
+  /**
+   * Listen to the frames of the selected device that match a native filter.
+   *
+   * @param {Object} filter
+   * @param {Function} callback
+   * @return {Promise<Object>}
+   */
+  subscribe: (filter, callback) =>
+    BluetoothSerial.subscribe(filter, callback, id),
+
+  /**
+   * Open a named read cursor over the data of the selected device.
+   *
+   * @param {String} name
+   * @param {Object} [options]
+   * @return {Promise<Object>}
+   */
+  cursor: (name, options = null) => BluetoothSerial.cursor(name, options, id),
+
   /**
    * Read data from the selected device once.
    *
@@ -197,6 +261,31 @@ BluetoothSerial.device = (id = null) => ({
    */
   readFromDevice: () => BluetoothSerial.readFromDevice(id),
 
+  /**
+   * Get length of buffer data from the selected device without a promise.
+   *
+   * @return {Number}
+   */
+  availableSync: () => BluetoothSerial.availableSync(id),
+
+  /**
+   * Read buffer data from the selected device without a promise.
+   *
+   * @param  {Number} [maxLength=0] 0 reads everything
+   * @return {String}
+   */
+  readSync: (maxLength = 0) => BluetoothSerial.readSync(id, maxLength),
+
+  /**
+   * Read buffer data up to a delimiter from the selected device
+   * without a promise.
+   *
+   * @param  {String} delimiter
+   * @return {String}
+   */
+  readUntilDelimiterSync: delimiter =>
+    BluetoothSerial.readUntilDelimiterSync(delimiter, id),
+
   /**
    * Write data to the selected device, you can pass string or buffer,
    * We must convert to base64 in RN there is no way to pass buffer directly.
@@ -329,6 +418,58 @@ BluetoothSerial.read = (callback, delimiter = "", id = null) => {
   });
 };
 
+/**
+ * Listen to the frames of a device that match a native filter. Once a
+ * device has filters, frames that match none of them never cross the
+ * bridge.
+ *
+ * @param {Object} filter
+ * @param {Function} callback
+ * @param {String} [id]
+ * @return {Promise<Object>} Subscription with the filter id and `remove()`
+ */
+BluetoothSerial.subscribe = (filter, callback, id = null) =>
+  BluetoothSerial.addFilter(id, filter).then(filterId => {
+    const subscription = BluetoothSerial.addListener("read", result => {
+      const { filters } = result;
+
+      if (filters && filters.indexOf(filterId) !== -1) {
+        callback(result.data, result);
+      }
+    });
+
+    return {
+      filterId,
+      remove: () => {
+        subscription.remove();
+        return BluetoothSerial.removeFilter(id, filterId);
+      }
+    };
+  });
+
+/**
+ * Open a named read cursor over the data of a device. Every cursor has
+ * its own read position over one shared native log, so consumers never
+ * take data from each other or from the read event.
+ *
+ * @param {String} name
+ * @param {Object} [options]
+ * @param {String} [id]
+ * @return {Promise<Object>} Cursor with `available()`, `read(maxLength)`,
+ *                           `readUntil(delimiter)` and `close()`
+ */
+BluetoothSerial.cursor = (name, options = null, id = null) =>
+  BluetoothSerial.openCursor(id, name, options).then(deviceId => ({
+    name,
+    id: deviceId,
+    available: () => BluetoothSerial.cursorAvailable(deviceId, name),
+    read: (maxLength = 0) =>
+      BluetoothSerial.readCursor(deviceId, name, maxLength),
+    readUntil: delimiter =>
+      BluetoothSerial.readCursorUntil(deviceId, name, delimiter),
+    close: () => BluetoothSerial.closeCursor(deviceId, name)
+  }));
+
 /**
  * Read data from device once.
  *
@@ -384,6 +525,21 @@ BluetoothSerial.write = (data, id = null) => {
   return BluetoothSerial.writeToDevice(data.toString("base64"), id);
 };
 
+/**
+ * Frames held back by the connection keeper arrive as readBatch events.
+ * Every frame of a batch is also emitted as a read and a data event,
+ * marked with `backlog: true`, so read listeners and subscriptions see
+ * the frames received in the background too.
+ */
+DeviceEventEmitter.addListener("readBatch", ({ frames }) => {
+  frames.forEach(frame => {
+    const result = Object.assign({}, frame, { backlog: true });
+
+    DeviceEventEmitter.emit("read", result);
+    DeviceEventEmitter.emit("data", result);
+  });
+});
+
 BluetoothSerial.discoverUnpairedDevices = BluetoothSerial.listUnpaired;
 BluetoothSerial.stopScanning = BluetoothSerial.cancelDiscovery;
 